@@ -0,0 +1,62 @@
+package benchmark;
+
+import game.AgentState;
+import game.GameRunner;
+import game.SensingParameters;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Shared set-up code for the benchmarks.
+ */
+public class BenchmarkSetup {
+	/** The number of precomputed inputs each benchmark cycles through. */
+	public static final int NUM_INPUTS = 1024;
+	/** The seed used to generate the inputs. */
+	public static final long INPUT_SEED = 3702;
+
+	/**
+	 * Returns a runner with the given setup loaded, using the default
+	 * distribution files.
+	 *
+	 * @param setupFile
+	 *            the setup file to load.
+	 * @return a runner with the given setup loaded.
+	 * @throws IOException
+	 *             if the setup can't be loaded.
+	 */
+	public static GameRunner loadRunner(String setupFile) throws IOException {
+		GameRunner runner = new GameRunner();
+		runner.setTargetDistribution("prob-target.txt");
+		runner.setTrackerDistribution("prob-tracker.txt");
+		runner.loadSetup(setupFile);
+		return runner;
+	}
+
+	/**
+	 * Returns random states within the workspace for an agent with the given
+	 * sensing parameters.
+	 *
+	 * @param sp
+	 *            the sensing parameters of the agent.
+	 * @param random
+	 *            the source of randomness.
+	 * @return random states for the agent.
+	 */
+	public static AgentState[] randomStates(SensingParameters sp,
+			Random random) {
+		AgentState[] states = new AgentState[NUM_INPUTS];
+		for (int i = 0; i < NUM_INPUTS; i++) {
+			Point2D pos = new Point2D.Double(random.nextDouble(),
+					random.nextDouble());
+			double heading = (random.nextDouble() * 2 - 1) * Math.PI;
+			double armLength = sp.getMinLength() + random.nextDouble()
+					* (sp.getMaxLength() - sp.getMinLength());
+			states[i] = new AgentState(pos, heading, sp.hasCamera(),
+					sp.hasCamera() ? armLength : 0);
+		}
+		return states;
+	}
+}
@@ -0,0 +1,65 @@
+package benchmark;
+
+import game.GameRunner;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the game engine, one turn at a time and a whole game at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+	/** The setup to play. */
+	@Param({ "setup.txt", "setup2.txt" })
+	public String setupFile;
+
+	/** Whether the runner records a history of each game. */
+	@Param({ "true", "false" })
+	public boolean recordHistory;
+
+	private GameRunner runner;
+	private long seed;
+
+	@Setup
+	public void setup() throws IOException {
+		runner = BenchmarkSetup.loadRunner(setupFile);
+		runner.setRecordHistory(recordHistory);
+		runner.setSeed(seed++);
+		runner.initialise();
+	}
+
+	@Benchmark
+	public int simulateTurn() {
+		if (runner.gameComplete()) {
+			runner.setSeed(seed++);
+			runner.initialise();
+		}
+		runner.simulateTurn();
+		return runner.getTurnNo();
+	}
+
+	@Benchmark
+	public double fullGame() {
+		runner.setSeed(seed++);
+		runner.runFull();
+		return runner.getTrackerScore();
+	}
+}
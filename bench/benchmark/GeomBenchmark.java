@@ -0,0 +1,128 @@
+package benchmark;
+
+import game.AgentState;
+import game.GameRunner;
+import game.RectRegion;
+import game.SensingParameters;
+import geom.GeomTools;
+import geom.ObstacleIndex;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the visibility and collision tests used by the game engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeomBenchmark {
+	/** The maximum allowed error in sight distance, as used by the engine. */
+	private static final double MAX_SIGHT_DISTANCE_ERROR = 1e-5;
+
+	/** The setup to take the obstacles and sensing parameters from. */
+	@Param({ "setup.txt", "setup2.txt" })
+	public String setupFile;
+
+	private List<RectRegion> obstacles;
+	private ObstacleIndex obstacleIndex;
+	private SensingParameters trackerParams;
+	private AgentState[] trackerStates;
+	private AgentState[] targetStates;
+	private Point2D[] moveEnds;
+	private double[] turnHeadings;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException {
+		GameRunner runner = BenchmarkSetup.loadRunner(setupFile);
+		obstacles = runner.getObstacles();
+		obstacleIndex = new ObstacleIndex(obstacles);
+		trackerParams = runner.getTrackerSensingParams();
+		Random random = new Random(BenchmarkSetup.INPUT_SEED);
+		trackerStates = BenchmarkSetup.randomStates(trackerParams, random);
+		targetStates = BenchmarkSetup.randomStates(
+				runner.getTargetSensingParams(), random);
+		double stepSize = 1.0 / runner.getTargetPolicy().getGridSize();
+		moveEnds = new Point2D[BenchmarkSetup.NUM_INPUTS];
+		turnHeadings = new double[BenchmarkSetup.NUM_INPUTS];
+		for (int i = 0; i < BenchmarkSetup.NUM_INPUTS; i++) {
+			Point2D pos = trackerStates[i].getPosition();
+			double heading = trackerStates[i].getHeading();
+			moveEnds[i] = new Point2D.Double(pos.getX() + stepSize
+					* Math.cos(heading), pos.getY() + stepSize
+					* Math.sin(heading));
+			turnHeadings[i] = (random.nextDouble() * 2 - 1) * Math.PI;
+		}
+	}
+
+	/**
+	 * Returns the index of the next input to use.
+	 */
+	private int nextInput() {
+		next = (next + 1) % BenchmarkSetup.NUM_INPUTS;
+		return next;
+	}
+
+	@Benchmark
+	public boolean canSeeList() {
+		int i = nextInput();
+		return GeomTools.canSee(trackerStates[i], targetStates[i],
+				trackerParams, obstacles, MAX_SIGHT_DISTANCE_ERROR);
+	}
+
+	@Benchmark
+	public boolean canSeeIndex() {
+		int i = nextInput();
+		return GeomTools.canSee(trackerStates[i], targetStates[i],
+				trackerParams, obstacleIndex, MAX_SIGHT_DISTANCE_ERROR);
+	}
+
+	@Benchmark
+	public boolean canSeePointList() {
+		int i = nextInput();
+		return GeomTools.canSee(trackerStates[i], targetStates[i].getPosition(),
+				trackerParams, obstacles, MAX_SIGHT_DISTANCE_ERROR);
+	}
+
+	@Benchmark
+	public boolean canSeePointIndex() {
+		int i = nextInput();
+		return GeomTools.canSee(trackerStates[i], targetStates[i].getPosition(),
+				trackerParams, obstacleIndex, MAX_SIGHT_DISTANCE_ERROR);
+	}
+
+	@Benchmark
+	public boolean canMove() {
+		int i = nextInput();
+		AgentState state = trackerStates[i];
+		return GeomTools.canMove(state.getPosition(), moveEnds[i],
+				state.hasCamera(), state.getCameraArmLength(), obstacleIndex);
+	}
+
+	@Benchmark
+	public boolean canTurn() {
+		int i = nextInput();
+		AgentState state = trackerStates[i];
+		return GeomTools.canTurn(state.getPosition(), state.getHeading(),
+				turnHeadings[i], state.getCameraArmLength(), obstacleIndex);
+	}
+}
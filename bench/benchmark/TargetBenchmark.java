@@ -0,0 +1,82 @@
+package benchmark;
+
+import game.Action;
+import game.AgentState;
+import geom.GridCell;
+import geom.TargetGrid;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import target.TargetPolicy;
+import divergence.TargetDivergence;
+
+/**
+ * Benchmarks the target policy and the sampling of divergences.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TargetBenchmark {
+	private TargetPolicy policy;
+	private TargetDivergence divergence;
+	private AgentState[] states;
+	private int[] desiredCodes;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException {
+		policy = new TargetPolicy("targetPolicy.txt");
+		TargetGrid grid = policy.getGrid();
+		divergence = new TargetDivergence(grid, "prob-target.txt");
+		divergence.setSeed(BenchmarkSetup.INPUT_SEED);
+
+		Random random = new Random(BenchmarkSetup.INPUT_SEED);
+		int gridSize = grid.getGridSize();
+		states = new AgentState[BenchmarkSetup.NUM_INPUTS];
+		desiredCodes = new int[BenchmarkSetup.NUM_INPUTS];
+		for (int i = 0; i < BenchmarkSetup.NUM_INPUTS; i++) {
+			GridCell cell = new GridCell(random.nextInt(gridSize),
+					random.nextInt(gridSize));
+			states[i] = new AgentState(grid.getCentre(cell), 0);
+			int code;
+			do {
+				code = random.nextInt(9);
+			} while (!divergence.getDistribution().hasCode(code));
+			desiredCodes[i] = code;
+		}
+	}
+
+	/**
+	 * Returns the index of the next input to use.
+	 */
+	private int nextInput() {
+		next = (next + 1) % BenchmarkSetup.NUM_INPUTS;
+		return next;
+	}
+
+	@Benchmark
+	public Action policyGetAction() {
+		return policy.getAction(states[nextInput()]);
+	}
+
+	@Benchmark
+	public int divergeCode() {
+		return divergence.divergeCode(desiredCodes[nextInput()]);
+	}
+}
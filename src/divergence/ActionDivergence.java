@@ -3,6 +3,7 @@ package divergence;
 import java.util.Random;
 
 import game.Action;
+import game.SplitMix64Random;
 
 /**
  * Diverges an action.
@@ -18,7 +19,7 @@ public abstract class ActionDivergence {
 	 * Constructs an action divergence.
 	 */
 	public ActionDivergence() {
-		random = new Random();
+		random = new SplitMix64Random();
 	}
 
 	/**
@@ -31,6 +32,17 @@ public abstract class ActionDivergence {
 		random.setSeed(seed);
 	}
 
+	/**
+	 * Sets the source of randomness, in place of the default SplitMix64
+	 * generator.
+	 * 
+	 * @param random
+	 *            the new source of randomness.
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
 	/**
 	 * Returns a diverged action.
 	 * 
@@ -0,0 +1,304 @@
+package divergence;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.InputMismatchException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.TreeMap;
+
+/**
+ * An immutable, compiled probability distribution over diverged action codes,
+ * as loaded from a distribution file.
+ *
+ * Since instances are never modified after construction, a single instance can
+ * be loaded once and shared by any number of divergences, each of which only
+ * keeps its own source of randomness.
+ *
+ * The distribution for each desired code is compiled into an alias table
+ * (Walker's alias method, as constructed by Vose), so that drawing a sample
+ * takes constant time and a single uniform random value, without allocating.
+ * The probabilities for each desired code are normalised to sum to 1.
+ */
+public class DivergenceDistribution {
+	/**
+	 * The alias table for desired code c is stored at indices offsets[c]
+	 * (inclusive) to offsets[c + 1] (exclusive) of the table arrays.
+	 */
+	private final int[] offsets;
+	/** The probability of keeping the primary code in each table column. */
+	private final double[] keepProbs;
+	/** The primary resulting action code of each table column. */
+	private final int[] primaryCodes;
+	/** The alternative resulting action code of each table column. */
+	private final int[] aliasCodes;
+
+	/**
+	 * Loads a distribution from a file; each line of the file consists of a
+	 * desired action code, a resulting action code, and the probability of
+	 * that result.
+	 *
+	 * @param filename
+	 *            the file to load the distribution from.
+	 * @throws IOException
+	 *             if there is an error loading the distribution file.
+	 */
+	public DivergenceDistribution(String filename) throws IOException {
+		this(readDistribution(filename), filename);
+	}
+
+	/**
+	 * Estimates a distribution from the relative frequencies of the results
+	 * of each desired action code in a motion history.
+	 *
+	 * @param history
+	 *            the motion history.
+	 * @return the estimated distribution.
+	 */
+	public static DivergenceDistribution fromHistory(MotionHistory history) {
+		TreeMap<Integer, TreeMap<Integer, Double>> distribution = new TreeMap<Integer, TreeMap<Integer, Double>>();
+		for (MotionHistory.HistoryEntry entry : history) {
+			TreeMap<Integer, Double> dist = distribution.get(entry
+					.getDesiredActionCode());
+			if (dist == null) {
+				dist = new TreeMap<Integer, Double>();
+				distribution.put(entry.getDesiredActionCode(), dist);
+			}
+			Double count = dist.get(entry.getResultCode());
+			dist.put(entry.getResultCode(), (count == null) ? 1 : count + 1);
+		}
+		try {
+			return new DivergenceDistribution(distribution, "motion history");
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the probabilities of a distribution from a file, indexed by
+	 * desired and then resulting action code.
+	 *
+	 * @param filename
+	 *            the file to load the distribution from.
+	 * @return the probabilities read from the file.
+	 * @throws IOException
+	 *             if there is an error loading the distribution file.
+	 */
+	private static TreeMap<Integer, TreeMap<Integer, Double>> readDistribution(
+			String filename) throws IOException {
+		TreeMap<Integer, TreeMap<Integer, Double>> distribution = new TreeMap<Integer, TreeMap<Integer, Double>>();
+		BufferedReader input = new BufferedReader(new FileReader(filename));
+		String line;
+		int lineNo = 0;
+		Scanner s;
+		try {
+			lineNo++;
+			while ((line = input.readLine()) != null) {
+				s = new Scanner(line);
+				int desiredState = s.nextInt();
+				int resultingState = s.nextInt();
+				double probability = s.nextDouble();
+				TreeMap<Integer, Double> dist = distribution.get(desiredState);
+				if (dist == null) {
+					dist = new TreeMap<Integer, Double>();
+					distribution.put(desiredState, dist);
+				}
+				dist.put(resultingState, probability);
+				lineNo++;
+			}
+		} catch (InputMismatchException e) {
+			throw new IOException(String.format(
+					"Invalid number format on line %d of %s: %s", lineNo,
+					filename, e.getMessage()));
+		} catch (NoSuchElementException e) {
+			throw new IOException(String.format(
+					"Not enough tokens on line %d of %s", lineNo, filename));
+		} catch (NullPointerException e) {
+			throw new IOException(String.format(
+					"Line %d expected, but file %s ended.", lineNo, filename));
+		} finally {
+			input.close();
+		}
+		return distribution;
+	}
+
+	/**
+	 * Compiles a distribution from its probabilities.
+	 *
+	 * @param distribution
+	 *            the (unnormalised) probabilities, indexed by desired and then
+	 *            resulting action code.
+	 * @param source
+	 *            the name of the source of the distribution, for errors.
+	 * @throws IOException
+	 *             if the probabilities are invalid.
+	 */
+	private DivergenceDistribution(
+			TreeMap<Integer, TreeMap<Integer, Double>> distribution,
+			String source) throws IOException {
+		if (!distribution.isEmpty() && distribution.firstKey() < 0) {
+			throw new IOException(String.format(
+					"Negative action code %d in %s", distribution.firstKey(),
+					source));
+		}
+		int numOutcomes = 0;
+		for (TreeMap<Integer, Double> dist : distribution.values()) {
+			numOutcomes += dist.size();
+		}
+
+		int numCodes = distribution.isEmpty() ? 0 : distribution.lastKey() + 1;
+		offsets = new int[numCodes + 1];
+		keepProbs = new double[numOutcomes];
+		primaryCodes = new int[numOutcomes];
+		aliasCodes = new int[numOutcomes];
+		int index = 0;
+		for (int code = 0; code < numCodes; code++) {
+			offsets[code] = index;
+			TreeMap<Integer, Double> dist = distribution.get(code);
+			if (dist == null) {
+				continue;
+			}
+			int n = dist.size();
+			int[] codes = new int[n];
+			double[] probs = new double[n];
+			double totalProb = 0;
+			int i = 0;
+			for (Map.Entry<Integer, Double> entry : dist.entrySet()) {
+				codes[i] = entry.getKey();
+				probs[i] = entry.getValue();
+				totalProb += probs[i];
+				i++;
+			}
+			if (!(totalProb > 0)) {
+				throw new IOException(String.format(
+						"Probabilities for action code %d in %s sum to %f",
+						code, source, totalProb));
+			}
+			buildAliasTable(codes, probs, totalProb, index);
+			index += n;
+		}
+		offsets[numCodes] = index;
+	}
+
+	/**
+	 * Builds the alias table for a single desired code, using Vose's method.
+	 *
+	 * @param codes
+	 *            the resulting action codes.
+	 * @param probs
+	 *            the (unnormalised) probabilities of the resulting codes.
+	 * @param totalProb
+	 *            the sum of the probabilities.
+	 * @param offset
+	 *            the index in the table arrays at which to store the table.
+	 */
+	private void buildAliasTable(int[] codes, double[] probs,
+			double totalProb, int offset) {
+		int n = codes.length;
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int numSmall = 0;
+		int numLarge = 0;
+		for (int i = 0; i < n; i++) {
+			scaled[i] = probs[i] * n / totalProb;
+			if (scaled[i] < 1) {
+				small[numSmall++] = i;
+			} else {
+				large[numLarge++] = i;
+			}
+		}
+		while (numSmall > 0 && numLarge > 0) {
+			int less = small[--numSmall];
+			int more = large[--numLarge];
+			keepProbs[offset + less] = scaled[less];
+			primaryCodes[offset + less] = codes[less];
+			aliasCodes[offset + less] = codes[more];
+			scaled[more] = (scaled[more] + scaled[less]) - 1;
+			if (scaled[more] < 1) {
+				small[numSmall++] = more;
+			} else {
+				large[numLarge++] = more;
+			}
+		}
+		// Whatever remains has probability 1, up to rounding error.
+		while (numLarge > 0) {
+			int i = large[--numLarge];
+			keepProbs[offset + i] = 1;
+			primaryCodes[offset + i] = codes[i];
+			aliasCodes[offset + i] = codes[i];
+		}
+		while (numSmall > 0) {
+			int i = small[--numSmall];
+			keepProbs[offset + i] = 1;
+			primaryCodes[offset + i] = codes[i];
+			aliasCodes[offset + i] = codes[i];
+		}
+	}
+
+	/**
+	 * Returns true iff this distribution has outcomes for the given desired
+	 * action code.
+	 *
+	 * @param desiredCode
+	 *            the desired action code.
+	 * @return true iff this distribution has outcomes for the given code.
+	 */
+	public boolean hasCode(int desiredCode) {
+		return desiredCode >= 0 && desiredCode < offsets.length - 1
+				&& offsets[desiredCode] < offsets[desiredCode + 1];
+	}
+
+	/**
+	 * Returns the diverged action code for the given desired code that
+	 * corresponds to the given uniformly distributed value.
+	 *
+	 * @param desiredCode
+	 *            the desired action code.
+	 * @param r
+	 *            a value drawn uniformly from [0, 1).
+	 * @return the diverged action code.
+	 */
+	public int sample(int desiredCode, double r) {
+		if (!hasCode(desiredCode)) {
+			throw new IllegalArgumentException(
+					"No divergence distribution for action code "
+							+ desiredCode);
+		}
+		int offset = offsets[desiredCode];
+		int n = offsets[desiredCode + 1] - offset;
+		// The integer part picks a column; the fractional part is a second,
+		// independent uniform value that picks between its two codes.
+		double x = r * n;
+		int column = (int) x;
+		if (column >= n) {
+			column = n - 1;
+		}
+		int index = offset + column;
+		if (x - column < keepProbs[index]) {
+			return primaryCodes[index];
+		}
+		return aliasCodes[index];
+	}
+
+	/**
+	 * Draws a diverged action code for each of the given desired codes.
+	 *
+	 * @param desiredCodes
+	 *            the desired action codes.
+	 * @param divergedCodes
+	 *            the array to store the diverged codes in; it must be at least
+	 *            as long as desiredCodes, and may be the same array.
+	 * @param random
+	 *            the source of randomness.
+	 */
+	public void sampleAll(int[] desiredCodes, int[] divergedCodes,
+			Random random) {
+		for (int i = 0; i < desiredCodes.length; i++) {
+			divergedCodes[i] = sample(desiredCodes[i], random.nextDouble());
+		}
+	}
+}
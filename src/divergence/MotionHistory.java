@@ -132,6 +132,29 @@ public class MotionHistory implements Iterable<MotionHistory.HistoryEntry> {
 				encoder.encodeAction(divergedAction)));
 	}
 
+	/**
+	 * Adds an entry to the history from its encoded desired and resulting
+	 * actions.
+	 * 
+	 * @param desiredActionCode
+	 *            the code for the desired action.
+	 * @param resultCode
+	 *            the code for the resulting action.
+	 */
+	public void addEntry(int desiredActionCode, int resultCode) {
+		history.add(new HistoryEntry(desiredActionCode, resultCode));
+	}
+
+	/**
+	 * Appends all of the entries of another history to this one.
+	 *
+	 * @param other
+	 *            the history whose entries should be added.
+	 */
+	public void addAll(MotionHistory other) {
+		history.addAll(other.history);
+	}
+
 	/**
 	 * Creates an empty MotionHistory.
 	 */
@@ -1,10 +1,10 @@
 package divergence;
 
+import java.awt.geom.Point2D;
 import java.io.IOException;
 
 import game.Action;
 import game.AgentState;
-import geom.GridCell;
 import geom.TargetGrid;
 
 /**
@@ -33,20 +33,41 @@ public class TargetDivergence extends DivergenceFromFile {
 		this.grid = grid;
 	}
 
+	/**
+	 * Creates a divergence with the given (shared) distribution.
+	 * 
+	 * @param grid
+	 *            the grid over which the target moves.
+	 * @param distribution
+	 *            the distribution to use.
+	 */
+	public TargetDivergence(TargetGrid grid,
+			DivergenceDistribution distribution) {
+		super(distribution);
+		this.grid = grid;
+	}
+
 	@Override
 	public Action divergeAction(Action action) {
 		AgentState currentState = action.getStartState();
 		AgentState desiredState = action.getResultingState();
-		GridCell startIndex = grid.getCell(currentState.getPosition());
-		GridCell desiredIndex = grid.getCell(desiredState.getPosition());
-		if (desiredIndex.equals(startIndex)) {
+		Point2D startPos = currentState.getPosition();
+		Point2D desiredPos = desiredState.getPosition();
+		int startRow = grid.getRow(startPos.getY());
+		int startCol = grid.getCol(startPos.getX());
+		int desiredRow = grid.getRow(desiredPos.getY());
+		int desiredCol = grid.getCol(desiredPos.getX());
+		if (desiredRow == startRow && desiredCol == startCol) {
 			return new Action(currentState); // No error when standing still.
 		}
 
 		// Apply the divergence, as per the encoded distribution.
-		int desiredCode = grid.encodeFromIndices(startIndex, desiredIndex);
+		int desiredCode = grid.encodeFromIndices(startRow, startCol,
+				desiredRow, desiredCol);
 		int divergedCode = divergeCode(desiredCode);
-		GridCell endIndex = grid.decodeFromIndices(startIndex, divergedCode);
-		return new Action(currentState, grid.getCentre(endIndex));
+		int endRow = grid.decodeRow(startRow, divergedCode);
+		int endCol = grid.decodeCol(startCol, divergedCode);
+		return new Action(currentState, new Point2D.Double(
+				grid.getCentreX(endCol), grid.getCentreY(endRow)));
 	}
 }
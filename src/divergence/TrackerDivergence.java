@@ -4,9 +4,7 @@ import java.io.IOException;
 
 import game.Action;
 import game.TrackerAction;
-import geom.GridCell;
 import geom.TrackerGrid;
-import geom.Vector2D;
 
 /**
  * Represents the divergence in the actions of a tracker.
@@ -34,6 +32,20 @@ public class TrackerDivergence extends DivergenceFromFile {
 		this.grid = new TrackerGrid(stepDistance / 2);
 	}
 
+	/**
+	 * Creates a tracker divergence with the given (shared) distribution.
+	 * 
+	 * @param stepDistance
+	 *            the amount this tracker moves per turn.
+	 * @param distribution
+	 *            the distribution to use.
+	 */
+	public TrackerDivergence(double stepDistance,
+			DivergenceDistribution distribution) {
+		super(distribution);
+		this.grid = new TrackerGrid(stepDistance / 2);
+	}
+
 	@Override
 	public TrackerAction divergeAction(Action action) {
 		TrackerAction trackerAction = (TrackerAction) action;
@@ -43,11 +55,13 @@ public class TrackerDivergence extends DivergenceFromFile {
 
 		int desiredCode = grid.encodeAction(trackerAction);
 		int divergedCode = divergeCode(desiredCode);
-		GridCell newCell = grid.decodeToCell(divergedCode);
-		Vector2D actualDisplacement = grid.getRandomPoint(newCell, random);
+		// Move to a random point within the diverged cell.
+		double x = grid.getPointX(grid.decodeCol(divergedCode),
+				random.nextDouble() - 0.5);
+		double y = grid.getPointY(grid.decodeRow(divergedCode),
+				random.nextDouble() - 0.5);
 
 		return new TrackerAction(trackerAction.getStartState(),
-				actualDisplacement.getDirection(),
-				actualDisplacement.getMagnitude());
+				Math.atan2(y, x), Math.sqrt(x * x + y * y));
 	}
 }
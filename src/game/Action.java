@@ -1,5 +1,6 @@
 package game;
 
+import geom.HeadingTable;
 import geom.Vector2D;
 
 import java.awt.geom.Point2D;
@@ -89,7 +90,9 @@ public class Action {
 			}
 			endPos = startPos;
 		} else {
-			endPos = new Vector2D(distance, heading).addedTo(startPos);
+			endPos = new Point2D.Double(startPos.getX() + distance
+					* HeadingTable.getCos(heading), startPos.getY() + distance
+					* HeadingTable.getSin(heading));
 		}
 		this.resultingState = new AgentState(endPos, heading,
 				startState.hasCamera(), startState.getCameraArmLength());
@@ -143,11 +143,23 @@ public class AgentState {
 	@Override
 	public int hashCode() {
 		int hashCode = position.hashCode();
-		hashCode = hashCode * 31 + new Double(heading).hashCode();
+		hashCode = hashCode * 31 + hashDouble(heading);
 		if (hasCamera) {
-			hashCode += new Double(cameraArmLength).hashCode();
-
+			hashCode += hashDouble(cameraArmLength);
 		}
 		return hashCode;
 	}
+
+	/**
+	 * Returns the same hash code as {@link Double#hashCode()} for the given
+	 * value, without boxing it.
+	 *
+	 * @param value
+	 *            the value to hash.
+	 * @return the hash code of the value.
+	 */
+	private static int hashDouble(double value) {
+		long bits = Double.doubleToLongBits(value);
+		return (int) (bits ^ (bits >>> 32));
+	}
 }
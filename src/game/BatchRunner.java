@@ -0,0 +1,366 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs a batch of games, optionally spreading them over several threads.
+ *
+ * Every game is played with its own seed, so the result of any individual game
+ * depends only on that seed and not on which thread plays it or on how many
+ * games were played before it. For the same seeds, a parallel batch therefore
+ * produces the same per-game results as a serial one.
+ *
+ * In streaming mode, the runners don't record a history of each game; instead
+ * each action is passed straight to sinks that build the motion histories and
+ * write the output file, so that the memory used by a game doesn't grow with
+ * its length.
+ */
+public class BatchRunner {
+	/** The minimum number of games to play in a single task. */
+	private static final int MIN_GAMES_PER_TASK = 1;
+
+	/** The runner holding the loaded setup. */
+	private GameRunner prototype;
+	/** The number of threads to play games on. */
+	private int numThreads;
+	/** True iff games are played without recording their histories. */
+	private boolean streaming = false;
+
+	/**
+	 * Represents the combined results of a batch of games.
+	 */
+	public static class BatchResult {
+		/** The number of games played. */
+		private int numGames;
+		/** The number of games won by the tracker. */
+		private int numWins;
+		/** The number of games drawn. */
+		private int numDraws;
+		/** The number of games lost by the tracker. */
+		private int numLosses;
+		/** The total score of the tracker over all games. */
+		private double trackerScore;
+		/** The total score of the target(s) over all games. */
+		private double targetScore;
+		/** The statistics gathered over all games. */
+		private GameStatisticsSink statistics;
+
+		/**
+		 * Returns the combination of this result and another.
+		 *
+		 * @param other
+		 *            the result to combine with.
+		 * @return the combination of this result and another.
+		 */
+		private BatchResult merge(BatchResult other) {
+			BatchResult merged = new BatchResult();
+			merged.numGames = numGames + other.numGames;
+			merged.numWins = numWins + other.numWins;
+			merged.numDraws = numDraws + other.numDraws;
+			merged.numLosses = numLosses + other.numLosses;
+			merged.trackerScore = trackerScore + other.trackerScore;
+			merged.targetScore = targetScore + other.targetScore;
+			return merged;
+		}
+
+		/**
+		 * Returns the number of games played.
+		 *
+		 * @return the number of games played.
+		 */
+		public int getNumGames() {
+			return numGames;
+		}
+
+		/**
+		 * Returns the number of games won by the tracker.
+		 *
+		 * @return the number of games won by the tracker.
+		 */
+		public int getNumWins() {
+			return numWins;
+		}
+
+		/**
+		 * Returns the number of games drawn.
+		 *
+		 * @return the number of games drawn.
+		 */
+		public int getNumDraws() {
+			return numDraws;
+		}
+
+		/**
+		 * Returns the number of games lost by the tracker.
+		 *
+		 * @return the number of games lost by the tracker.
+		 */
+		public int getNumLosses() {
+			return numLosses;
+		}
+
+		/**
+		 * Returns the total score of the tracker over all games.
+		 *
+		 * @return the total score of the tracker over all games.
+		 */
+		public double getTrackerScore() {
+			return trackerScore;
+		}
+
+		/**
+		 * Returns the total score of the target(s) over all games.
+		 *
+		 * @return the total score of the target(s) over all games.
+		 */
+		public double getTargetScore() {
+			return targetScore;
+		}
+
+		/**
+		 * Returns the statistics gathered over all games.
+		 *
+		 * @return the statistics gathered over all games.
+		 */
+		public GameStatisticsSink getStatistics() {
+			return statistics;
+		}
+	}
+
+	/**
+	 * Constructs a batch runner for the setup loaded into the given runner.
+	 *
+	 * @param prototype
+	 *            the runner holding the loaded setup; in a serial batch the
+	 *            games are played on this runner directly.
+	 * @param numThreads
+	 *            the number of threads to play games on.
+	 */
+	public BatchRunner(GameRunner prototype, int numThreads) {
+		this.prototype = prototype;
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Sets whether games are played without recording their histories.
+	 *
+	 * @param streaming
+	 *            true iff games should be played without recording their
+	 *            histories.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Returns the seeds for a batch of games, derived from a global seed. The
+	 * seed of each game depends only on the global seed and its index, so any
+	 * game can be replayed on its own.
+	 *
+	 * @param globalSeed
+	 *            the global seed.
+	 * @param numGames
+	 *            the number of games.
+	 * @return the seed for each game in the batch.
+	 */
+	public static long[] generateGameSeeds(long globalSeed, int numGames) {
+		long[] seeds = new long[numGames];
+		for (int i = 0; i < numGames; i++) {
+			seeds[i] = SplitMix64Random.deriveSeed(globalSeed, i);
+		}
+		return seeds;
+	}
+
+	/**
+	 * Plays one game for each of the given seeds. The runtime motion histories
+	 * of all of the games, and their phase timings if the prototype runner has
+	 * a timer, are added to those of the prototype runner.
+	 *
+	 * @param gameSeeds
+	 *            the seed for each game.
+	 * @param outputPath
+	 *            the file to output the last game to, or null if no file
+	 *            output is wanted.
+	 * @param verbose
+	 *            true iff System output on the game results is required.
+	 * @return the combined results of the games.
+	 */
+	public BatchResult run(long[] gameSeeds, String outputPath, boolean verbose) {
+		String[] summaries = new String[gameSeeds.length];
+		final Queue<GameStatisticsSink> statistics = new ConcurrentLinkedQueue<GameStatisticsSink>();
+		BatchResult result;
+		if (numThreads == 1) {
+			boolean wasRecording = prototype.isRecordingHistory();
+			List<GameSink> sinks = attachSinks(prototype, statistics);
+			try {
+				result = playGames(prototype, gameSeeds, 0, gameSeeds.length,
+						outputPath, summaries);
+			} finally {
+				for (GameSink sink : sinks) {
+					prototype.removeSink(sink);
+				}
+				prototype.setRecordHistory(wasRecording);
+			}
+		} else {
+			final Queue<GameRunner> workers = new ConcurrentLinkedQueue<GameRunner>();
+			ThreadLocal<GameRunner> workerRunner = new ThreadLocal<GameRunner>() {
+				@Override
+				protected GameRunner initialValue() {
+					GameRunner runner = new GameRunner(prototype);
+					attachSinks(runner, statistics);
+					workers.add(runner);
+					return runner;
+				}
+			};
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				result = pool.invoke(new GamesTask(workerRunner, gameSeeds, 0,
+						gameSeeds.length, outputPath, summaries));
+			} finally {
+				pool.shutdown();
+			}
+			for (GameRunner worker : workers) {
+				prototype.getRuntimeTargetMotionHistory().addAll(
+						worker.getRuntimeTargetMotionHistory());
+				prototype.getRuntimeTrackerMotionHistory().addAll(
+						worker.getRuntimeTrackerMotionHistory());
+				if (prototype.getPhaseTimer() != null) {
+					prototype.getPhaseTimer().addAll(worker.getPhaseTimer());
+				}
+				worker.shutdown();
+			}
+		}
+		result.statistics = new GameStatisticsSink();
+		for (GameStatisticsSink workerStatistics : statistics) {
+			result.statistics.addAll(workerStatistics);
+		}
+		if (verbose) {
+			for (String summary : summaries) {
+				System.out.println(summary);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sets up a runner to play games for this batch, adding the sinks it
+	 * needs.
+	 *
+	 * @param runner
+	 *            the runner to set up.
+	 * @param statistics
+	 *            the queue to add the runner's statistics sink to.
+	 * @return the sinks added to the runner.
+	 */
+	private List<GameSink> attachSinks(GameRunner runner,
+			Queue<GameStatisticsSink> statistics) {
+		List<GameSink> sinks = new ArrayList<GameSink>();
+		GameStatisticsSink statisticsSink = new GameStatisticsSink();
+		statistics.add(statisticsSink);
+		sinks.add(statisticsSink);
+		runner.setRecordHistory(!streaming);
+		if (streaming) {
+			sinks.add(new MotionHistorySink());
+		}
+		for (GameSink sink : sinks) {
+			runner.addSink(sink);
+		}
+		return sinks;
+	}
+
+	/**
+	 * Plays the games with indices from start (inclusive) to end (exclusive)
+	 * on the given runner.
+	 *
+	 * @param runner
+	 *            the runner to play on.
+	 * @param gameSeeds
+	 *            the seed for each game.
+	 * @param start
+	 *            the index of the first game.
+	 * @param end
+	 *            the index after the last game.
+	 * @param outputPath
+	 *            the file to output the last game of the batch to, or null.
+	 * @param summaries
+	 *            the array to store the summary of each game in.
+	 * @return the combined results of the games.
+	 */
+	private static BatchResult playGames(GameRunner runner, long[] gameSeeds,
+			int start, int end, String outputPath, String[] summaries) {
+		BatchResult result = new BatchResult();
+		for (int i = start; i < end; i++) {
+			runner.setSeed(gameSeeds[i]);
+			boolean isLast = (i == gameSeeds.length - 1);
+			int winResult = runner.runVerbose(isLast ? outputPath : null,
+					false);
+			if (runner.isRecordingHistory()) {
+				runner.saveHistory();
+			}
+			summaries[i] = runner.getResultSummary();
+			result.numGames += 1;
+			if (winResult == 1) {
+				result.numWins += 1;
+			} else if (winResult == 0) {
+				result.numDraws += 1;
+			} else {
+				result.numLosses += 1;
+			}
+			result.trackerScore += runner.getTrackerScore();
+			result.targetScore += runner.getTargetScore();
+		}
+		return result;
+	}
+
+	/**
+	 * Plays a range of games, splitting the range in half until it is small
+	 * enough to play directly; idle threads steal the halves not yet started.
+	 */
+	private static class GamesTask extends RecursiveTask<BatchResult> {
+		private static final long serialVersionUID = 1L;
+
+		/** The runner belonging to the current worker thread. */
+		private ThreadLocal<GameRunner> workerRunner;
+		/** The seed for each game. */
+		private long[] gameSeeds;
+		/** The index of the first game. */
+		private int start;
+		/** The index after the last game. */
+		private int end;
+		/** The file to output the last game of the batch to, or null. */
+		private String outputPath;
+		/** The summary of each game. */
+		private String[] summaries;
+
+		public GamesTask(ThreadLocal<GameRunner> workerRunner,
+				long[] gameSeeds, int start, int end, String outputPath,
+				String[] summaries) {
+			this.workerRunner = workerRunner;
+			this.gameSeeds = gameSeeds;
+			this.start = start;
+			this.end = end;
+			this.outputPath = outputPath;
+			this.summaries = summaries;
+		}
+
+		@Override
+		protected BatchResult compute() {
+			if (end - start <= MIN_GAMES_PER_TASK) {
+				return playGames(workerRunner.get(), gameSeeds, start, end,
+						outputPath, summaries);
+			}
+			int mid = (start + end) >>> 1;
+			GamesTask right = new GamesTask(workerRunner, gameSeeds, mid, end,
+					outputPath, summaries);
+			right.fork();
+			BatchResult left = new GamesTask(workerRunner, gameSeeds, start,
+					mid, outputPath, summaries).compute();
+			return left.merge(right.join());
+		}
+	}
+}
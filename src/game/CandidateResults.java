@@ -0,0 +1,158 @@
+package game;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+
+/**
+ * The results of evaluating a batch of candidate tracker actions with
+ * {@link ForwardModel#evaluateTrackerActions}, stored in primitive arrays
+ * indexed by candidate number.
+ *
+ * The arrays are reused between evaluations, and may be longer than the number
+ * of candidates; only the first {@link #size()} entries are meaningful.
+ */
+public class CandidateResults {
+	/** The number of candidates evaluated. */
+	private int size;
+	/** The x-coordinate of each resulting state. */
+	private double[] xs;
+	/** The y-coordinate of each resulting state. */
+	private double[] ys;
+	/** The heading of each resulting state. */
+	private double[] headings;
+	/** The camera arm length of each resulting state. */
+	private double[] armLengths;
+	/** Whether each action could be carried out. */
+	private boolean[] valid;
+	/** The immediate reward of each action. */
+	private double[] rewards;
+	/** Whether the resulting states have a camera. */
+	private boolean hasCamera;
+
+	/**
+	 * Constructs an empty set of results with room for the given number of
+	 * candidates; it grows as needed.
+	 *
+	 * @param capacity
+	 *            the initial number of candidates to make room for.
+	 */
+	public CandidateResults(int capacity) {
+		xs = new double[capacity];
+		ys = new double[capacity];
+		headings = new double[capacity];
+		armLengths = new double[capacity];
+		valid = new boolean[capacity];
+		rewards = new double[capacity];
+	}
+
+	/**
+	 * Clears the results, making room for the given number of candidates.
+	 *
+	 * @param numCandidates
+	 *            the number of candidates.
+	 * @param hasCamera
+	 *            whether the resulting states have a camera.
+	 */
+	void reset(int numCandidates, boolean hasCamera) {
+		if (numCandidates > xs.length) {
+			xs = Arrays.copyOf(xs, numCandidates);
+			ys = Arrays.copyOf(ys, numCandidates);
+			headings = Arrays.copyOf(headings, numCandidates);
+			armLengths = Arrays.copyOf(armLengths, numCandidates);
+			valid = Arrays.copyOf(valid, numCandidates);
+			rewards = Arrays.copyOf(rewards, numCandidates);
+		}
+		this.size = numCandidates;
+		this.hasCamera = hasCamera;
+	}
+
+	/**
+	 * Stores the result of a candidate.
+	 */
+	void set(int candidateNo, double x, double y, double heading,
+			double armLength, boolean isValid, double reward) {
+		xs[candidateNo] = x;
+		ys[candidateNo] = y;
+		headings[candidateNo] = heading;
+		armLengths[candidateNo] = armLength;
+		valid[candidateNo] = isValid;
+		rewards[candidateNo] = reward;
+	}
+
+	/**
+	 * Returns the number of candidates evaluated.
+	 *
+	 * @return the number of candidates evaluated.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the x-coordinates of the resulting states.
+	 *
+	 * @return the x-coordinates of the resulting states.
+	 */
+	public double[] getXs() {
+		return xs;
+	}
+
+	/**
+	 * Returns the y-coordinates of the resulting states.
+	 *
+	 * @return the y-coordinates of the resulting states.
+	 */
+	public double[] getYs() {
+		return ys;
+	}
+
+	/**
+	 * Returns the headings of the resulting states.
+	 *
+	 * @return the headings of the resulting states.
+	 */
+	public double[] getHeadings() {
+		return headings;
+	}
+
+	/**
+	 * Returns the camera arm lengths of the resulting states.
+	 *
+	 * @return the camera arm lengths of the resulting states.
+	 */
+	public double[] getArmLengths() {
+		return armLengths;
+	}
+
+	/**
+	 * Returns whether each action could be carried out; an action that
+	 * couldn't leaves the tracker where it was.
+	 *
+	 * @return whether each action could be carried out.
+	 */
+	public boolean[] getValid() {
+		return valid;
+	}
+
+	/**
+	 * Returns the immediate reward of each action.
+	 *
+	 * @return the immediate reward of each action.
+	 */
+	public double[] getRewards() {
+		return rewards;
+	}
+
+	/**
+	 * Returns the resulting state of the given candidate as an AgentState.
+	 *
+	 * @param candidateNo
+	 *            the candidate.
+	 * @return the resulting state of the candidate.
+	 */
+	public AgentState getResultingState(int candidateNo) {
+		return new AgentState(new Point2D.Double(xs[candidateNo],
+				ys[candidateNo]), headings[candidateNo], hasCamera,
+				armLengths[candidateNo]);
+	}
+}
@@ -0,0 +1,864 @@
+package game;
+
+import geom.GeomKernel;
+import geom.HeadingTable;
+import geom.ObstacleIndex;
+import geom.TargetGrid;
+import geom.TargetMoveTable;
+import geom.TargetVisibilityTable;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import target.TargetPolicy;
+import divergence.DivergenceDistribution;
+
+/**
+ * A self-contained model of the rules of the game, for simulating
+ * hypothetical futures (e.g. in lookahead search or rollouts).
+ *
+ * The model steps a {@link ForwardState} exactly as a GameRunner steps a real
+ * game: the tracker's actions are corrected and diverged, movements and camera
+ * adjustments are checked against the obstacles, the targets follow their
+ * policy with divergence, and rewards are given for what each player sees.
+ * Every random value is drawn from a source passed in by the caller, so any
+ * subclass of java.util.Random can be used, and a rollout can be replayed by
+ * reseeding it. Seeding a {@link SplitMix64Random} for each player as the
+ * runner seeds its divergences replays a real game exactly.
+ *
+ * The model itself is immutable, so it can be shared between threads.
+ */
+public class ForwardModel {
+	/** The maximum allowed error in sight distances, as for the runner. */
+	private static final double MAX_SIGHT_DISTANCE_ERROR = 1e-5;
+
+	/** The number of targets. */
+	private final int numTargets;
+	/** The (shared) policy of the target(s). */
+	private final TargetPolicy targetPolicy;
+	/** The number of rows and columns of the target grid. */
+	private final int gridSize;
+	/** The (shared) divergence distribution of the target(s). */
+	private final DivergenceDistribution targetDistribution;
+	/** The sensing parameters of the target(s). */
+	private final SensingParameters targetSensingParams;
+	/**
+	 * The divergence distribution of the tracker, or null if the tracker's
+	 * motion is deterministic.
+	 */
+	private final DivergenceDistribution trackerDistribution;
+	/** The sensing parameters of the tracker. */
+	private final SensingParameters trackerSensingParams;
+	/** The distance the tracker moves in one step. */
+	private final double trackerMoveDistance;
+	/** The width of a cell of the tracker's divergence grid. */
+	private final double trackerCellWidth;
+	/** The goal region for the target(s). */
+	private final RectRegion goalRegion;
+	/** The index of the obstacles. */
+	private final ObstacleIndex obstacleIndex;
+	/** The index of the obstacles and the workspace boundaries. */
+	private final ObstacleIndex extendedObstacleIndex;
+	/** The table of the targets' moves between grid cells. */
+	private final TargetMoveTable targetMoveTable;
+	/** The table of what the targets can see, or null if there is none. */
+	private final TargetVisibilityTable targetVisibilityTable;
+	/**
+	 * The geometry kernel of each thread using the model; a model may be
+	 * shared between threads, but a kernel can't be.
+	 */
+	private final ThreadLocal<GeomKernel> geomKernel = new ThreadLocal<GeomKernel>() {
+		@Override
+		protected GeomKernel initialValue() {
+			return new GeomKernel();
+		}
+	};
+	/** The working space of each thread for evaluating candidate actions. */
+	private final ThreadLocal<BatchScratch> batchScratch = new ThreadLocal<BatchScratch>() {
+		@Override
+		protected BatchScratch initialValue() {
+			return new BatchScratch();
+		}
+	};
+	/** The numbers of all of the targets, from 1 to numTargets. */
+	private final int[] allTargetNos;
+
+	/**
+	 * A subset of an obstacle index, which is only rebuilt when the obstacles
+	 * within it change.
+	 */
+	private static class CachedSubset {
+		/** The obstacles in the current subset. */
+		private int[] obstacleNos = new int[0];
+		/** The obstacles found for the latest box. */
+		private int[] found = new int[0];
+		/** The number of obstacles in the current subset. */
+		private int size = 0;
+		/** The current subset, or null if there is none yet. */
+		private ObstacleIndex subset = null;
+
+		/**
+		 * Returns an index over the obstacles of the given index whose bounds
+		 * intersect the given box, as for
+		 * {@link ObstacleIndex#getSubset(double, double, double, double)}.
+		 * The source index must be the same on every call.
+		 */
+		ObstacleIndex get(ObstacleIndex source, double minX, double minY,
+				double maxX, double maxY) {
+			if (found.length < source.size()) {
+				found = new int[source.size()];
+			}
+			int numFound = source.getSubsetObstacles(minX, minY, maxX, maxY,
+					found);
+			if (subset != null && numFound == size) {
+				int i = 0;
+				while (i < size && found[i] == obstacleNos[i]) {
+					i++;
+				}
+				if (i == size) {
+					return subset;
+				}
+			}
+			subset = source.getSubset(found, numFound);
+			int[] swap = obstacleNos;
+			obstacleNos = found;
+			found = swap;
+			size = numFound;
+			return subset;
+		}
+	}
+
+	/**
+	 * The working space for evaluating a batch of candidate actions; it grows
+	 * to fit the largest batch, so that once warmed up evaluations don't
+	 * allocate unless the obstacles around the tracker change.
+	 */
+	private static class BatchScratch {
+		/** The obstacles within reach of the tracker. */
+		final CachedSubset nearbyObstacles = new CachedSubset();
+		/** The obstacles that could hide a target within range. */
+		final CachedSubset viewObstacles = new CachedSubset();
+		/** The numbers of the targets within range. */
+		int[] targetNos = new int[0];
+		/** The distinct headings that the candidates turn to. */
+		double[] turnHeadings = new double[0];
+		/** Whether each of the distinct turns is possible. */
+		boolean[] turnResults = new boolean[0];
+	}
+
+	/**
+	 * Constructs a model of a game with the given parameters, as known to the
+	 * tracker.
+	 *
+	 * @param numTargets
+	 *            the number of targets.
+	 * @param targetPolicy
+	 *            the policy of the target(s).
+	 * @param targetDistribution
+	 *            the divergence distribution of the target(s); this can be
+	 *            estimated from a motion history with
+	 *            {@link DivergenceDistribution#fromHistory}.
+	 * @param targetSensingParams
+	 *            the sensing parameters of the target(s).
+	 * @param trackerDistribution
+	 *            the divergence distribution of the tracker, or null if the
+	 *            tracker's motion is deterministic.
+	 * @param trackerSensingParams
+	 *            the sensing parameters of the tracker.
+	 * @param obstacles
+	 *            the obstacles.
+	 * @param goalRegion
+	 *            the goal region.
+	 */
+	public ForwardModel(int numTargets, TargetPolicy targetPolicy,
+			DivergenceDistribution targetDistribution,
+			SensingParameters targetSensingParams,
+			DivergenceDistribution trackerDistribution,
+			SensingParameters trackerSensingParams,
+			List<RectRegion> obstacles, RectRegion goalRegion) {
+		this(numTargets, targetPolicy, targetDistribution,
+				targetSensingParams, trackerDistribution,
+				trackerSensingParams, goalRegion, new ObstacleIndex(obstacles),
+				new ObstacleIndex(extendObstacles(obstacles)), null, null);
+	}
+
+	/**
+	 * Constructs a model sharing the prebuilt indices of a runner; a null
+	 * move table is built from the extended obstacle index.
+	 */
+	ForwardModel(int numTargets, TargetPolicy targetPolicy,
+			DivergenceDistribution targetDistribution,
+			SensingParameters targetSensingParams,
+			DivergenceDistribution trackerDistribution,
+			SensingParameters trackerSensingParams, RectRegion goalRegion,
+			ObstacleIndex obstacleIndex, ObstacleIndex extendedObstacleIndex,
+			TargetMoveTable targetMoveTable,
+			TargetVisibilityTable targetVisibilityTable) {
+		this.numTargets = numTargets;
+		this.targetPolicy = targetPolicy;
+		this.gridSize = targetPolicy.getGridSize();
+		this.targetDistribution = targetDistribution;
+		this.targetSensingParams = targetSensingParams;
+		this.trackerDistribution = trackerDistribution;
+		this.trackerSensingParams = trackerSensingParams;
+		this.trackerMoveDistance = 1.0 / gridSize;
+		this.trackerCellWidth = trackerMoveDistance / 2;
+		this.goalRegion = goalRegion;
+		this.obstacleIndex = obstacleIndex;
+		this.extendedObstacleIndex = extendedObstacleIndex;
+		this.targetMoveTable = (targetMoveTable != null) ? targetMoveTable
+				: new TargetMoveTable(targetPolicy.getGrid(),
+						extendedObstacleIndex);
+		this.targetVisibilityTable = targetVisibilityTable;
+		this.allTargetNos = new int[numTargets];
+		for (int i = 0; i < numTargets; i++) {
+			allTargetNos[i] = i + 1;
+		}
+	}
+
+	/**
+	 * Returns the given obstacles, together with extra obstacles representing
+	 * the workspace boundaries.
+	 *
+	 * @param obstacles
+	 *            the obstacles.
+	 * @return the obstacles and the workspace boundaries.
+	 */
+	static List<RectRegion> extendObstacles(List<RectRegion> obstacles) {
+		List<RectRegion> extendedObstacles = new ArrayList<RectRegion>(
+				obstacles);
+		extendedObstacles.add(new RectRegion(-1, -1, 1, 3));
+		extendedObstacles.add(new RectRegion(-1, -1, 3, 1));
+		extendedObstacles.add(new RectRegion(-1, 1, 3, 1));
+		extendedObstacles.add(new RectRegion(1, -1, 1, 3));
+		return extendedObstacles;
+	}
+
+	/**
+	 * Returns the number of targets.
+	 *
+	 * @return the number of targets.
+	 */
+	public int getNumTargets() {
+		return numTargets;
+	}
+
+	/**
+	 * Returns the distance the tracker moves in one step.
+	 *
+	 * @return the distance the tracker moves in one step.
+	 */
+	public double getTrackerMoveDistance() {
+		return trackerMoveDistance;
+	}
+
+	/**
+	 * Creates a state at the start of the tracker's turn.
+	 *
+	 * @param trackerState
+	 *            the state of the tracker.
+	 * @param targetStates
+	 *            the states of the targets.
+	 * @return the new state.
+	 */
+	public ForwardState createState(AgentState trackerState,
+			List<AgentState> targetStates) {
+		if (targetStates.size() != numTargets) {
+			throw new IllegalArgumentException("Expected " + numTargets
+					+ " target states, got " + targetStates.size());
+		}
+		return new ForwardState(trackerState,
+				targetStates.toArray(new AgentState[numTargets]));
+	}
+
+	/**
+	 * Steps the tracker's turn with the given action, as the runner would.
+	 *
+	 * @param state
+	 *            the state to step.
+	 * @param action
+	 *            the tracker's desired action.
+	 * @param random
+	 *            the source of randomness for the tracker's divergence.
+	 * @return the tracker's reward.
+	 */
+	public double stepTracker(ForwardState state, TrackerAction action,
+			Random random) {
+		if (action.isCameraAdjustment()) {
+			return adjustTrackerCamera(state, action.getResultingState()
+					.getCameraArmLength());
+		} else if (action.isMovement()) {
+			return moveTracker(state, action.getHeading(),
+					action.getDistance(), random);
+		}
+		return holdTracker(state, action.isHQCall());
+	}
+
+	/**
+	 * Steps the tracker's turn with a movement. A nonzero distance is
+	 * corrected to the tracker's step distance and then diverged; a distance
+	 * of zero turns on the spot.
+	 *
+	 * @param state
+	 *            the state to step.
+	 * @param heading
+	 *            the desired heading.
+	 * @param distance
+	 *            the desired distance.
+	 * @param random
+	 *            the source of randomness for the tracker's divergence.
+	 * @return the tracker's reward.
+	 */
+	public double moveTracker(ForwardState state, double heading,
+			double distance, Random random) {
+		requireTrackerTurn(state);
+		if (distance != 0) {
+			distance = trackerMoveDistance;
+			if (trackerDistribution != null) {
+				// Diverge the displacement on the tracker grid, as for
+				// TrackerDivergence.
+				double cw = trackerCellWidth;
+				int col = (int) Math.floor(distance
+						* HeadingTable.getCos(heading) / cw + 0.5);
+				int row = (int) Math.floor(-distance
+						* HeadingTable.getSin(heading) / cw + 0.5);
+				int divergedCode = trackerDistribution.sample(row * 5 + col
+						+ 12, random.nextDouble());
+				double randX = random.nextDouble() - 0.5;
+				double randY = random.nextDouble() - 0.5;
+				double dx = +(divergedCode % 5 - 2 + randX) * cw;
+				double dy = -(divergedCode / 5 - 2 + randY) * cw;
+				heading = Math.atan2(dy, dx);
+				distance = Math.sqrt(dx * dx + dy * dy);
+			}
+		}
+		double[] values = state.getValues();
+		if (distance != 0 || heading != values[ForwardState.HEADING]) {
+			double endX = values[ForwardState.X];
+			double endY = values[ForwardState.Y];
+			if (distance != 0) {
+				endX += distance * HeadingTable.getCos(heading);
+				endY += distance * HeadingTable.getSin(heading);
+			}
+			applyMovement(state, 0, endX, endY, heading, distance);
+		}
+		return endTrackerTurn(state, false);
+	}
+
+	/**
+	 * Steps the tracker's turn with a camera adjustment. The arm length is
+	 * clamped to the allowed range, and lengthening the arm fails if the arm
+	 * would collide with an obstacle.
+	 *
+	 * @param state
+	 *            the state to step.
+	 * @param armLength
+	 *            the desired camera arm length.
+	 * @return the tracker's reward.
+	 */
+	public double adjustTrackerCamera(ForwardState state, double armLength) {
+		requireTrackerTurn(state);
+		armLength = clampArmLength(armLength);
+		double[] values = state.getValues();
+		if (canAdjustCamera(values[ForwardState.X], values[ForwardState.Y],
+				values[ForwardState.HEADING], state.hasCamera(0),
+				values[ForwardState.ARM], armLength, extendedObstacleIndex)) {
+			state.getMutableValues()[ForwardState.ARM] = armLength;
+		}
+		return endTrackerTurn(state, false);
+	}
+
+	/**
+	 * Steps the tracker's turn without moving, optionally calling HQ.
+	 *
+	 * @param state
+	 *            the state to step.
+	 * @param isHQCall
+	 *            true iff the tracker calls HQ.
+	 * @return the tracker's reward.
+	 */
+	public double holdTracker(ForwardState state, boolean isHQCall) {
+		requireTrackerTurn(state);
+		return endTrackerTurn(state, isHQCall);
+	}
+
+	/**
+	 * Evaluates a batch of candidate actions for the tracker in the given
+	 * state, without changing the state.
+	 *
+	 * Each action is corrected as for stepping it, but not diverged, so the
+	 * results are those of the tracker's desired action: the state it would
+	 * result in, whether it could be carried out, and the tracker's immediate
+	 * reward. The work that doesn't depend on the action - finding the
+	 * obstacles within reach of the tracker, and the states of the targets -
+	 * is done once for the whole batch.
+	 *
+	 * @param state
+	 *            the state to evaluate the actions in.
+	 * @param candidates
+	 *            the candidate actions.
+	 * @param results
+	 *            the results to store the evaluations in.
+	 */
+	public void evaluateTrackerActions(ForwardState state,
+			TrackerAction[] candidates, CandidateResults results) {
+		double[] values = state.getValues();
+		double x = values[ForwardState.X];
+		double y = values[ForwardState.Y];
+		double heading = values[ForwardState.HEADING];
+		double armLength = values[ForwardState.ARM];
+		boolean hasCamera = state.hasCamera(0);
+
+		// Every turn, move and camera arm stays within this distance of the
+		// tracker, as does every resulting view position; the padding only
+		// guards against rounding.
+		double reach = trackerMoveDistance
+				+ Math.max(armLength, trackerSensingParams.getMaxLength())
+				+ MAX_SIGHT_DISTANCE_ERROR;
+		BatchScratch scratch = batchScratch.get();
+		ObstacleIndex nearbyObstacles = scratch.nearbyObstacles.get(
+				extendedObstacleIndex, x - reach, y - reach, x + reach, y
+						+ reach);
+		// Targets that are out of range of every resulting view position
+		// can be left out entirely.
+		if (scratch.targetNos.length < numTargets) {
+			scratch.targetNos = new int[numTargets];
+		}
+		int[] targetNos = scratch.targetNos;
+		int numInRange = 0;
+		double minX = x - reach;
+		double minY = y - reach;
+		double maxX = x + reach;
+		double maxY = y + reach;
+		for (int playerNo = 1; playerNo <= numTargets; playerNo++) {
+			double targetX = state.getX(playerNo);
+			double targetY = state.getY(playerNo);
+			double targetReach = state.getCameraArmLength(playerNo)
+					+ MAX_SIGHT_DISTANCE_ERROR;
+			if (Point2D.distance(x, y, targetX, targetY) > reach
+					+ targetReach + trackerSensingParams.getRange()) {
+				continue;
+			}
+			targetNos[numInRange++] = playerNo;
+			minX = Math.min(minX, targetX - targetReach);
+			minY = Math.min(minY, targetY - targetReach);
+			maxX = Math.max(maxX, targetX + targetReach);
+			maxY = Math.max(maxY, targetY + targetReach);
+		}
+		ObstacleIndex viewObstacles = scratch.viewObstacles.get(
+				obstacleIndex, minX, minY, maxX, maxY);
+
+		// Many candidates share a turn, or leave the tracker where it is, so
+		// turns and the reward for staying put are only worked out once.
+		if (scratch.turnHeadings.length < candidates.length) {
+			scratch.turnHeadings = new double[candidates.length];
+			scratch.turnResults = new boolean[candidates.length];
+		}
+		double[] turnHeadings = scratch.turnHeadings;
+		boolean[] turnResults = scratch.turnResults;
+		int numTurns = 0;
+		double stayReward = Double.NaN;
+
+		results.reset(candidates.length, hasCamera);
+		for (int i = 0; i < candidates.length; i++) {
+			TrackerAction action = candidates[i];
+			double endX = x;
+			double endY = y;
+			double endHeading = heading;
+			double endArmLength = armLength;
+			boolean valid = true;
+			if (action.isCameraAdjustment()) {
+				double newArmLength = clampArmLength(action
+						.getResultingState().getCameraArmLength());
+				valid = canAdjustCamera(x, y, heading, hasCamera, armLength,
+						newArmLength, nearbyObstacles);
+				if (valid) {
+					endArmLength = newArmLength;
+				}
+			} else if (action.isMovement()) {
+				double newHeading = action.getHeading();
+				double distance = 0;
+				if (action.getDistance() != 0) {
+					distance = trackerMoveDistance;
+				}
+				if (distance != 0 || newHeading != heading) {
+					double newX = x;
+					double newY = y;
+					if (distance != 0) {
+						newX += distance * HeadingTable.getCos(newHeading);
+						newY += distance * HeadingTable.getSin(newHeading);
+					}
+					int turnNo = 0;
+					while (turnNo < numTurns
+							&& turnHeadings[turnNo] != newHeading) {
+						turnNo++;
+					}
+					if (turnNo == numTurns) {
+						turnHeadings[turnNo] = newHeading;
+						turnResults[turnNo] = canTurn(x, y, heading, hasCamera,
+								armLength, newHeading, nearbyObstacles);
+						numTurns++;
+					}
+					valid = turnResults[turnNo]
+							&& (distance == 0 || geomKernel.get().canMove(x,
+									y, newX, newY, hasCamera, armLength,
+									nearbyObstacles));
+					if (valid) {
+						endX = newX;
+						endY = newY;
+						endHeading = newHeading;
+					}
+				}
+			}
+			double reward;
+			if (endX == x && endY == y && endHeading == heading
+					&& endArmLength == armLength) {
+				if (Double.isNaN(stayReward)) {
+					stayReward = getTrackerReward(state, x, y, heading,
+							armLength, targetNos, numInRange, false,
+							viewObstacles);
+				}
+				reward = stayReward + (action.isHQCall() ? -5 : 0);
+			} else {
+				reward = getTrackerReward(state, endX, endY, endHeading,
+						endArmLength, targetNos, numInRange,
+						action.isHQCall(), viewObstacles);
+			}
+			results.set(i, endX, endY, endHeading, endArmLength, valid, reward);
+		}
+	}
+
+	/**
+	 * Steps the targets' turn; each target follows its policy, subject to
+	 * divergence.
+	 *
+	 * @param state
+	 *            the state to step.
+	 * @param randoms
+	 *            the sources of randomness for the targets' divergence; either
+	 *            a single source shared by all of the targets, or one for each
+	 *            target.
+	 */
+	public void stepTargets(ForwardState state, Random... randoms) {
+		if (state.isTrackerTurn() || state.isGameComplete()) {
+			throw new IllegalStateException("Not the targets' turn");
+		}
+		for (int playerNo = 1; playerNo <= numTargets; playerNo++) {
+			stepTarget(state, playerNo, (randoms.length == 1) ? randoms[0]
+					: randoms[playerNo - 1]);
+		}
+		state.endTurn();
+	}
+
+	/**
+	 * Steps a single target's action within the targets' turn.
+	 *
+	 * @param state
+	 *            the state to step.
+	 * @param playerNo
+	 *            the target.
+	 * @param random
+	 *            the source of randomness for the target's divergence.
+	 */
+	private void stepTarget(ForwardState state, int playerNo, Random random) {
+		int offset = ForwardState.STRIDE * playerNo;
+		double[] values = state.getValues();
+		double x = values[offset + ForwardState.X];
+		double y = values[offset + ForwardState.Y];
+		TargetGrid grid = targetPolicy.getGrid();
+		int row = grid.getRow(y);
+		int col = grid.getCol(x);
+		int actionCode = targetPolicy.getActionCode(row, col);
+		if (actionCode < 0) {
+			throw new IllegalArgumentException("No policy for position ("
+					+ x + ", " + y + ")");
+		}
+		// Standing still isn't diverged.
+		if (actionCode != 4) {
+			int divergedCode = targetDistribution.sample(actionCode,
+					random.nextDouble());
+			double endX = grid.getCentreX(grid.decodeCol(col, divergedCode));
+			double endY = grid.getCentreY(grid.decodeRow(row, divergedCode));
+			if (endX != x || endY != y) {
+				double dx = endX - x;
+				double dy = endY - y;
+				applyMovement(state, playerNo, endX, endY, Math.atan2(dy, dx),
+						Math.sqrt(dx * dx + dy * dy));
+			}
+		}
+
+		if (targetCanSee(state.getAgentState(playerNo),
+				state.getAgentState(0))) {
+			state.getMutableValues()[offset + ForwardState.SCORE] += 1;
+		}
+		values = state.getValues();
+		if (goalRegion.getRect().contains(values[offset + ForwardState.X],
+				values[offset + ForwardState.Y])) {
+			state.setGameComplete();
+		}
+	}
+
+	/**
+	 * Checks that it is the tracker's turn in the given state.
+	 */
+	private static void requireTrackerTurn(ForwardState state) {
+		if (!state.isTrackerTurn() || state.isGameComplete()) {
+			throw new IllegalStateException("Not the tracker's turn");
+		}
+	}
+
+	/**
+	 * Applies a movement, unless turning or moving would collide with an
+	 * obstacle.
+	 *
+	 * @param state
+	 *            the state to modify.
+	 * @param playerNo
+	 *            the moving player.
+	 * @param endX
+	 *            the x-coordinate of the resulting position.
+	 * @param endY
+	 *            the y-coordinate of the resulting position.
+	 * @param heading
+	 *            the resulting heading.
+	 * @param distance
+	 *            the distance moved.
+	 */
+	private void applyMovement(ForwardState state, int playerNo,
+			double endX, double endY, double heading, double distance) {
+		int offset = ForwardState.STRIDE * playerNo;
+		double[] values = state.getValues();
+		double x = values[offset + ForwardState.X];
+		double y = values[offset + ForwardState.Y];
+		// A target's move between grid cells is looked up in the table.
+		int tableResult = TargetMoveTable.UNKNOWN;
+		if (playerNo != 0 && !state.hasCamera(playerNo)) {
+			tableResult = targetMoveTable.canMove(x, y, endX, endY);
+		}
+		if (tableResult == TargetMoveTable.INVALID) {
+			return;
+		} else if (tableResult == TargetMoveTable.UNKNOWN
+				&& !canMove(x, y, values[offset + ForwardState.HEADING],
+						state.hasCamera(playerNo), values[offset
+								+ ForwardState.ARM], endX, endY, heading,
+						distance, extendedObstacleIndex)) {
+			return;
+		}
+		values = state.getMutableValues();
+		values[offset + ForwardState.X] = endX;
+		values[offset + ForwardState.Y] = endY;
+		values[offset + ForwardState.HEADING] = heading;
+	}
+
+	/**
+	 * Returns true iff a player can turn and move as given without colliding
+	 * with any of the given obstacles.
+	 *
+	 * @param x
+	 *            the x-coordinate of the player.
+	 * @param y
+	 *            the y-coordinate of the player.
+	 * @param startHeading
+	 *            the heading of the player.
+	 * @param hasCamera
+	 *            whether the player has a camera.
+	 * @param armLength
+	 *            the camera arm length of the player.
+	 * @param endX
+	 *            the x-coordinate of the resulting position.
+	 * @param endY
+	 *            the y-coordinate of the resulting position.
+	 * @param heading
+	 *            the resulting heading.
+	 * @param distance
+	 *            the distance moved.
+	 * @param obstacles
+	 *            the obstacles, including the workspace boundaries.
+	 * @return true iff the movement is possible.
+	 */
+	private boolean canMove(double x, double y, double startHeading,
+			boolean hasCamera, double armLength, double endX, double endY,
+			double heading, double distance, ObstacleIndex obstacles) {
+		return canTurn(x, y, startHeading, hasCamera, armLength, heading,
+				obstacles)
+				&& (distance == 0 || geomKernel.get().canMove(x, y, endX,
+						endY, hasCamera, armLength, obstacles));
+	}
+
+	/**
+	 * Returns true iff a player can turn on the spot to the given heading
+	 * without its camera arm colliding with any of the given obstacles.
+	 *
+	 * @param x
+	 *            the x-coordinate of the player.
+	 * @param y
+	 *            the y-coordinate of the player.
+	 * @param startHeading
+	 *            the heading of the player.
+	 * @param hasCamera
+	 *            whether the player has a camera.
+	 * @param armLength
+	 *            the camera arm length of the player.
+	 * @param heading
+	 *            the resulting heading.
+	 * @param obstacles
+	 *            the obstacles, including the workspace boundaries.
+	 * @return true iff the turn is possible.
+	 */
+	private boolean canTurn(double x, double y, double startHeading,
+			boolean hasCamera, double armLength, double heading,
+			ObstacleIndex obstacles) {
+		return !hasCamera
+				|| startHeading == heading
+				|| geomKernel.get().canTurn(x, y, startHeading, heading,
+						armLength, obstacles);
+	}
+
+	/**
+	 * Returns the given arm length, clamped to the tracker's allowed range.
+	 *
+	 * @param armLength
+	 *            the arm length.
+	 * @return the clamped arm length.
+	 */
+	private double clampArmLength(double armLength) {
+		if (armLength < trackerSensingParams.getMinLength()) {
+			return trackerSensingParams.getMinLength();
+		} else if (armLength > trackerSensingParams.getMaxLength()) {
+			return trackerSensingParams.getMaxLength();
+		}
+		return armLength;
+	}
+
+	/**
+	 * Returns true iff a camera arm can be adjusted to the given length; a
+	 * lengthened arm mustn't collide with any of the given obstacles.
+	 *
+	 * @param x
+	 *            the x-coordinate of the player.
+	 * @param y
+	 *            the y-coordinate of the player.
+	 * @param heading
+	 *            the heading of the player.
+	 * @param hasCamera
+	 *            whether the player has a camera.
+	 * @param armLength
+	 *            the current camera arm length.
+	 * @param newArmLength
+	 *            the new camera arm length.
+	 * @param obstacles
+	 *            the obstacles, including the workspace boundaries.
+	 * @return true iff the adjustment is possible.
+	 */
+	private static boolean canAdjustCamera(double x, double y,
+			double heading, boolean hasCamera, double armLength,
+			double newArmLength, ObstacleIndex obstacles) {
+		if (!hasCamera) {
+			return false;
+		}
+		if (newArmLength <= armLength) {
+			return true;
+		}
+		return obstacles.isCollisionFree(x, y,
+				GeomKernel.getViewX(x, heading, true, newArmLength),
+				GeomKernel.getViewY(y, heading, true, newArmLength));
+	}
+
+	/**
+	 * Returns the tracker's reward for seeing the given targets from the given
+	 * position, heading and camera arm length, less the cost of an HQ call if
+	 * it made one.
+	 *
+	 * @param state
+	 *            the state holding the targets, and whether the tracker has a
+	 *            camera.
+	 * @param x
+	 *            the x-coordinate of the tracker.
+	 * @param y
+	 *            the y-coordinate of the tracker.
+	 * @param heading
+	 *            the heading of the tracker.
+	 * @param armLength
+	 *            the camera arm length of the tracker.
+	 * @param targetNos
+	 *            the numbers of the targets to test.
+	 * @param numTested
+	 *            the number of targets to test.
+	 * @param isHQCall
+	 *            true iff the tracker called HQ.
+	 * @param obstacles
+	 *            the view-obstructing obstacles.
+	 * @return the tracker's reward.
+	 */
+	private double getTrackerReward(ForwardState state, double x, double y,
+			double heading, double armLength, int[] targetNos, int numTested,
+			boolean isHQCall, ObstacleIndex obstacles) {
+		double reward = isHQCall ? -5 : 0;
+		GeomKernel kernel = geomKernel.get();
+		boolean hasCamera = state.hasCamera(0);
+		double vx = GeomKernel.getViewX(x, heading, hasCamera, armLength);
+		double vy = GeomKernel.getViewY(y, heading, hasCamera, armLength);
+		for (int k = 0; k < numTested; k++) {
+			int playerNo = targetNos[k];
+			if (kernel.canSee(vx, vy, heading, state.getX(playerNo),
+					state.getY(playerNo), state.getHeading(playerNo),
+					state.hasCamera(playerNo),
+					state.getCameraArmLength(playerNo), trackerSensingParams,
+					obstacles, MAX_SIGHT_DISTANCE_ERROR)) {
+				reward += 1;
+			}
+		}
+		return reward;
+	}
+
+	/**
+	 * Gives the tracker its reward for the turn, and ends the turn.
+	 *
+	 * @param state
+	 *            the state to modify.
+	 * @param isHQCall
+	 *            true iff the tracker called HQ.
+	 * @return the tracker's reward.
+	 */
+	private double endTrackerTurn(ForwardState state, boolean isHQCall) {
+		double[] values = state.getValues();
+		double reward = getTrackerReward(state, values[ForwardState.X],
+				values[ForwardState.Y], values[ForwardState.HEADING],
+				values[ForwardState.ARM], allTargetNos, numTargets, isHQCall,
+				obstacleIndex);
+		if (reward != 0) {
+			state.getMutableValues()[ForwardState.SCORE] += reward;
+		}
+		state.endTurn();
+		return reward;
+	}
+
+	/**
+	 * Returns true iff a target in the given state can see the tracker,
+	 * consulting the target visibility table first if there is one.
+	 *
+	 * @param targetState
+	 *            the state of the target.
+	 * @param trackerState
+	 *            the state of the tracker.
+	 * @return true iff the target can see the tracker.
+	 */
+	private boolean targetCanSee(AgentState targetState,
+			AgentState trackerState) {
+		if (targetVisibilityTable != null) {
+			int result = targetVisibilityTable.canSee(targetState,
+					trackerState.getPosition());
+			if (result == TargetVisibilityTable.VISIBLE) {
+				return true;
+			} else if (result == TargetVisibilityTable.NOT_VISIBLE) {
+				return geomKernel.get().canSeeCameraArm(targetState,
+						trackerState, targetSensingParams, obstacleIndex,
+						MAX_SIGHT_DISTANCE_ERROR);
+			}
+		}
+		return geomKernel.get().canSee(targetState, trackerState,
+				targetSensingParams, obstacleIndex, MAX_SIGHT_DISTANCE_ERROR);
+	}
+}
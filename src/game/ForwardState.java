@@ -0,0 +1,270 @@
+package game;
+
+import java.awt.geom.Point2D;
+
+/**
+ * A hypothetical state of a game, as stepped by a {@link ForwardModel}.
+ *
+ * The positions, headings, camera arm lengths and scores of all of the players
+ * are kept in a single primitive array. Forking a state takes constant time:
+ * the fork shares the array with its parent, and whichever of the two is
+ * changed first makes its own copy of it.
+ *
+ * A state may be read from several threads at once, but must only be stepped
+ * by one thread at a time; forks may be stepped independently.
+ */
+public class ForwardState {
+	/** The number of values stored for each player. */
+	static final int STRIDE = 5;
+	/** The offset of the x-coordinate of a player. */
+	static final int X = 0;
+	/** The offset of the y-coordinate of a player. */
+	static final int Y = 1;
+	/** The offset of the heading of a player. */
+	static final int HEADING = 2;
+	/** The offset of the camera arm length of a player. */
+	static final int ARM = 3;
+	/** The offset of the score of a player. */
+	static final int SCORE = 4;
+
+	/** The number of targets. */
+	private final int numTargets;
+	/** Whether each player has a camera; this is never modified. */
+	private final boolean[] cameras;
+	/** The values of each player, as (x, y, heading, arm length, score). */
+	private double[] values;
+	/** True iff the values may be shared with another state. */
+	private boolean shared;
+	/** The turn number. */
+	private int turnNo;
+	/** True iff the game is over. */
+	private boolean gameComplete;
+
+	/**
+	 * Constructs a state at the start of a game.
+	 *
+	 * @param trackerState
+	 *            the state of the tracker.
+	 * @param targetStates
+	 *            the states of the targets.
+	 */
+	ForwardState(AgentState trackerState, AgentState[] targetStates) {
+		numTargets = targetStates.length;
+		cameras = new boolean[numTargets + 1];
+		values = new double[STRIDE * (numTargets + 1)];
+		shared = false;
+		turnNo = 0;
+		gameComplete = false;
+		for (int playerNo = 0; playerNo <= numTargets; playerNo++) {
+			AgentState state = (playerNo == 0) ? trackerState
+					: targetStates[playerNo - 1];
+			int offset = STRIDE * playerNo;
+			values[offset + X] = state.getPosition().getX();
+			values[offset + Y] = state.getPosition().getY();
+			values[offset + HEADING] = state.getHeading();
+			values[offset + ARM] = state.getCameraArmLength();
+			cameras[playerNo] = state.hasCamera();
+		}
+	}
+
+	/**
+	 * Constructs a fork of another state.
+	 *
+	 * @param other
+	 *            the state to fork.
+	 */
+	private ForwardState(ForwardState other) {
+		this.numTargets = other.numTargets;
+		this.cameras = other.cameras;
+		this.values = other.values;
+		this.shared = true;
+		other.shared = true;
+		this.turnNo = other.turnNo;
+		this.gameComplete = other.gameComplete;
+	}
+
+	/**
+	 * Returns a fork of this state, which can be stepped independently of it.
+	 *
+	 * @return a fork of this state.
+	 */
+	public ForwardState fork() {
+		return new ForwardState(this);
+	}
+
+	/**
+	 * Returns the values of the players for reading; these must not be
+	 * modified.
+	 *
+	 * @return the values of the players.
+	 */
+	double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Returns the values of the players for modification, copying them first
+	 * if they may be shared.
+	 *
+	 * @return the values of the players.
+	 */
+	double[] getMutableValues() {
+		if (shared) {
+			values = values.clone();
+			shared = false;
+		}
+		return values;
+	}
+
+	/**
+	 * Advances the state to the next turn.
+	 */
+	void endTurn() {
+		turnNo++;
+	}
+
+	/**
+	 * Marks the game as over.
+	 */
+	void setGameComplete() {
+		gameComplete = true;
+	}
+
+	/**
+	 * Returns the number of targets.
+	 *
+	 * @return the number of targets.
+	 */
+	public int getNumTargets() {
+		return numTargets;
+	}
+
+	/**
+	 * Returns the turn number.
+	 *
+	 * @return the turn number.
+	 */
+	public int getTurnNo() {
+		return turnNo;
+	}
+
+	/**
+	 * Returns true iff it's the tracker's turn to act.
+	 *
+	 * @return true iff it's the tracker's turn to act.
+	 */
+	public boolean isTrackerTurn() {
+		return turnNo % 2 == 0;
+	}
+
+	/**
+	 * Returns true iff the game is over.
+	 *
+	 * @return true iff the game is over.
+	 */
+	public boolean isGameComplete() {
+		return gameComplete;
+	}
+
+	/**
+	 * Returns the x-coordinate of the given player.
+	 *
+	 * @param playerNo
+	 *            the player.
+	 * @return the x-coordinate of the player.
+	 */
+	public double getX(int playerNo) {
+		return values[STRIDE * playerNo + X];
+	}
+
+	/**
+	 * Returns the y-coordinate of the given player.
+	 *
+	 * @param playerNo
+	 *            the player.
+	 * @return the y-coordinate of the player.
+	 */
+	public double getY(int playerNo) {
+		return values[STRIDE * playerNo + Y];
+	}
+
+	/**
+	 * Returns the heading of the given player.
+	 *
+	 * @param playerNo
+	 *            the player.
+	 * @return the heading of the player.
+	 */
+	public double getHeading(int playerNo) {
+		return values[STRIDE * playerNo + HEADING];
+	}
+
+	/**
+	 * Returns true iff the given player has a camera.
+	 *
+	 * @param playerNo
+	 *            the player.
+	 * @return true iff the player has a camera.
+	 */
+	public boolean hasCamera(int playerNo) {
+		return cameras[playerNo];
+	}
+
+	/**
+	 * Returns the camera arm length of the given player.
+	 *
+	 * @param playerNo
+	 *            the player.
+	 * @return the camera arm length of the player.
+	 */
+	public double getCameraArmLength(int playerNo) {
+		return values[STRIDE * playerNo + ARM];
+	}
+
+	/**
+	 * Returns the score of the given player.
+	 *
+	 * @param playerNo
+	 *            the player.
+	 * @return the score of the player.
+	 */
+	public double getScore(int playerNo) {
+		return values[STRIDE * playerNo + SCORE];
+	}
+
+	/**
+	 * Returns the score of the tracker.
+	 *
+	 * @return the score of the tracker.
+	 */
+	public double getTrackerScore() {
+		return values[SCORE];
+	}
+
+	/**
+	 * Returns the total score of the target(s).
+	 *
+	 * @return the total score of the target(s).
+	 */
+	public double getTargetScore() {
+		double total = 0;
+		for (int playerNo = 1; playerNo <= numTargets; playerNo++) {
+			total += values[STRIDE * playerNo + SCORE];
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the state of the given player as an AgentState.
+	 *
+	 * @param playerNo
+	 *            the player.
+	 * @return the state of the player.
+	 */
+	public AgentState getAgentState(int playerNo) {
+		int offset = STRIDE * playerNo;
+		return new AgentState(new Point2D.Double(values[offset + X],
+				values[offset + Y]), values[offset + HEADING],
+				cameras[playerNo], values[offset + ARM]);
+	}
+}
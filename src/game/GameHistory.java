@@ -0,0 +1,500 @@
+package game;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A compact record of the course of a game.
+ *
+ * Rather than keeping a full copy of the game state for every turn, the
+ * history records a few primitive values for each action - the resulting state
+ * of the acting player, its reward, and the encoded desired and diverged
+ * actions - together with a bit for each percept the tracker obtained. As the
+ * tracker's actions aren't confined to a grid, the heading, distance and
+ * camera arm length of its desired and diverged actions are kept as well, and
+ * the targets' moves are also kept exactly, as the action codes round moves
+ * beyond the edge of the grid back into it. Every
+ * few turns it also records a keyframe holding the states and scores of all of
+ * the players, so that the state at any turn can be rebuilt by replaying at
+ * most one keyframe interval of actions.
+ *
+ * Turns alternate between the tracker, which makes one action, and the
+ * targets, which make one action each, starting with the tracker.
+ */
+public class GameHistory {
+	/** The default number of turns between keyframes. */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+	/** The number of values stored for each player state. */
+	private static final int STATE_SIZE = 4;
+	/** The number of values stored for each tracker action. */
+	private static final int TRACKER_ACTION_SIZE = 3;
+
+	/** The number of targets. */
+	private final int numTargets;
+	/** The number of turns between keyframes. */
+	private final int keyframeInterval;
+
+	/** The number of completed turns. */
+	private int numTurns;
+	/** The number of recorded actions. */
+	private int numActions;
+	/** The resulting states, as (x, y, heading, camera arm length). */
+	private double[] actionStates;
+	/** The reward of each action. */
+	private double[] actionRewards;
+	/** The encoded desired action of each action. */
+	private int[] desiredCodes;
+	/** The encoded diverged action of each action. */
+	private int[] divergedCodes;
+	/**
+	 * The exact desired and diverged moves of each target action, as action
+	 * codes that aren't rounded into the grid.
+	 */
+	private byte[] targetMoves;
+	/** Whether the resulting state of each action has a camera. */
+	private BitSet actionCameras;
+	/** The percepts, indexed by turnNo * numTargets + targetNo - 1. */
+	private BitSet percepts;
+
+	/** The number of recorded tracker actions, desired and diverged. */
+	private int numTrackerActions;
+	/**
+	 * The tracker's desired and diverged actions for each of its turns, as
+	 * (heading, distance, camera arm length).
+	 */
+	private double[] trackerActionValues;
+	/** Whether each of the tracker's actions is a camera adjustment. */
+	private BitSet trackerCameraAdjustments;
+	/** Whether each of the tracker's actions is an HQ call. */
+	private BitSet trackerHQCalls;
+
+	/** The number of recorded keyframes. */
+	private int numKeyframes;
+	/** The player states of each keyframe, as for actionStates. */
+	private double[] keyframeStates;
+	/** The player scores of each keyframe. */
+	private double[] keyframeScores;
+	/** Whether the states of each keyframe have a camera. */
+	private BitSet keyframeCameras;
+
+	/**
+	 * Constructs an empty history for the given number of targets.
+	 *
+	 * @param numTargets
+	 *            the number of targets.
+	 * @param keyframeInterval
+	 *            the number of turns between keyframes.
+	 */
+	public GameHistory(int numTargets, int keyframeInterval) {
+		this.numTargets = numTargets;
+		this.keyframeInterval = keyframeInterval;
+		actionStates = new double[STATE_SIZE * 16];
+		actionRewards = new double[16];
+		desiredCodes = new int[16];
+		divergedCodes = new int[16];
+		targetMoves = new byte[2 * 16];
+		actionCameras = new BitSet();
+		percepts = new BitSet();
+		trackerActionValues = new double[TRACKER_ACTION_SIZE * 16];
+		trackerCameraAdjustments = new BitSet();
+		trackerHQCalls = new BitSet();
+		keyframeStates = new double[STATE_SIZE * (numTargets + 1)];
+		keyframeScores = new double[numTargets + 1];
+		keyframeCameras = new BitSet();
+	}
+
+	/**
+	 * Clears the history, and records the initial state of the game.
+	 *
+	 * @param states
+	 *            the initial states of the players.
+	 * @param scores
+	 *            the initial scores of the players.
+	 */
+	public void reset(AgentState[] states, double[] scores) {
+		numTurns = 0;
+		numActions = 0;
+		numTrackerActions = 0;
+		numKeyframes = 0;
+		actionCameras.clear();
+		percepts.clear();
+		trackerCameraAdjustments.clear();
+		trackerHQCalls.clear();
+		keyframeCameras.clear();
+		addKeyframe(states, scores);
+	}
+
+	/**
+	 * Returns the number of completed turns.
+	 *
+	 * @return the number of completed turns.
+	 */
+	public int getNumTurns() {
+		return numTurns;
+	}
+
+	/**
+	 * Returns the number of players acting in the given turn.
+	 *
+	 * @param turnNo
+	 *            the turn number.
+	 * @return the number of players acting in the given turn.
+	 */
+	public int getNumActions(int turnNo) {
+		return (turnNo % 2 == 0) ? 1 : numTargets;
+	}
+
+	/**
+	 * Returns the index of the first action of the given turn.
+	 *
+	 * @param turnNo
+	 *            the turn number.
+	 * @return the index of the first action of the given turn.
+	 */
+	public int getFirstAction(int turnNo) {
+		return (turnNo / 2) * (numTargets + 1) + (turnNo % 2);
+	}
+
+	/**
+	 * Records an action taken within the current turn.
+	 *
+	 * @param resultingState
+	 *            the resulting state of the acting player.
+	 * @param reward
+	 *            the reward for the action.
+	 * @param desiredCode
+	 *            the encoded desired action.
+	 * @param divergedCode
+	 *            the encoded diverged action.
+	 */
+	public void addAction(AgentState resultingState, double reward,
+			int desiredCode, int divergedCode) {
+		if (numActions == actionRewards.length) {
+			int capacity = 2 * numActions;
+			actionStates = Arrays.copyOf(actionStates, STATE_SIZE * capacity);
+			actionRewards = Arrays.copyOf(actionRewards, capacity);
+			desiredCodes = Arrays.copyOf(desiredCodes, capacity);
+			divergedCodes = Arrays.copyOf(divergedCodes, capacity);
+			targetMoves = Arrays.copyOf(targetMoves, 2 * capacity);
+		}
+		putState(actionStates, actionCameras, numActions, resultingState);
+		actionRewards[numActions] = reward;
+		desiredCodes[numActions] = desiredCode;
+		divergedCodes[numActions] = divergedCode;
+		numActions++;
+	}
+
+	/**
+	 * Records the exact desired and diverged moves of the last recorded
+	 * action, which must be a target action.
+	 *
+	 * @param desiredMove
+	 *            the exact code of the desired move.
+	 * @param divergedMove
+	 *            the exact code of the diverged move.
+	 */
+	public void addTargetMoves(int desiredMove, int divergedMove) {
+		targetMoves[2 * (numActions - 1)] = (byte) desiredMove;
+		targetMoves[2 * (numActions - 1) + 1] = (byte) divergedMove;
+	}
+
+	/**
+	 * Records the desired and diverged actions of the tracker for the current
+	 * turn, which must be one of the tracker's turns.
+	 *
+	 * @param desiredAction
+	 *            the tracker's desired action.
+	 * @param divergedAction
+	 *            the tracker's diverged action.
+	 */
+	public void addTrackerActions(TrackerAction desiredAction,
+			TrackerAction divergedAction) {
+		int size = TRACKER_ACTION_SIZE * (numTrackerActions + 2);
+		if (size > trackerActionValues.length) {
+			trackerActionValues = Arrays.copyOf(trackerActionValues,
+					2 * trackerActionValues.length);
+		}
+		putTrackerAction(numTrackerActions++, desiredAction);
+		putTrackerAction(numTrackerActions++, divergedAction);
+	}
+
+	/**
+	 * Records that the tracker obtained a percept of the given target during
+	 * the current turn.
+	 *
+	 * @param targetNo
+	 *            the number of the target, from 1 to numTargets.
+	 */
+	public void addPercept(int targetNo) {
+		percepts.set(numTurns * numTargets + targetNo - 1);
+	}
+
+	/**
+	 * Completes the current turn, recording a keyframe if one is due.
+	 *
+	 * @param states
+	 *            the states of the players after the turn.
+	 * @param scores
+	 *            the scores of the players after the turn.
+	 */
+	public void endTurn(AgentState[] states, double[] scores) {
+		numTurns++;
+		if (numTurns % keyframeInterval == 0) {
+			addKeyframe(states, scores);
+		}
+	}
+
+	/**
+	 * Discards all turns after the given turn number.
+	 *
+	 * @param turnNo
+	 *            the number of turns to keep.
+	 */
+	public void truncate(int turnNo) {
+		if (turnNo >= numTurns) {
+			return;
+		}
+		numTurns = turnNo;
+		numActions = getFirstAction(turnNo);
+		numTrackerActions = 2 * ((turnNo + 1) / 2);
+		clearFrom(actionCameras, numActions);
+		clearFrom(trackerCameraAdjustments, numTrackerActions);
+		clearFrom(trackerHQCalls, numTrackerActions);
+		clearFrom(percepts, turnNo * numTargets);
+		numKeyframes = turnNo / keyframeInterval + 1;
+		clearFrom(keyframeCameras, numKeyframes * (numTargets + 1));
+	}
+
+	/**
+	 * Clears all of the bits of the given set from the given index onwards.
+	 */
+	private static void clearFrom(BitSet bits, int fromIndex) {
+		if (fromIndex < bits.length()) {
+			bits.clear(fromIndex, bits.length());
+		}
+	}
+
+	/**
+	 * Returns the resulting state of the given action.
+	 *
+	 * @param actionNo
+	 *            the index of the action.
+	 * @return the resulting state of the given action.
+	 */
+	public AgentState getResultingState(int actionNo) {
+		return getState(actionStates, actionCameras, actionNo);
+	}
+
+	/**
+	 * Returns the reward of the given action.
+	 *
+	 * @param actionNo
+	 *            the index of the action.
+	 * @return the reward of the given action.
+	 */
+	public double getReward(int actionNo) {
+		return actionRewards[actionNo];
+	}
+
+	/**
+	 * Returns the encoded desired action of the given action.
+	 *
+	 * @param actionNo
+	 *            the index of the action.
+	 * @return the encoded desired action of the given action.
+	 */
+	public int getDesiredCode(int actionNo) {
+		return desiredCodes[actionNo];
+	}
+
+	/**
+	 * Returns the encoded diverged action of the given action.
+	 *
+	 * @param actionNo
+	 *            the index of the action.
+	 * @return the encoded diverged action of the given action.
+	 */
+	public int getDivergedCode(int actionNo) {
+		return divergedCodes[actionNo];
+	}
+
+	/**
+	 * Returns the exact desired move of the given target action.
+	 *
+	 * @param actionNo
+	 *            the index of the action.
+	 * @return the exact code of the desired move.
+	 */
+	public int getDesiredMove(int actionNo) {
+		return targetMoves[2 * actionNo];
+	}
+
+	/**
+	 * Returns the exact diverged move of the given target action.
+	 *
+	 * @param actionNo
+	 *            the index of the action.
+	 * @return the exact code of the diverged move.
+	 */
+	public int getDivergedMove(int actionNo) {
+		return targetMoves[2 * actionNo + 1];
+	}
+
+	/**
+	 * Rebuilds the tracker's desired action for the given turn.
+	 *
+	 * @param turnNo
+	 *            the turn number, which must be one of the tracker's turns.
+	 * @param startState
+	 *            the state of the tracker at the start of the turn.
+	 * @return the tracker's desired action for the given turn.
+	 */
+	public TrackerAction getDesiredTrackerAction(int turnNo,
+			AgentState startState) {
+		return getTrackerAction(turnNo, startState);
+	}
+
+	/**
+	 * Rebuilds the tracker's diverged action for the given turn.
+	 *
+	 * @param turnNo
+	 *            the turn number, which must be one of the tracker's turns.
+	 * @param startState
+	 *            the state of the tracker at the start of the turn.
+	 * @return the tracker's diverged action for the given turn.
+	 */
+	public TrackerAction getDivergedTrackerAction(int turnNo,
+			AgentState startState) {
+		return getTrackerAction(turnNo + 1, startState);
+	}
+
+	/**
+	 * Returns true iff the tracker obtained a percept of the given target
+	 * during the given turn.
+	 *
+	 * @param turnNo
+	 *            the turn number.
+	 * @param targetNo
+	 *            the number of the target, from 1 to numTargets.
+	 * @return true iff the tracker obtained a percept of the target.
+	 */
+	public boolean hasPercept(int turnNo, int targetNo) {
+		return percepts.get(turnNo * numTargets + targetNo - 1);
+	}
+
+	/**
+	 * Rebuilds the states and scores of the players as of the start of the
+	 * given turn.
+	 *
+	 * @param turnNo
+	 *            the turn number, from 0 to the number of completed turns.
+	 * @param states
+	 *            the array to store the player states in.
+	 * @param scores
+	 *            the array to store the player scores in.
+	 */
+	public void getPlayerStates(int turnNo, AgentState[] states,
+			double[] scores) {
+		if (turnNo < 0 || turnNo > numTurns) {
+			throw new IndexOutOfBoundsException("Turn " + turnNo + " of "
+					+ numTurns);
+		}
+		int keyframeNo = turnNo / keyframeInterval;
+		for (int playerNo = 0; playerNo <= numTargets; playerNo++) {
+			int index = keyframeNo * (numTargets + 1) + playerNo;
+			states[playerNo] = getState(keyframeStates, keyframeCameras, index);
+			scores[playerNo] = keyframeScores[index];
+		}
+		for (int t = keyframeNo * keyframeInterval; t < turnNo; t++) {
+			int actionNo = getFirstAction(t);
+			if (t % 2 == 0) {
+				states[0] = getResultingState(actionNo);
+				scores[0] += actionRewards[actionNo];
+				continue;
+			}
+			for (int playerNo = 1; playerNo <= numTargets; playerNo++) {
+				states[playerNo] = getResultingState(actionNo);
+				scores[playerNo] += actionRewards[actionNo];
+				actionNo++;
+			}
+		}
+	}
+
+	/**
+	 * Records a keyframe for the current turn.
+	 *
+	 * @param states
+	 *            the states of the players.
+	 * @param scores
+	 *            the scores of the players.
+	 */
+	private void addKeyframe(AgentState[] states, double[] scores) {
+		int numPlayers = numTargets + 1;
+		if ((numKeyframes + 1) * numPlayers > keyframeScores.length) {
+			int capacity = 2 * (numKeyframes + 1) * numPlayers;
+			keyframeStates = Arrays.copyOf(keyframeStates, STATE_SIZE
+					* capacity);
+			keyframeScores = Arrays.copyOf(keyframeScores, capacity);
+		}
+		for (int playerNo = 0; playerNo < numPlayers; playerNo++) {
+			int index = numKeyframes * numPlayers + playerNo;
+			putState(keyframeStates, keyframeCameras, index, states[playerNo]);
+			keyframeScores[index] = scores[playerNo];
+		}
+		numKeyframes++;
+	}
+
+	/**
+	 * Stores a tracker action at the given index.
+	 */
+	private void putTrackerAction(int index, TrackerAction action) {
+		int offset = TRACKER_ACTION_SIZE * index;
+		trackerActionValues[offset] = action.getHeading();
+		trackerActionValues[offset + 1] = action.getDistance();
+		trackerActionValues[offset + 2] = action.getResultingState()
+				.getCameraArmLength();
+		trackerCameraAdjustments.set(index, action.isCameraAdjustment());
+		trackerHQCalls.set(index, action.isHQCall());
+	}
+
+	/**
+	 * Rebuilds the tracker action at the given index, from the given state;
+	 * the actions of tracker turn t are at indices t and t + 1.
+	 */
+	private TrackerAction getTrackerAction(int index, AgentState startState) {
+		int offset = TRACKER_ACTION_SIZE * index;
+		if (trackerCameraAdjustments.get(index)) {
+			return new TrackerAction(startState,
+					trackerActionValues[offset + 2]);
+		} else if (trackerHQCalls.get(index)) {
+			return new TrackerAction(startState, true);
+		}
+		return new TrackerAction(startState, trackerActionValues[offset],
+				trackerActionValues[offset + 1]);
+	}
+
+	/**
+	 * Stores a state at the given index of the given arrays.
+	 */
+	private static void putState(double[] values, BitSet cameras, int index,
+			AgentState state) {
+		int offset = STATE_SIZE * index;
+		values[offset] = state.getPosition().getX();
+		values[offset + 1] = state.getPosition().getY();
+		values[offset + 2] = state.getHeading();
+		values[offset + 3] = state.getCameraArmLength();
+		cameras.set(index, state.hasCamera());
+	}
+
+	/**
+	 * Rebuilds the state at the given index of the given arrays.
+	 */
+	private static AgentState getState(double[] values, BitSet cameras,
+			int index) {
+		int offset = STATE_SIZE * index;
+		return new AgentState(new Point2D.Double(values[offset],
+				values[offset + 1]), values[offset + 2], cameras.get(index),
+				values[offset + 3]);
+	}
+}
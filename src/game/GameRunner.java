@@ -1,9 +1,14 @@
 package game;
 
-import geom.GeomTools;
+import geom.ActionEncoder;
+import geom.AgentGrid;
+import geom.GeomKernel;
+import geom.ObstacleIndex;
+import geom.TargetGrid;
+import geom.TargetMoveTable;
+import geom.TargetVisibilityTable;
 import geom.TrackerGrid;
 
-import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.io.BufferedReader;
 import java.io.FileReader;
@@ -11,6 +16,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.InputMismatchException;
@@ -18,9 +24,9 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Scanner;
-import java.util.Stack;
 
 import divergence.ActionDivergence;
+import divergence.DivergenceDistribution;
 import divergence.MotionHistory;
 import divergence.TargetDivergence;
 import divergence.TrackerDivergence;
@@ -46,13 +52,16 @@ public class GameRunner {
 	private static final String DEFAULT_TARGET_FILE = "prob-target.txt";
 	/** The default file for the tracker's divergence distribution. */
 	private static final String DEFAULT_TRACKER_FILE = "prob-tracker.txt";
+	/** The number of targets from which a grid of their positions is used. */
+	private static final int MIN_TARGETS_FOR_GRID = 16;
 	/** The file containing the target's divergence distribution. */
 	private String targetDistributionFile = DEFAULT_TARGET_FILE;
 	/** The file containing the tracker's divergence distribution. */
 	private String trackerDistributionFile = DEFAULT_TRACKER_FILE;
 
 	/**
-	 * Sets the distribution file for the target's divergence.
+	 * Sets the distribution file for the target's divergence; this takes
+	 * effect the next time a setup is loaded.
 	 * 
 	 * @param newPath
 	 *            the new path.
@@ -62,7 +71,8 @@ public class GameRunner {
 	}
 
 	/**
-	 * Sets the distribution file for the tracker's divergence.
+	 * Sets the distribution file for the tracker's divergence; this takes
+	 * effect the next time a setup is loaded.
 	 * 
 	 * @param newPath
 	 *            the new path.
@@ -71,27 +81,222 @@ public class GameRunner {
 		trackerDistributionFile = newPath;
 	}
 
+	/**
+	 * Sets whether a table of what the targets can see is precomputed when a
+	 * setup is loaded; this takes effect the next time a setup is loaded.
+	 * The table is skipped if it would be too large.
+	 * 
+	 * @param useTable
+	 *            whether to precompute the table.
+	 */
+	public void setUseTargetVisibilityTable(boolean useTable) {
+		useTargetVisibilityTable = useTable;
+	}
+
+	/**
+	 * Sets whether a history of each game is recorded; this takes effect the
+	 * next time a game is initialised. Without a history, the state sequence,
+	 * undoing and writing results are unavailable, and the results of a game
+	 * can only be consumed through sinks as it is played.
+	 * 
+	 * @param recordHistory
+	 *            whether to record a history of each game.
+	 */
+	public void setRecordHistory(boolean recordHistory) {
+		this.recordHistory = recordHistory;
+	}
+
+	/**
+	 * Returns true iff a history of each game is recorded.
+	 * 
+	 * @return true iff a history of each game is recorded.
+	 */
+	public boolean isRecordingHistory() {
+		return recordHistory;
+	}
+
+	/**
+	 * Adds a sink to receive the results of each game as it is played.
+	 * 
+	 * @param sink
+	 *            the sink to add.
+	 */
+	public void addSink(GameSink sink) {
+		sinks.add(sink);
+	}
+
+	/**
+	 * Removes a sink added with {@link #addSink(GameSink)}.
+	 * 
+	 * @param sink
+	 *            the sink to remove.
+	 */
+	public void removeSink(GameSink sink) {
+		sinks.remove(sink);
+	}
+
+	/**
+	 * Sets the timer recording the time spent in each phase of the game loop;
+	 * timing is disabled if this is null, which is the default.
+	 * 
+	 * @param timer
+	 *            the timer to use, or null to disable timing.
+	 */
+	public void setPhaseTimer(PhaseTimer timer) {
+		this.timer = timer;
+	}
+
+	/**
+	 * Returns the timer recording the time spent in each phase of the game
+	 * loop, or null if timing is disabled.
+	 * 
+	 * @return the timer, or null if timing is disabled.
+	 */
+	public PhaseTimer getPhaseTimer() {
+		return timer;
+	}
+
+	/**
+	 * Sets the watchdog enforcing time budgets on the tracker's decisions;
+	 * the tracker is called directly, without any time limit, if this is
+	 * null, which is the default.
+	 * 
+	 * @param watchdog
+	 *            the watchdog to use, or null to disable time budgets.
+	 */
+	public void setTrackerWatchdog(TrackerWatchdog watchdog) {
+		this.watchdog = watchdog;
+	}
+
+	/**
+	 * Returns the watchdog enforcing time budgets on the tracker's decisions,
+	 * or null if there are no time budgets.
+	 * 
+	 * @return the watchdog, or null if there are no time budgets.
+	 */
+	public TrackerWatchdog getTrackerWatchdog() {
+		return watchdog;
+	}
+
+	/**
+	 * Sets whether a tracker that is a {@link PonderingAgent} may ponder
+	 * during the targets' turns; this is enabled by default.
+	 * 
+	 * @param enabled
+	 *            whether the tracker may ponder.
+	 */
+	public void setPonderingEnabled(boolean enabled) {
+		if (!enabled) {
+			ponderer.stop();
+		}
+		ponderingEnabled = enabled;
+	}
+
+	/**
+	 * Stops any background threads used by this runner; they are restarted
+	 * if the runner is used again.
+	 */
+	public void shutdown() {
+		try {
+			ponderer.shutdown();
+		} finally {
+			if (watchdog != null) {
+				watchdog.shutdown();
+			}
+		}
+	}
+
 	private double MAX_SIGHT_DISTANCE_ERROR = 1e-5;
-	private int NUM_CAMERA_ARM_STEPS = 1000;
 
-	/** The source of randomness. */
-	private Random random;
+	/** The stream index, under each game's seed, of the next game's seed. */
+	private static final long NEXT_GAME_STREAM = -1;
+
+	/**
+	 * The seed of the next game; the divergence of each player is seeded with
+	 * the stream of its player number under this seed.
+	 */
+	private long gameSeed;
 
 	/**
 	 * Cosntructs a new GameRunner.
 	 */
 	public GameRunner() {
-		random = new Random();
+		gameSeed = new Random().nextLong();
+	}
+
+	/**
+	 * Constructs a new GameRunner that shares the loaded setup of another
+	 * runner, but has its own source of randomness, game state and runtime
+	 * histories. The setup itself is never modified while games are running,
+	 * so runners constructed this way may be used on separate threads.
+	 *
+	 * @param other
+	 *            the runner whose setup should be shared.
+	 */
+	public GameRunner(GameRunner other) {
+		this();
+		this.targetDistributionFile = other.targetDistributionFile;
+		this.trackerDistributionFile = other.trackerDistributionFile;
+
+		this.setupLoaded = other.setupLoaded;
+		this.numTargets = other.numTargets;
+		this.targetPolicy = other.targetPolicy;
+		this.targetMotionHistory = other.targetMotionHistory;
+		this.targetSensingParams = other.targetSensingParams;
+		this.targetInitialStates = other.targetInitialStates;
+		this.targetDistribution = other.targetDistribution;
+		this.trackerMotionHistory = other.trackerMotionHistory;
+		this.trackerDistribution = other.trackerDistribution;
+		this.trackerSensingParams = other.trackerSensingParams;
+		this.trackerInitialState = other.trackerInitialState;
+		this.trackerMoveDistance = other.trackerMoveDistance;
+		this.obstacles = other.obstacles;
+		this.goalRegion = other.goalRegion;
+		this.extendedObstacles = other.extendedObstacles;
+		this.obstacleIndex = other.obstacleIndex;
+		this.extendedObstacleIndex = other.extendedObstacleIndex;
+		this.targetMoveTable = other.targetMoveTable;
+		this.useTargetVisibilityTable = other.useTargetVisibilityTable;
+		this.targetVisibilityTable = other.targetVisibilityTable;
+		this.recordHistory = other.recordHistory;
+		if (other.timer != null) {
+			this.timer = new PhaseTimer();
+		}
+		if (other.watchdog != null) {
+			this.watchdog = new TrackerWatchdog(other.watchdog);
+		}
+		this.ponderingEnabled = other.ponderingEnabled;
+
+		runtimeTrackerMotionHistory = new MotionHistory();
+		runtimeTargetMotionHistory = new MotionHistory();
+	}
+
+	/**
+	 * Returns a forward model of the loaded setup, sharing this runner's
+	 * obstacle indices and target visibility table.
+	 * 
+	 * @return a forward model of the loaded setup.
+	 */
+	public ForwardModel createForwardModel() {
+		if (!setupLoaded) {
+			throw new IllegalStateException("No setup loaded");
+		}
+		return new ForwardModel(numTargets, targetPolicy, targetDistribution,
+				targetSensingParams, (trackerMotionHistory == null) ? null
+						: trackerDistribution, trackerSensingParams,
+				goalRegion, obstacleIndex, extendedObstacleIndex,
+				targetMoveTable, targetVisibilityTable);
 	}
 
 	/**
-	 * Sets the seed for randomization within this GameRunner.
+	 * Sets the seed for randomization within the next game of this GameRunner.
+	 * Games started without setting a new seed are seeded from the one before.
 	 * 
 	 * @param seed
 	 *            the seed for the randomizer.
 	 */
 	public void setSeed(long seed) {
-		random.setSeed(seed);
+		gameSeed = seed;
 	}
 
 	/** Runtime motion history of the tracker. */
@@ -114,12 +319,19 @@ public class GameRunner {
 	private SensingParameters targetSensingParams;
 	/** The initial state(s) of the target(s). */
 	private List<AgentState> targetInitialStates;
+	/** The (shared) divergence distribution of the target(s). */
+	private DivergenceDistribution targetDistribution;
 
 	/**
 	 * The motion history of the tracker, or null if the tracker's motion is
 	 * deterministic.
 	 */
 	private MotionHistory trackerMotionHistory = null;
+	/**
+	 * The divergence distribution of the tracker, or null if the tracker's
+	 * motion is deterministic.
+	 */
+	private DivergenceDistribution trackerDistribution = null;
 	/** The sensing parameters of the tracker. */
 	private SensingParameters trackerSensingParams;
 	/** The initial state of the tracker. */
@@ -138,6 +350,21 @@ public class GameRunner {
 	 */
 	private List<RectRegion> extendedObstacles;
 
+	/** The spatial index of the obstacles. */
+	private ObstacleIndex obstacleIndex;
+	/** The spatial index of the extended obstacles. */
+	private ObstacleIndex extendedObstacleIndex;
+	/** The precomputed table of the targets' moves between grid cells. */
+	private TargetMoveTable targetMoveTable;
+
+	/** True iff the target visibility table should be built. */
+	private boolean useTargetVisibilityTable = false;
+	/**
+	 * The precomputed table of what the targets can see, or null if there is
+	 * no such table.
+	 */
+	private TargetVisibilityTable targetVisibilityTable = null;
+
 	/**
 	 * Loads the problem setup from a text file.
 	 * 
@@ -172,6 +399,8 @@ public class GameRunner {
 			s = new Scanner(line);
 			String policyPath = baseFolder.resolve(s.next()).toString();
 			targetPolicy = new TargetPolicy(policyPath);
+			targetDistribution = new DivergenceDistribution(
+					targetDistributionFile);
 			trackerMoveDistance = 1.0 / targetPolicy.getGridSize();
 			if (hasTargetHistory) {
 				String targetHistoryPath = baseFolder.resolve(s.next())
@@ -207,6 +436,8 @@ public class GameRunner {
 
 			if (hasTrackerHistory) {
 				trackerMotionHistory = new MotionHistory(trackerHistoryPath);
+				trackerDistribution = new DivergenceDistribution(
+						trackerDistributionFile);
 			}
 
 			line = input.readLine();
@@ -241,11 +472,20 @@ public class GameRunner {
 				obstacles.add(new RectRegion(line));
 			}
 
-			extendedObstacles = new ArrayList<RectRegion>(obstacles);
-			extendedObstacles.add(new RectRegion(-1, -1, 1, 3));
-			extendedObstacles.add(new RectRegion(-1, -1, 3, 1));
-			extendedObstacles.add(new RectRegion(-1, 1, 3, 1));
-			extendedObstacles.add(new RectRegion(1, -1, 1, 3));
+			extendedObstacles = ForwardModel.extendObstacles(obstacles);
+			obstacleIndex = new ObstacleIndex(obstacles);
+			extendedObstacleIndex = new ObstacleIndex(extendedObstacles);
+			targetMoveTable = new TargetMoveTable(targetPolicy.getGrid(),
+					extendedObstacleIndex);
+			targetGrid = null;
+			targetVisibilityTable = null;
+			if (useTargetVisibilityTable
+					&& TargetVisibilityTable.estimateBytes(targetPolicy
+							.getGridSize()) <= TargetVisibilityTable.DEFAULT_MAX_BYTES) {
+				targetVisibilityTable = new TargetVisibilityTable(
+						targetPolicy.getGrid(), targetSensingParams, obstacles,
+						MAX_SIGHT_DISTANCE_ERROR);
+			}
 
 			setupLoaded = true;
 			runtimeTrackerMotionHistory = new MotionHistory();
@@ -404,33 +644,22 @@ public class GameRunner {
 			playerDivs = new ActionDivergence[numTargets + 1];
 			playerScores = new double[numTargets + 1];
 			playerStates = new AgentState[numTargets + 1];
+			long seed = gameSeed;
+			gameSeed = SplitMix64Random.deriveSeed(seed, NEXT_GAME_STREAM);
 			for (int i = 1; i <= numTargets; i++) {
 				players[i] = new Target(targetPolicy);
-				long seed = random.nextLong();
-				// System.out.println(String.format("Tracker #%d seed: %d", i,
-				// seed));
-				try {
-					playerDivs[i] = new TargetDivergence(
-							targetPolicy.getGrid(), targetDistributionFile);
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-				playerDivs[i].setSeed(seed);
+				playerDivs[i] = new TargetDivergence(targetPolicy.getGrid(),
+						targetDistribution);
+				playerDivs[i].setSeed(SplitMix64Random.deriveSeed(seed, i));
 				playerScores[i] = 0;
 				playerStates[i] = targetInitialStates.get(i - 1);
 			}
 			if (trackerMotionHistory == null) {
 				playerDivs[0] = new ZeroDivergence();
 			} else {
-				long seed = random.nextLong();
-				// System.out.println(String.format("Target seed: %d", seed));
-				try {
-					playerDivs[0] = new TrackerDivergence(trackerMoveDistance,
-							trackerDistributionFile);
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-				playerDivs[0].setSeed(seed);
+				playerDivs[0] = new TrackerDivergence(trackerMoveDistance,
+						trackerDistribution);
+				playerDivs[0].setSeed(SplitMix64Random.deriveSeed(seed, 0));
 			}
 			playerScores[0] = 0;
 			playerStates[0] = trackerInitialState;
@@ -583,14 +812,51 @@ public class GameRunner {
 		}
 	}
 
-	/** The sequence of attempted actions with associated results */
-	private Stack<ActionResult[]> actionResultSequence = new Stack<ActionResult[]>();
-	/** The sequence of states of the game. */
-	private Stack<GameState> stateSequence = new Stack<GameState>();
+	/** True iff a history of each game should be recorded. */
+	private boolean recordHistory = true;
+	/** The timer for the phases of the game loop, or null if disabled. */
+	private PhaseTimer timer = null;
+	/** The watchdog for the tracker's decisions, or null if disabled. */
+	private TrackerWatchdog watchdog = null;
+	/** True iff the tracker may ponder during the targets' turns. */
+	private boolean ponderingEnabled = true;
+	/** Runs the tracker's pondering. */
+	private Ponderer ponderer = new Ponderer();
+	/** The sinks receiving the results of each game. */
+	private List<GameSink> sinks = new ArrayList<GameSink>();
+	/** The compact history of the current game, or null if not recording. */
+	private GameHistory history = null;
+	/**
+	 * True iff the actions in the history were inferred from a loaded game,
+	 * rather than recorded as they were taken.
+	 */
+	private boolean actionsInferred = false;
+	/** The result of the tracker's last action, or null if it hasn't acted. */
+	private ActionResult lastTrackerResult = null;
 	/** The current state of the game. */
 	private GameState cs = null;
 	/** Corrects the actions of the tracker. */
 	private ActionCorrector trackerActionCorrector;
+	/** Encodes the tracker's actions for its motion history. */
+	private TrackerGrid trackerEncoder;
+	/**
+	 * The grid of target positions, rebuilt on each of the tracker's turns, or
+	 * null if it hasn't been needed since the setup was loaded.
+	 */
+	private AgentGrid targetGrid = null;
+	/** The x-coordinates of the targets, for building the grid. */
+	private double[] targetXs;
+	/** The y-coordinates of the targets, for building the grid. */
+	private double[] targetYs;
+	/** The numbers of the targets found near the tracker. */
+	private int[] nearbyTargets;
+	/**
+	 * The results of the tracker's visibility tests since the start of its
+	 * last turn.
+	 */
+	private VisibilityMemo visibilityMemo = new VisibilityMemo();
+	/** The working space for the geometric tests of each turn. */
+	private GeomKernel geomKernel = new GeomKernel();
 
 	/** Returns true iff a game is active and complete. */
 	public boolean gameComplete() {
@@ -598,21 +864,247 @@ public class GameRunner {
 	}
 
 	/**
-	 * Returns the sequence of actions with associated results.
+	 * Returns the sequence of actions with associated results, rebuilt on
+	 * demand from the game history. For a loaded game, the desired and
+	 * diverged actions of each result are both inferred from the change in
+	 * state.
 	 * 
 	 * @return the sequence of actions with associated results.
 	 */
-	public Stack<ActionResult[]> getActionResultSequence() {
-		return actionResultSequence;
+	public List<ActionResult[]> getActionResultSequence() {
+		requireHistory();
+		return new AbstractList<ActionResult[]>() {
+			@Override
+			public ActionResult[] get(int turnNo) {
+				if (turnNo < 0 || turnNo >= history.getNumTurns()) {
+					throw new IndexOutOfBoundsException("Turn " + turnNo);
+				}
+				return getActionResults(turnNo);
+			}
+
+			@Override
+			public int size() {
+				return history.getNumTurns();
+			}
+		};
 	}
 
 	/**
-	 * Returns the sequence of game states.
+	 * Returns the sequence of game states, rebuilt on demand from the game
+	 * history; the last state is the current state of the game.
 	 * 
 	 * @return the sequence of game states.
 	 */
-	public Stack<GameState> getStateSequence() {
-		return stateSequence;
+	public List<GameState> getStateSequence() {
+		requireHistory();
+		return new AbstractList<GameState>() {
+			@Override
+			public GameState get(int turnNo) {
+				if (turnNo == cs.turnNo) {
+					return cs;
+				}
+				return rebuildState(turnNo);
+			}
+
+			@Override
+			public int size() {
+				return history.getNumTurns() + 1;
+			}
+		};
+	}
+
+	/**
+	 * Checks that a history of the current game is being recorded.
+	 * 
+	 * @throws IllegalStateException
+	 *             if no history is being recorded.
+	 */
+	private void requireHistory() {
+		if (history == null) {
+			throw new IllegalStateException(
+					"No history is being recorded for this game.");
+		}
+	}
+
+	/**
+	 * Rebuilds the state of the game as of the start of the given turn.
+	 * 
+	 * @param turnNo
+	 *            the turn number.
+	 * @return the state of the game at the start of the given turn.
+	 */
+	private GameState rebuildState(int turnNo) {
+		GameState state = new GameState(cs);
+		state.turnNo = turnNo;
+		state.isTrackerTurn = (turnNo % 2 == 0);
+		state.gameComplete = cs.gameComplete
+				&& turnNo == history.getNumTurns();
+		history.getPlayerStates(turnNo, state.playerStates, state.playerScores);
+
+		// Percepts are gathered from the tracker's last turn onwards.
+		state.trackerPercepts.clear();
+		int trackerTurnNo = (turnNo - 1) & ~1;
+		if (trackerTurnNo >= 0) {
+			AgentState[] states = new AgentState[numTargets + 1];
+			double[] scores = new double[numTargets + 1];
+			history.getPlayerStates(trackerTurnNo, states, scores);
+			addPercepts(state.trackerPercepts, trackerTurnNo, states);
+			if (trackerTurnNo + 1 < turnNo) {
+				addPercepts(state.trackerPercepts, trackerTurnNo + 1,
+						state.playerStates);
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Adds the percepts the tracker obtained during the given turn to the
+	 * given list.
+	 * 
+	 * @param percepts
+	 *            the list to add to.
+	 * @param turnNo
+	 *            the turn number.
+	 * @param states
+	 *            the states of the players at the time of the percepts.
+	 */
+	private void addPercepts(List<Percept> percepts, int turnNo,
+			AgentState[] states) {
+		for (int i = 1; i <= numTargets; i++) {
+			if (history.hasPercept(turnNo, i)) {
+				percepts.add(new Percept(turnNo, i, states[i]));
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the results of the actions taken during the given turn.
+	 * 
+	 * @param turnNo
+	 *            the turn number.
+	 * @return the results of the actions taken during the given turn.
+	 */
+	private ActionResult[] getActionResults(int turnNo) {
+		AgentState[] states = new AgentState[numTargets + 1];
+		double[] scores = new double[numTargets + 1];
+		history.getPlayerStates(turnNo, states, scores);
+		int numActions = history.getNumActions(turnNo);
+		int actionNo = history.getFirstAction(turnNo);
+		ActionResult[] results = new ActionResult[numActions];
+		for (int i = 0; i < numActions; i++) {
+			int playerNo = (turnNo % 2 == 0) ? 0 : i + 1;
+			AgentState newState = history.getResultingState(actionNo + i);
+			Action desiredAction;
+			Action divergedAction;
+			if (actionsInferred) {
+				desiredAction = inferAction(playerNo, states[playerNo],
+						newState);
+				divergedAction = desiredAction;
+			} else if (playerNo == 0) {
+				desiredAction = history.getDesiredTrackerAction(turnNo,
+						states[0]);
+				divergedAction = history.getDivergedTrackerAction(turnNo,
+						states[0]);
+			} else {
+				desiredAction = decodeTargetAction(states[playerNo],
+						history.getDesiredMove(actionNo + i));
+				divergedAction = decodeTargetAction(states[playerNo],
+						history.getDivergedMove(actionNo + i));
+			}
+			results[i] = new ActionResult(desiredAction, divergedAction,
+					newState, history.getReward(actionNo + i));
+		}
+		return results;
+	}
+
+	/**
+	 * Rebuilds a target action from its exact move, in the same way as the
+	 * target policy and divergence build their actions.
+	 * 
+	 * @param startState
+	 *            the state of the target before the action.
+	 * @param moveCode
+	 *            the exact code of the move.
+	 * @return the target action.
+	 */
+	private Action decodeTargetAction(AgentState startState, int moveCode) {
+		TargetGrid grid = targetPolicy.getGrid();
+		Point2D startPos = startState.getPosition();
+		int startRow = grid.getRow(startPos.getY());
+		int startCol = grid.getCol(startPos.getX());
+		int endRow = grid.decodeRow(startRow, moveCode);
+		int endCol = grid.decodeCol(startCol, moveCode);
+		if (endRow == startRow && endCol == startCol) {
+			return new Action(startState);
+		}
+		return new Action(startState, new Point2D.Double(
+				grid.getCentreX(endCol), grid.getCentreY(endRow)));
+	}
+
+	/**
+	 * Returns an action that takes the given player from the old state to the
+	 * new state, for a loaded game. HQ calls can't be inferred, and are
+	 * ignored.
+	 * 
+	 * @param playerNo
+	 *            the acting player.
+	 * @param oldState
+	 *            the state before the action.
+	 * @param newState
+	 *            the state after the action.
+	 * @return an action that takes the player from the old state to the new.
+	 */
+	private Action inferAction(int playerNo, AgentState oldState,
+			AgentState newState) {
+		if (playerNo != 0) {
+			return new Action(oldState, newState.getPosition());
+		}
+		if (!oldState.getPosition().equals(newState.getPosition())) {
+			return new TrackerAction(oldState, newState.getHeading(),
+					trackerMoveDistance);
+		} else if (oldState.getHeading() != newState.getHeading()) {
+			return new TrackerAction(oldState, newState.getHeading(), 0);
+		} else if (oldState.getCameraArmLength() != newState
+				.getCameraArmLength()) {
+			return new TrackerAction(oldState, newState.getCameraArmLength());
+		} else {
+			return new TrackerAction(oldState, false);
+		}
+	}
+
+	/**
+	 * Records the result of an action in the game history, and passes it on
+	 * to the sinks.
+	 * 
+	 * @param playerNo
+	 *            the acting player.
+	 * @param result
+	 *            the result of the action.
+	 */
+	private void recordAction(int playerNo, ActionResult result) {
+		for (GameSink sink : sinks) {
+			long start = startTiming();
+			sink.actionTaken(this, cs.turnNo, playerNo, result);
+			stopTiming(getSinkPhase(sink), start);
+		}
+		if (history == null) {
+			return;
+		}
+		ActionEncoder encoder = (playerNo == 0) ? trackerEncoder
+				: targetPolicy.getGrid();
+		history.addAction(result.getResultingState(), result.getReward(),
+				encoder.encodeAction(result.getDesiredAction()),
+				encoder.encodeAction(result.getDivergedAction()));
+		if (playerNo == 0) {
+			history.addTrackerActions(
+					(TrackerAction) result.getDesiredAction(),
+					(TrackerAction) result.getDivergedAction());
+		} else {
+			TargetGrid grid = targetPolicy.getGrid();
+			history.addTargetMoves(
+					grid.encodeMove(result.getDesiredAction()),
+					grid.encodeMove(result.getDivergedAction()));
+		}
 	}
 
 	/**
@@ -628,12 +1120,35 @@ public class GameRunner {
 	 * Reinitialises the game (i.e. goes to turn 0).
 	 */
 	public void initialise() {
-		actionResultSequence.clear();
-		stateSequence.clear();
+		ponderer.stop();
 		cs = new GameState();
-		stateSequence.add(cs);
+		visibilityMemo.clear();
+		history = null;
+		actionsInferred = false;
+		if (recordHistory) {
+			startHistory();
+		}
+		lastTrackerResult = null;
+		trackerEncoder = new TrackerGrid(trackerMoveDistance / 2);
 		trackerActionCorrector = new ActionCorrector(trackerMoveDistance,
 				trackerSensingParams);
+		if (watchdog != null) {
+			watchdog.startGame();
+		}
+		for (GameSink sink : sinks) {
+			long start = startTiming();
+			sink.gameStarted(this);
+			stopTiming(getSinkPhase(sink), start);
+		}
+	}
+
+	/**
+	 * Starts a new history for the current game.
+	 */
+	private void startHistory() {
+		history = new GameHistory(numTargets,
+				GameHistory.DEFAULT_KEYFRAME_INTERVAL);
+		history.reset(cs.playerStates, cs.playerScores);
 	}
 
 	/**
@@ -646,20 +1161,17 @@ public class GameRunner {
 		if (desiredTurnNo >= cs.turnNo) {
 			return;
 		}
-
-		int turnNo = cs.turnNo;
-		while (turnNo > desiredTurnNo) {
-			GameState state = stateSequence.pop();
-			turnNo -= 1;
-			if (state.isTrackerTurn()) {
-				actionResultSequence.pop();
-			} else {
-				for (int i = 0; i < numTargets; i++) {
-					actionResultSequence.pop();
-				}
-			}
+		requireHistory();
+		ponderer.stop();
+
+		cs.gameComplete = false;
+		history.truncate(desiredTurnNo);
+		cs = rebuildState(desiredTurnNo);
+		int trackerTurnNo = (desiredTurnNo - 1) & ~1;
+		lastTrackerResult = null;
+		if (trackerTurnNo >= 0) {
+			lastTrackerResult = getActionResults(trackerTurnNo)[0];
 		}
-		cs = stateSequence.get(turnNo);
 	}
 
 	/**
@@ -686,26 +1198,39 @@ public class GameRunner {
 		Action desiredAction;
 		if (playerNo == 0) {
 			// Retrieve the result of the previous tracker action, if present.
-			int actionIndex = actionResultSequence.size() - 2;
-			if (actionIndex >= 0) {
-				previousResult = actionResultSequence.get(actionIndex)[0];
+			if (lastTrackerResult != null) {
+				previousResult = lastTrackerResult;
 			}
 			// Copy the game's scores to inform the tracker.
 			double[] scores = Arrays.copyOf(cs.playerScores, numTargets + 1);
-			desiredAction = cs.players[0].getAction(cs.turnNo, previousResult,
-					scores, new ArrayList<Percept>(cs.trackerPercepts));
+			List<Percept> newPercepts = new ArrayList<Percept>(
+					cs.trackerPercepts);
+			ponderer.stop();
+			long start = startTiming();
+			if (watchdog != null) {
+				desiredAction = watchdog.getAction(cs.players[0], cs.turnNo,
+						previousResult, scores, newPercepts);
+			} else {
+				desiredAction = cs.players[0].getAction(cs.turnNo,
+						previousResult, scores, newPercepts);
+			}
+			stopTiming(PhaseTimer.Phase.TRACKER_ACTION, start);
 			cs.trackerPercepts.clear();
 			// Correct the action to ensure values are within the correct
 			// ranges.
 			desiredAction = trackerActionCorrector.divergeAction(desiredAction);
 		} else {
+			long start = startTiming();
 			desiredAction = cs.players[playerNo].getAction(cs.turnNo,
 					previousResult, null, null);
+			stopTiming(PhaseTimer.Phase.TARGET_ACTION, start);
 		}
 
 		// Diverge the action.
+		long start = startTiming();
 		Action divergedAction = cs.playerDivs[playerNo]
 				.divergeAction(desiredAction);
+		stopTiming(PhaseTimer.Phase.DIVERGENCE, start);
 
 		// Simulate the action.
 		double reward = simulateAction(cs.turnNo, playerNo, divergedAction);
@@ -723,21 +1248,43 @@ public class GameRunner {
 	 * Simulates a single turn of the game.
 	 */
 	public void simulateTurn() {
-		// Duplicate the state for modification.
-		cs = new GameState(cs);
 		if (cs.isTrackerTurn) {
-			ActionResult result = simulatePlayerTurn(0);
-			actionResultSequence.add(new ActionResult[] { result });
+			lastTrackerResult = simulatePlayerTurn(0);
+			recordAction(0, lastTrackerResult);
 		} else {
-			ActionResult[] results = new ActionResult[numTargets];
 			for (int i = 1; i <= numTargets; i++) {
-				results[i - 1] = simulatePlayerTurn(i);
+				recordAction(i, simulatePlayerTurn(i));
 			}
-			actionResultSequence.add(results);
 		}
 		cs.turnNo += 1;
 		cs.isTrackerTurn = !cs.isTrackerTurn;
-		stateSequence.add(cs);
+		endTurn();
+		if (cs.gameComplete) {
+			ponderer.stop();
+		} else if (!cs.isTrackerTurn && ponderingEnabled
+				&& cs.players[0] instanceof PonderingAgent
+				&& (watchdog == null || !watchdog.isBusy())) {
+			// A tracker still working on a decision that ran out of time
+			// mustn't be asked to ponder at the same time.
+			ponderer.start((PonderingAgent) cs.players[0], cs.turnNo - 1);
+		}
+	}
+
+	/**
+	 * Completes the current turn in the game history, and tells the sinks if
+	 * the game is over.
+	 */
+	private void endTurn() {
+		if (history != null) {
+			history.endTurn(cs.playerStates, cs.playerScores);
+		}
+		if (cs.gameComplete) {
+			for (GameSink sink : sinks) {
+				long start = startTiming();
+				sink.gameEnded(this);
+				stopTiming(getSinkPhase(sink), start);
+			}
+		}
 	}
 
 	/**
@@ -755,13 +1302,19 @@ public class GameRunner {
 	public double simulateAction(int turnNo, int playerNo, Action action) {
 		boolean isHQCall = false;
 		double reward = 0;
+		if (playerNo == 0) {
+			// The memo only needs to last until the tracker moves again.
+			visibilityMemo.clear();
+		}
 
 		// Execute any movement or camera adjustment.
+		long start = startTiming();
 		if (action.isMovement()) {
 			simulateMovement(turnNo, playerNo, action);
 		} else if (action.isCameraAdjustment()) {
 			simulateCameraAdjustment(turnNo, playerNo, action);
 		}
+		stopTiming(PhaseTimer.Phase.MOVEMENT, start);
 
 		// Check whether this is an HQ call, and update the reward if so.
 		if (playerNo == 0) {
@@ -773,13 +1326,16 @@ public class GameRunner {
 		}
 
 		// Check whether the tracker and target see each other.
+		start = startTiming();
 		if (playerNo == 0) {
-			// Evaluate the tracker's scoring.
-			for (int otherNo = 1; otherNo <= numTargets; otherNo++) {
-				boolean canSee = GeomTools.canSee(cs.playerStates[playerNo],
-						cs.playerStates[otherNo], trackerSensingParams,
-						obstacles, MAX_SIGHT_DISTANCE_ERROR,
-						NUM_CAMERA_ARM_STEPS);
+			// Evaluate the tracker's scoring; an HQ call needs a percept of
+			// every target, but otherwise only the nearby ones can matter.
+			int numCandidates = isHQCall ? numTargets
+					: findTargetsNear(cs.playerStates[0]);
+			for (int k = 0; k < numCandidates; k++) {
+				int otherNo = isHQCall ? k + 1 : nearbyTargets[k];
+				boolean canSee = trackerCanSee(cs.playerStates[playerNo],
+						otherNo);
 				if (canSee) {
 					// Reward for seeing the target.
 					reward += 1;
@@ -789,26 +1345,194 @@ public class GameRunner {
 				if (canSee || isHQCall) {
 					cs.trackerPercepts.add(new Percept(turnNo, otherNo,
 							new AgentState(cs.playerStates[otherNo])));
+					if (history != null) {
+						history.addPercept(otherNo);
+					}
 				}
 			}
 		} else {
 			// If the target sees the tracker, the target gets rewarded.
-			if (GeomTools.canSee(cs.playerStates[playerNo], cs.playerStates[0],
-					targetSensingParams, obstacles, MAX_SIGHT_DISTANCE_ERROR,
-					NUM_CAMERA_ARM_STEPS)) {
+			if (mayBeInRange(cs.playerStates[playerNo], cs.playerStates[0],
+					targetSensingParams)
+					&& targetCanSee(cs.playerStates[playerNo],
+							cs.playerStates[0])) {
 				reward += 1;
 			}
 			// The tracker sees the target -> percept but no reward.
-			if (GeomTools.canSee(cs.playerStates[0], cs.playerStates[playerNo],
-					trackerSensingParams, obstacles, MAX_SIGHT_DISTANCE_ERROR,
-					NUM_CAMERA_ARM_STEPS)) {
+			// This repeats the test from the tracker's turn, so the memo
+			// answers it unless the target has moved since.
+			if (trackerCanSee(cs.playerStates[0], playerNo)) {
 				cs.trackerPercepts.add(new Percept(turnNo, playerNo,
 						new AgentState(cs.playerStates[playerNo])));
+				if (history != null) {
+					history.addPercept(playerNo);
+				}
 			}
 		}
+		stopTiming(PhaseTimer.Phase.VISIBILITY, start);
 		return reward;
 	}
 
+	/**
+	 * Returns false if the observer is certainly too far from the observee to
+	 * see it, allowing for the camera arms of both of them; this is much
+	 * cheaper than the exact test.
+	 * 
+	 * @param observerState
+	 *            the state of the observer.
+	 * @param observeeState
+	 *            the state of the potential observee.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @return false if the observer certainly can't see the observee.
+	 */
+	private boolean mayBeInRange(AgentState observerState,
+			AgentState observeeState, SensingParameters sp) {
+		double reach = sp.getRange() + 2 * MAX_SIGHT_DISTANCE_ERROR
+				+ observerState.getCameraArmLength()
+				+ observeeState.getCameraArmLength();
+		return observerState.getPosition().distanceSq(
+				observeeState.getPosition()) <= reach * reach;
+	}
+
+	/**
+	 * Stores the numbers of the targets that may be close enough for the
+	 * tracker in the given state to see them in nearbyTargets, in ascending
+	 * order, and returns how many there are. With enough targets, the grid of
+	 * target positions is rebuilt and queried; otherwise every target is
+	 * returned.
+	 * 
+	 * @param trackerState
+	 *            the state of the tracker.
+	 * @return the number of targets found.
+	 */
+	private int findTargetsNear(AgentState trackerState) {
+		if (nearbyTargets == null || nearbyTargets.length != numTargets) {
+			nearbyTargets = new int[numTargets];
+		}
+		if (numTargets < MIN_TARGETS_FOR_GRID) {
+			for (int i = 0; i < numTargets; i++) {
+				nearbyTargets[i] = i + 1;
+			}
+			return numTargets;
+		}
+		if (targetGrid == null || targetXs.length != numTargets) {
+			targetGrid = new AgentGrid(trackerSensingParams.getRange());
+			targetXs = new double[numTargets];
+			targetYs = new double[numTargets];
+		}
+		double maxArmLength = 0;
+		for (int i = 0; i < numTargets; i++) {
+			AgentState targetState = cs.playerStates[i + 1];
+			targetXs[i] = targetState.getPosition().getX();
+			targetYs[i] = targetState.getPosition().getY();
+			maxArmLength = Math.max(maxArmLength,
+					targetState.getCameraArmLength());
+		}
+		targetGrid.build(targetXs, targetYs, numTargets);
+
+		double radius = trackerSensingParams.getRange() + 2
+				* MAX_SIGHT_DISTANCE_ERROR + trackerState.getCameraArmLength()
+				+ maxArmLength;
+		Point2D pos = trackerState.getPosition();
+		int numFound = targetGrid.getAgentsNear(pos.getX(), pos.getY(),
+				radius, nearbyTargets);
+		for (int k = 0; k < numFound; k++) {
+			nearbyTargets[k]++;
+		}
+		return numFound;
+	}
+
+	/**
+	 * Returns true iff the tracker in the given state can see the given target
+	 * in its current state, consulting the visibility memo first.
+	 * 
+	 * @param trackerState
+	 *            the state of the tracker.
+	 * @param targetNo
+	 *            the number of the target.
+	 * @return true iff the tracker can see the target.
+	 */
+	private boolean trackerCanSee(AgentState trackerState, int targetNo) {
+		AgentState targetState = cs.playerStates[targetNo];
+		if (!mayBeInRange(trackerState, targetState, trackerSensingParams)) {
+			return false;
+		}
+		int memoised = visibilityMemo.get(targetNo, trackerState, targetState);
+		if (memoised != VisibilityMemo.UNKNOWN) {
+			return memoised == VisibilityMemo.VISIBLE;
+		}
+		boolean canSee = geomKernel.canSee(trackerState, targetState,
+				trackerSensingParams, obstacleIndex, MAX_SIGHT_DISTANCE_ERROR);
+		visibilityMemo.put(targetNo, trackerState, targetState, canSee);
+		return canSee;
+	}
+
+	/**
+	 * Returns true iff a target in the given state can see the tracker,
+	 * consulting the target visibility table first if there is one.
+	 * 
+	 * @param targetState
+	 *            the state of the target.
+	 * @param trackerState
+	 *            the state of the tracker.
+	 * @return true iff the target can see the tracker.
+	 */
+	private boolean targetCanSee(AgentState targetState,
+			AgentState trackerState) {
+		if (targetVisibilityTable != null) {
+			int result = targetVisibilityTable.canSee(targetState,
+					trackerState.getPosition());
+			if (result == TargetVisibilityTable.VISIBLE) {
+				return true;
+			} else if (result == TargetVisibilityTable.NOT_VISIBLE) {
+				return geomKernel.canSeeCameraArm(targetState, trackerState,
+						targetSensingParams, obstacleIndex,
+						MAX_SIGHT_DISTANCE_ERROR);
+			}
+		}
+		return geomKernel.canSee(targetState, trackerState,
+				targetSensingParams, obstacleIndex, MAX_SIGHT_DISTANCE_ERROR);
+	}
+
+	/**
+	 * Returns the start time of a timed section, if timing is enabled.
+	 * 
+	 * @return the current time in nanoseconds, or 0 if timing is disabled.
+	 */
+	private long startTiming() {
+		return (timer != null) ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Returns the phase that time spent in the given sink counts towards;
+	 * writing the output file counts as output, like
+	 * {@link #writeResults(String)}, and any other sink counts as a sink.
+	 * 
+	 * @param sink
+	 *            the sink.
+	 * @return the phase of the sink.
+	 */
+	private static PhaseTimer.Phase getSinkPhase(GameSink sink) {
+		return (sink instanceof OutputFileSink) ? PhaseTimer.Phase.OUTPUT
+				: PhaseTimer.Phase.SINKS;
+	}
+
+	/**
+	 * Records the time since the given start time against the given phase,
+	 * if timing is enabled.
+	 * 
+	 * @param phase
+	 *            the phase.
+	 * @param start
+	 *            the start time returned by {@link #startTiming()}.
+	 */
+	private void stopTiming(PhaseTimer.Phase phase, long start) {
+		if (timer != null) {
+			timer.record(phase, System.nanoTime() - start);
+		}
+	}
+
 	/**
 	 * Simulates only the camera adjustment aspect of an action.
 	 * 
@@ -832,10 +1556,16 @@ public class GameRunner {
 		if (resultingState.getCameraArmLength() > startState
 				.getCameraArmLength()) {
 			Point2D playerPos = startState.getPosition();
-			Point2D cameraPos = GeomTools.calculateViewPosition(resultingState);
-			Line2D.Double playerLine = new Line2D.Double(playerPos, cameraPos);
+			double heading = resultingState.getHeading();
+			boolean hasCamera = resultingState.hasCamera();
+			double armLength = resultingState.getCameraArmLength();
+			double cameraX = GeomKernel.getViewX(playerPos.getX(), heading,
+					hasCamera, armLength);
+			double cameraY = GeomKernel.getViewY(playerPos.getY(), heading,
+					hasCamera, armLength);
 			// If the new camera arm length causes collision, don't update.
-			if (!GeomTools.isCollisionFree(playerLine, extendedObstacles)) {
+			if (!extendedObstacleIndex.isCollisionFree(playerPos.getX(),
+					playerPos.getY(), cameraX, cameraY)) {
 				return;
 			}
 		}
@@ -871,19 +1601,30 @@ public class GameRunner {
 		boolean hasCamera = endState.hasCamera();
 		double armLength = endState.getCameraArmLength();
 
-		// If the action includes an impossible turn, ignore the action.
-		if (hasCamera
-				&& (startHeading != endHeading)
-				&& !GeomTools.canTurn(startPos, startHeading, endHeading,
-						armLength, extendedObstacles)) {
-			return;
+		// A target's move between grid cells is looked up in the table.
+		int tableResult = TargetMoveTable.UNKNOWN;
+		if (playerNo != 0) {
+			tableResult = targetMoveTable.canMove(startState, endPos);
 		}
-
-		// If the movement is invalid, ignore the whole action.
-		if (distance != 0
-				&& !GeomTools.canMove(startPos, endPos, hasCamera, armLength,
-						extendedObstacles)) {
+		if (tableResult == TargetMoveTable.INVALID) {
 			return;
+		} else if (tableResult == TargetMoveTable.UNKNOWN) {
+			// If the action includes an impossible turn, ignore the action.
+			if (hasCamera
+					&& (startHeading != endHeading)
+					&& !geomKernel.canTurn(startPos.getX(), startPos.getY(),
+							startHeading, endHeading, armLength,
+							extendedObstacleIndex)) {
+				return;
+			}
+
+			// If the movement is invalid, ignore the whole action.
+			if (distance != 0
+					&& !geomKernel.canMove(startPos.getX(), startPos.getY(),
+							endPos.getX(), endPos.getY(), hasCamera, armLength,
+							extendedObstacleIndex)) {
+				return;
+			}
 		}
 
 		endState = new AgentState(endPos, endHeading, hasCamera, armLength);
@@ -910,6 +1651,8 @@ public class GameRunner {
 	 *             if the file cannot be written.
 	 */
 	public void writeResults(String outputPath) throws IOException {
+		requireHistory();
+		long start = startTiming();
 		String lineSep = System.getProperty("line.separator");
 		FileWriter writer = new FileWriter(outputPath);
 		writer.write(cs.turnNo + lineSep);
@@ -918,7 +1661,7 @@ public class GameRunner {
 		for (AgentState as : targetInitialStates) {
 			writer.write(as + lineSep);
 		}
-		for (ActionResult[] results : actionResultSequence) {
+		for (ActionResult[] results : getActionResultSequence()) {
 			for (ActionResult result : results) {
 				if (result.getDesiredAction() == null) {
 					writer.write("-" + lineSep);
@@ -929,6 +1672,7 @@ public class GameRunner {
 			}
 		}
 		writer.close();
+		stopTiming(PhaseTimer.Phase.OUTPUT, start);
 	}
 
 	/**
@@ -943,10 +1687,12 @@ public class GameRunner {
 		if (!setupLoaded) {
 			return;
 		}
-		actionResultSequence = new Stack<ActionResult[]>();
-		stateSequence = new Stack<GameState>();
-		stateSequence.push(new GameState());
-		cs = new GameState();
+		initialise();
+		// A loaded game is only useful with its history.
+		if (history == null) {
+			startHistory();
+		}
+		actionsInferred = true;
 
 		BufferedReader input = new BufferedReader(new FileReader(filename));
 		String line;
@@ -966,7 +1712,6 @@ public class GameRunner {
 			}
 
 			int playerNo = 0;
-			ActionResult[] results = new ActionResult[1];
 			int numLines = (numTurns / 2) * (numTargets + 1);
 			for (int i = 0; i < numLines; i++) {
 				if (i == numLines - 1) {
@@ -987,51 +1732,28 @@ public class GameRunner {
 				}
 				double reward = s.nextDouble();
 				s.close();
-				Action action;
 				AgentState oldState = cs.playerStates[playerNo];
 				AgentState newState = new AgentState(new Point2D.Double(x, y),
 						heading, hasCamera, cameraArmLength);
 				cs.playerStates[playerNo] = newState;
-				if (cs.isTrackerTurn) {
-					if (!oldState.getPosition().equals(newState.getPosition())) {
-						action = new TrackerAction(oldState, heading,
-								trackerMoveDistance);
-					} else if (oldState.getHeading() != newState.getHeading()) {
-						action = new TrackerAction(oldState, heading, 0);
-					} else if (oldState.getCameraArmLength() != newState
-							.getCameraArmLength()) {
-						action = new TrackerAction(oldState,
-								newState.getCameraArmLength());
-					} else {
-						// HQ call are ignored - it won't matter in the
-						// visualiser.
-						action = new TrackerAction(oldState, false);
-					}
-				} else {
-					action = new Action(oldState, newState.getPosition());
-				}
-
-				int index = (playerNo == 0) ? 0 : playerNo - 1;
-				results[index] = new ActionResult(action, action, newState,
-						reward);
+				// HQ calls are ignored - it won't matter in the visualiser.
+				Action action = inferAction(playerNo, oldState, newState);
+				ActionResult result = new ActionResult(action, action,
+						newState, reward);
+				recordAction(playerNo, result);
 				cs.playerScores[playerNo] += reward;
 
 				playerNo += 1;
 				if (cs.isTrackerTurn) {
+					lastTrackerResult = result;
 					cs.turnNo += 1;
-					stateSequence.push(cs);
-					cs = new GameState(cs);
 					cs.isTrackerTurn = false;
-					actionResultSequence.push(results);
-					results = new ActionResult[numTargets];
+					endTurn();
 				} else if (playerNo > numTargets) {
 					playerNo = 0;
 					cs.turnNo += 1;
-					stateSequence.push(cs);
-					cs = new GameState(cs);
 					cs.isTrackerTurn = true;
-					actionResultSequence.push(results);
-					results = new ActionResult[1];
+					endTurn();
 				}
 			}
 
@@ -1050,6 +1772,15 @@ public class GameRunner {
 		}
 	}
 
+	/**
+	 * Returns the distance the tracker moves in a single step.
+	 * 
+	 * @return the distance the tracker moves in a single step.
+	 */
+	public double getTrackerMoveDistance() {
+		return trackerMoveDistance;
+	}
+
 	/**
 	 * Returns the runtime target motion history.
 	 * 
@@ -1091,10 +1822,12 @@ public class GameRunner {
 	 *            the history to add to.
 	 */
 	public void addTargetHistoryEntries(MotionHistory history) {
-		for (int i = 1; i < actionResultSequence.size(); i += 2) {
-			ActionResult[] results = actionResultSequence.get(i);
-			for (ActionResult result : results) {
-				history.addEntry(result, targetPolicy.getGrid());
+		requireHistory();
+		for (int t = 1; t < this.history.getNumTurns(); t += 2) {
+			int actionNo = this.history.getFirstAction(t);
+			for (int i = 0; i < numTargets; i++) {
+				history.addEntry(this.history.getDesiredCode(actionNo + i),
+						this.history.getDivergedCode(actionNo + i));
 			}
 		}
 	}
@@ -1106,14 +1839,56 @@ public class GameRunner {
 	 *            the history to add to.
 	 */
 	public void addTrackerHistoryEntries(MotionHistory history) {
-		for (int i = 0; i < actionResultSequence.size(); i += 2) {
-			ActionResult[] results = actionResultSequence.get(i);
-			history.addEntry(results[0], new TrackerGrid(
-					trackerMoveDistance / 2));
+		requireHistory();
+		for (int t = 0; t < this.history.getNumTurns(); t += 2) {
+			int actionNo = this.history.getFirstAction(t);
+			history.addEntry(this.history.getDesiredCode(actionNo),
+					this.history.getDivergedCode(actionNo));
 		}
 	}
 
 	/* ---------------------- COMMAND LINE RUNNER ------------------------ */
+	/**
+	 * Returns a one-line summary of the result of the current game, including
+	 * the individual target scores if there is more than one target.
+	 *
+	 * @return a one-line summary of the result of the current game.
+	 */
+	public String getResultSummary() {
+		StringBuilder sb = new StringBuilder(cs.getResultString() + ";");
+		if (numTargets > 1) {
+			sb.append(" target scores: ");
+			for (int i = 1; i <= numTargets; i++) {
+				sb.append(String.format("%d ", (int) cs.playerScores[i]));
+			}
+		}
+		if (watchdog != null) {
+			if (sb.charAt(sb.length() - 1) != ' ') {
+				sb.append(' ');
+			}
+			sb.append(watchdog.getSummary());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the current score of the tracker.
+	 *
+	 * @return the current score of the tracker.
+	 */
+	public double getTrackerScore() {
+		return cs.getTrackerScore();
+	}
+
+	/**
+	 * Returns the current total score of the target(s).
+	 *
+	 * @return the current total score of the target(s).
+	 */
+	public double getTargetScore() {
+		return cs.getTargetScore();
+	}
+
 	/**
 	 * Runs a game, and outputs the result.
 	 * 
@@ -1125,25 +1900,25 @@ public class GameRunner {
 	 *         Tracker loss.
 	 */
 	public int runVerbose(String outputPath, boolean verbose) {
-		runFull();
+		// Without a history, the output is written as the game is played.
+		OutputFileSink outputSink = null;
+		if (outputPath != null && !recordHistory) {
+			outputSink = new OutputFileSink(outputPath);
+			addSink(outputSink);
+		}
+		try {
+			runFull();
+		} finally {
+			if (outputSink != null) {
+				removeSink(outputSink);
+			}
+		}
 		int winResult = cs.getResult();
 		if (verbose) {
-			System.out.print(cs.getResultString() + ";");
-			double[] scores = cs.getPlayerScores();
-			if (numTargets > 1) {
-				System.out.print(" target scores: ");
-				StringBuilder sb = new StringBuilder();
-				for (int i = 1; i <= numTargets; i++) {
-					double score = scores[i];
-					sb.append(String.format("%d ", (int) score));
-				}
-				System.out.println(sb);
-			} else {
-				System.out.println();
-			}
+			System.out.println(getResultSummary());
 		}
 
-		if (outputPath != null) {
+		if (outputPath != null && outputSink == null) {
 			try {
 				writeResults(outputPath);
 			} catch (IOException e) {
@@ -1164,6 +1939,13 @@ public class GameRunner {
 		String outputFile = null;
 		String targetFile = null;
 		String trackerFile = null;
+		Long seedArg = null;
+		int numGames = 100;
+		int numThreads = 1;
+		boolean useVisibilityTable = false;
+		String timingFile = null;
+		long turnBudget = 0;
+		long gameBudget = 0;
 		for (int i = 0; i < args.length; i++) {
 			String arg = args[i].trim();
 			if (arg.equals("-o")) {
@@ -1171,6 +1953,41 @@ public class GameRunner {
 				if (i < args.length) {
 					outputFile = args[i].trim();
 				}
+			} else if (arg.equals("-t")) {
+				i++;
+				if (i < args.length) {
+					timingFile = args[i].trim();
+				}
+			} else if (arg.equals("-v")) {
+				useVisibilityTable = true;
+			} else if (arg.equals("-n") || arg.equals("-j")
+					|| arg.equals("-s") || arg.equals("-b")
+					|| arg.equals("-B")) {
+				i++;
+				if (i >= args.length) {
+					break;
+				}
+				try {
+					if (arg.equals("-n")) {
+						numGames = Integer.parseInt(args[i].trim());
+						if (numGames < 0) {
+							throw new NumberFormatException(
+									"Negative number of games");
+						}
+					} else if (arg.equals("-j")) {
+						numThreads = Integer.parseInt(args[i].trim());
+					} else if (arg.equals("-b")) {
+						turnBudget = Long.parseLong(args[i].trim());
+					} else if (arg.equals("-B")) {
+						gameBudget = Long.parseLong(args[i].trim());
+					} else {
+						seedArg = Long.parseLong(args[i].trim());
+					}
+				} catch (NumberFormatException e) {
+					System.err.println(String.format(
+							"Invalid value for %s: %s", arg, args[i]));
+					return;
+				}
 			} else {
 				if (setupFile == null) {
 					setupFile = arg;
@@ -1196,9 +2013,16 @@ public class GameRunner {
 		GameRunner runner = new GameRunner();
 		runner.setTargetDistribution(targetFile);
 		runner.setTrackerDistribution(trackerFile);
-		long globalSeed = new Random().nextLong();
+		runner.setUseTargetVisibilityTable(useVisibilityTable);
+		if (timingFile != null) {
+			runner.setPhaseTimer(new PhaseTimer());
+		}
+		if (turnBudget > 0 || gameBudget > 0) {
+			runner.setTrackerWatchdog(new TrackerWatchdog(turnBudget,
+					gameBudget));
+		}
+		long globalSeed = (seedArg != null) ? seedArg : new Random().nextLong();
 		System.out.println("Global seed: " + globalSeed);
-		runner.setSeed(globalSeed);
 
 		try {
 			runner.loadSetup(setupFile);
@@ -1206,17 +2030,29 @@ public class GameRunner {
 			System.err.println("Failed to load setup file: " + e.getMessage());
 			return;
 		}
-		int numGames = 100;
-		int numWins = 0;
-		for (int i = 0; i < numGames; i++) {
-			int result = runner.runVerbose(outputFile, true);
-			runner.saveHistory();
-			if (result == 1) {
-				numWins += 1;
+		BatchRunner batch = new BatchRunner(runner, numThreads);
+		batch.setStreaming(true);
+		BatchRunner.BatchResult result = batch.run(
+				BatchRunner.generateGameSeeds(globalSeed, numGames),
+				outputFile, true);
+		runner.shutdown();
+		System.out.println(String.format("Tracker won %d of %d games.",
+				result.getNumWins(), result.getNumGames()));
+		System.out.println(result.getStatistics());
+		if (timingFile != null) {
+			System.out.println(runner.getPhaseTimer().getSummary());
+			try {
+				FileWriter writer = new FileWriter(timingFile);
+				try {
+					runner.getPhaseTimer().writeJson(writer);
+				} finally {
+					writer.close();
+				}
+			} catch (IOException e) {
+				System.err.println("Failed to write timings: "
+						+ e.getMessage());
 			}
 		}
-		System.out.println(String.format("Tracker won %d of %d games.",
-				numWins, numGames));
 		/*
 		 * try { runner.getRuntimeTargetMotionHistory().writeToFile(
 		 * "targetMotionHistory.txt");
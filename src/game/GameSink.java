@@ -0,0 +1,41 @@
+package game;
+
+/**
+ * Receives the results of a game as it is played.
+ *
+ * Sinks let a caller consume each action as soon as it is taken, so that a
+ * GameRunner which isn't recording a history of its games never needs to keep
+ * more than the current state.
+ */
+public interface GameSink {
+	/**
+	 * Called when a new game has been initialised.
+	 * 
+	 * @param runner
+	 *            the runner playing the game.
+	 */
+	public void gameStarted(GameRunner runner);
+
+	/**
+	 * Called after each action.
+	 * 
+	 * @param runner
+	 *            the runner playing the game.
+	 * @param turnNo
+	 *            the turn number.
+	 * @param playerNo
+	 *            the acting player.
+	 * @param result
+	 *            the result of the action.
+	 */
+	public void actionTaken(GameRunner runner, int turnNo, int playerNo,
+			ActionResult result);
+
+	/**
+	 * Called when the game is complete.
+	 * 
+	 * @param runner
+	 *            the runner playing the game.
+	 */
+	public void gameEnded(GameRunner runner);
+}
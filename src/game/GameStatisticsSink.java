@@ -0,0 +1,124 @@
+package game;
+
+/**
+ * Gathers statistics over the games played by a runner.
+ */
+public class GameStatisticsSink implements GameSink {
+	/** The number of completed games. */
+	private int numGames;
+	/** The total number of turns over the completed games. */
+	private long numTurns;
+	/** The number of turns in the longest completed game. */
+	private int maxTurns;
+	/** The total number of HQ calls made by the tracker. */
+	private long numHQCalls;
+	/** The total number of actions for which the tracker was rewarded. */
+	private long numRewardedTrackerActions;
+	/** The total number of actions for which a target was rewarded. */
+	private long numRewardedTargetActions;
+
+	@Override
+	public void gameStarted(GameRunner runner) {
+	}
+
+	@Override
+	public void actionTaken(GameRunner runner, int turnNo, int playerNo,
+			ActionResult result) {
+		if (playerNo == 0) {
+			Action action = result.getDesiredAction();
+			if (action instanceof TrackerAction
+					&& ((TrackerAction) action).isHQCall()) {
+				numHQCalls++;
+			}
+			if (result.getReward() > 0) {
+				numRewardedTrackerActions++;
+			}
+		} else if (result.getReward() > 0) {
+			numRewardedTargetActions++;
+		}
+	}
+
+	@Override
+	public void gameEnded(GameRunner runner) {
+		numGames++;
+		numTurns += runner.getTurnNo();
+		maxTurns = Math.max(maxTurns, runner.getTurnNo());
+	}
+
+	/**
+	 * Adds the statistics gathered by another sink to this one.
+	 * 
+	 * @param other
+	 *            the sink whose statistics should be added.
+	 */
+	public void addAll(GameStatisticsSink other) {
+		numGames += other.numGames;
+		numTurns += other.numTurns;
+		maxTurns = Math.max(maxTurns, other.maxTurns);
+		numHQCalls += other.numHQCalls;
+		numRewardedTrackerActions += other.numRewardedTrackerActions;
+		numRewardedTargetActions += other.numRewardedTargetActions;
+	}
+
+	/**
+	 * Returns the number of completed games.
+	 * 
+	 * @return the number of completed games.
+	 */
+	public int getNumGames() {
+		return numGames;
+	}
+
+	/**
+	 * Returns the total number of turns over the completed games.
+	 * 
+	 * @return the total number of turns over the completed games.
+	 */
+	public long getNumTurns() {
+		return numTurns;
+	}
+
+	/**
+	 * Returns the number of turns in the longest completed game.
+	 * 
+	 * @return the number of turns in the longest completed game.
+	 */
+	public int getMaxTurns() {
+		return maxTurns;
+	}
+
+	/**
+	 * Returns the total number of HQ calls made by the tracker.
+	 * 
+	 * @return the total number of HQ calls made by the tracker.
+	 */
+	public long getNumHQCalls() {
+		return numHQCalls;
+	}
+
+	/**
+	 * Returns the total number of actions for which the tracker was rewarded.
+	 * 
+	 * @return the total number of actions for which the tracker was rewarded.
+	 */
+	public long getNumRewardedTrackerActions() {
+		return numRewardedTrackerActions;
+	}
+
+	/**
+	 * Returns the total number of actions for which a target was rewarded.
+	 * 
+	 * @return the total number of actions for which a target was rewarded.
+	 */
+	public long getNumRewardedTargetActions() {
+		return numRewardedTargetActions;
+	}
+
+	@Override
+	public String toString() {
+		double meanTurns = (numGames == 0) ? 0 : (double) numTurns / numGames;
+		return String.format(
+				"%d games, %.1f turns on average (longest %d), %d HQ calls",
+				numGames, meanTurns, maxTurns, numHQCalls);
+	}
+}
@@ -0,0 +1,156 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * A map from long keys, such as the state codes given by
+ * {@link geom.StateEncoder}, to values, stored in an open-addressed hash table
+ * so that the keys are never boxed.
+ *
+ * @param <V>
+ *            the type of the values; null values aren't allowed.
+ */
+public class LongHashMap<V> {
+	/** The initial number of slots. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The keys in each slot; 0 marks an empty slot. */
+	private long[] keys;
+	/** The values in each slot. */
+	private Object[] values;
+	/** The value for the key 0, which is kept out of the table. */
+	private V zeroValue = null;
+	/** The number of entries in the map. */
+	private int size = 0;
+
+	/**
+	 * Constructs an empty map.
+	 */
+	public LongHashMap() {
+		keys = new long[INITIAL_CAPACITY];
+		values = new Object[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns the value for the given key, or null if there isn't one.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return the value for the key, or null if there isn't one.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		if (key == 0) {
+			return zeroValue;
+		}
+		int mask = keys.length - 1;
+		for (int i = LongHashSet.getSlot(key, mask);; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V) values[i];
+			} else if (keys[i] == 0) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Returns true iff the map has a value for the given key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return true iff the map has a value for the key.
+	 */
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Sets the value for the given key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param value
+	 *            the value, which must not be null.
+	 * @return the previous value for the key, or null if there wasn't one.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null values aren't allowed");
+		}
+		if (key == 0) {
+			V oldValue = zeroValue;
+			zeroValue = value;
+			if (oldValue == null) {
+				size++;
+			}
+			return oldValue;
+		}
+		int mask = keys.length - 1;
+		int i = LongHashSet.getSlot(key, mask);
+		while (keys[i] != 0) {
+			if (keys[i] == key) {
+				V oldValue = (V) values[i];
+				values[i] = value;
+				return oldValue;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if (2 * size > keys.length) {
+			grow();
+		}
+		return null;
+	}
+
+	/**
+	 * Doubles the number of slots, keeping the table at most half full.
+	 */
+	private void grow() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[2 * oldKeys.length];
+		values = new Object[2 * oldKeys.length];
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != 0) {
+				int i = LongHashSet.getSlot(oldKeys[j], mask);
+				while (keys[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of entries in the map.
+	 *
+	 * @return the number of entries in the map.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true iff the map is empty.
+	 *
+	 * @return true iff the map is empty.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all of the entries, keeping the table for reuse.
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, null);
+		zeroValue = null;
+		size = 0;
+	}
+}
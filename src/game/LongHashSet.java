@@ -0,0 +1,145 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * A set of long values, such as the state codes given by
+ * {@link geom.StateEncoder}, stored in an open-addressed hash table of
+ * primitives, so that neither adding nor looking up a value allocates.
+ */
+public class LongHashSet {
+	/** The initial number of slots. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The values in each slot; 0 marks an empty slot. */
+	private long[] slots;
+	/** True iff the set contains 0, which is kept out of the table. */
+	private boolean containsZero = false;
+	/** The number of values in the set. */
+	private int size = 0;
+
+	/**
+	 * Constructs an empty set.
+	 */
+	public LongHashSet() {
+		slots = new long[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns the slot to start looking for the given value in.
+	 *
+	 * @param value
+	 *            the value.
+	 * @param mask
+	 *            one less than the number of slots.
+	 * @return the first slot to probe.
+	 */
+	static int getSlot(long value, int mask) {
+		// The finaliser of MurmurHash3, so that codes differing only in their
+		// high bits are spread over the table.
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return (int) value & mask;
+	}
+
+	/**
+	 * Returns true iff the set contains the given value.
+	 *
+	 * @param value
+	 *            the value.
+	 * @return true iff the set contains the value.
+	 */
+	public boolean contains(long value) {
+		if (value == 0) {
+			return containsZero;
+		}
+		int mask = slots.length - 1;
+		for (int i = getSlot(value, mask);; i = (i + 1) & mask) {
+			if (slots[i] == value) {
+				return true;
+			} else if (slots[i] == 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Adds the given value to the set.
+	 *
+	 * @param value
+	 *            the value.
+	 * @return true iff the set didn't already contain the value.
+	 */
+	public boolean add(long value) {
+		if (value == 0) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			return true;
+		}
+		int mask = slots.length - 1;
+		int i = getSlot(value, mask);
+		while (slots[i] != 0) {
+			if (slots[i] == value) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		slots[i] = value;
+		size++;
+		if (2 * size > slots.length) {
+			grow();
+		}
+		return true;
+	}
+
+	/**
+	 * Doubles the number of slots, keeping the table at most half full.
+	 */
+	private void grow() {
+		long[] oldSlots = slots;
+		slots = new long[2 * oldSlots.length];
+		int mask = slots.length - 1;
+		for (long value : oldSlots) {
+			if (value != 0) {
+				int i = getSlot(value, mask);
+				while (slots[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				slots[i] = value;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of values in the set.
+	 *
+	 * @return the number of values in the set.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true iff the set is empty.
+	 *
+	 * @return true iff the set is empty.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all of the values, keeping the table for reuse.
+	 */
+	public void clear() {
+		Arrays.fill(slots, 0);
+		containsZero = false;
+		size = 0;
+	}
+}
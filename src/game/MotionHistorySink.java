@@ -0,0 +1,38 @@
+package game;
+
+import geom.ActionEncoder;
+import geom.TrackerGrid;
+import divergence.MotionHistory;
+
+/**
+ * Adds each action to the runtime motion histories of the runner playing the
+ * game, as {@link GameRunner#saveHistory()} does at the end of a game.
+ */
+public class MotionHistorySink implements GameSink {
+	/** Encodes the actions of the target(s). */
+	private ActionEncoder targetEncoder;
+	/** Encodes the actions of the tracker. */
+	private ActionEncoder trackerEncoder;
+
+	@Override
+	public void gameStarted(GameRunner runner) {
+		targetEncoder = runner.getTargetPolicy().getGrid();
+		trackerEncoder = new TrackerGrid(runner.getTrackerMoveDistance() / 2);
+	}
+
+	@Override
+	public void actionTaken(GameRunner runner, int turnNo, int playerNo,
+			ActionResult result) {
+		if (playerNo == 0) {
+			MotionHistory history = runner.getRuntimeTrackerMotionHistory();
+			history.addEntry(result, trackerEncoder);
+		} else {
+			MotionHistory history = runner.getRuntimeTargetMotionHistory();
+			history.addEntry(result, targetEncoder);
+		}
+	}
+
+	@Override
+	public void gameEnded(GameRunner runner) {
+	}
+}
@@ -0,0 +1,133 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Writes a game to an output file in the same format as
+ * {@link GameRunner#writeResults(String)}, as it is played.
+ *
+ * The file starts with the number of turns, which isn't known until the game
+ * ends, so the actions are written to a temporary file and copied after the
+ * header once the game is complete.
+ */
+public class OutputFileSink implements GameSink {
+	/** The path of the output file. */
+	private String outputPath;
+	/** The temporary file holding the actions. */
+	private File bodyFile;
+	/** The writer for the temporary file, or null if there is none. */
+	private BufferedWriter body;
+	/** The line separator. */
+	private String lineSep = System.getProperty("line.separator");
+
+	/**
+	 * Constructs a sink writing to the given file.
+	 * 
+	 * @param outputPath
+	 *            the path of the output file.
+	 */
+	public OutputFileSink(String outputPath) {
+		this.outputPath = outputPath;
+	}
+
+	@Override
+	public void gameStarted(GameRunner runner) {
+		closeBody();
+		try {
+			bodyFile = File.createTempFile("game", ".tmp");
+			bodyFile.deleteOnExit();
+			body = new BufferedWriter(new FileWriter(bodyFile));
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	@Override
+	public void actionTaken(GameRunner runner, int turnNo, int playerNo,
+			ActionResult result) {
+		if (body == null) {
+			return;
+		}
+		try {
+			if (result.getDesiredAction() == null) {
+				body.write("-" + lineSep);
+			} else {
+				body.write(result.getResultingState() + " "
+						+ result.getReward() + lineSep);
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	@Override
+	public void gameEnded(GameRunner runner) {
+		if (body == null) {
+			return;
+		}
+		try {
+			body.close();
+			body = null;
+			// Open the body first, so that a failure leaves any earlier output
+			// file in place.
+			BufferedReader input = new BufferedReader(new FileReader(bodyFile));
+			try {
+				BufferedWriter writer = new BufferedWriter(new FileWriter(
+						outputPath));
+				try {
+					writer.write(runner.getTurnNo() + lineSep);
+					writer.write(runner.getNumTargets() + lineSep);
+					writer.write(runner.getTrackerInitialState() + lineSep);
+					for (AgentState as : runner.getTargetInitialStates()) {
+						writer.write(as + lineSep);
+					}
+					char[] buffer = new char[8192];
+					int numRead;
+					while ((numRead = input.read(buffer)) >= 0) {
+						writer.write(buffer, 0, numRead);
+					}
+				} finally {
+					writer.close();
+				}
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+		bodyFile.delete();
+	}
+
+	/**
+	 * Reports a failure to write the output, and stops writing.
+	 * 
+	 * @param e
+	 *            the cause of the failure.
+	 */
+	private void fail(IOException e) {
+		System.err.println("Failed to write output: " + e.getMessage());
+		closeBody();
+	}
+
+	/**
+	 * Closes and deletes the temporary file, if there is one.
+	 */
+	private void closeBody() {
+		if (body != null) {
+			try {
+				body.close();
+			} catch (IOException e) {
+				// The file is being discarded anyway.
+			}
+			body = null;
+		}
+		if (bodyFile != null) {
+			bodyFile.delete();
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package game;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Gathers the time spent in each phase of the game loop.
+ *
+ * For each phase, the timer counts the number of timed sections and their
+ * total and maximum durations in nanoseconds, and keeps a histogram of the
+ * durations with four buckets per power of two, so that percentiles are
+ * accurate to within 25%. A timer isn't thread-safe; each runner should have
+ * its own, and timers can be combined afterwards with {@link #addAll}.
+ */
+public class PhaseTimer {
+	/** The phases of the game loop. */
+	public enum Phase {
+		/** Choosing the tracker's action. */
+		TRACKER_ACTION("tracker-action"),
+		/** Choosing the targets' actions. */
+		TARGET_ACTION("target-action"),
+		/** Sampling divergences. */
+		DIVERGENCE("divergence"),
+		/** Checking movements and camera adjustments. */
+		MOVEMENT("movement"),
+		/** Checking which players can see each other. */
+		VISIBILITY("visibility"),
+		/** Passing results on to sinks other than the output file. */
+		SINKS("sinks"),
+		/** Writing output files, whether streamed or from a history. */
+		OUTPUT("output");
+
+		/** The name of the phase, as used in summaries. */
+		private final String name;
+
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Returns the name of the phase, as used in summaries.
+		 *
+		 * @return the name of the phase.
+		 */
+		public String getName() {
+			return name;
+		}
+	}
+
+	/** The number of histogram buckets per phase. */
+	private static final int NUM_BUCKETS = 248;
+	/** The number of phases. */
+	private static final int NUM_PHASES = Phase.values().length;
+
+	/** The number of timed sections of each phase. */
+	private final long[] counts = new long[NUM_PHASES];
+	/** The total duration of each phase, in nanoseconds. */
+	private final long[] totalNanos = new long[NUM_PHASES];
+	/** The longest timed section of each phase, in nanoseconds. */
+	private final long[] maxNanos = new long[NUM_PHASES];
+	/** The histogram of durations of each phase. */
+	private final long[][] histograms = new long[NUM_PHASES][NUM_BUCKETS];
+
+	/**
+	 * Records a timed section of the given phase.
+	 *
+	 * @param phase
+	 *            the phase.
+	 * @param nanos
+	 *            the duration of the section, in nanoseconds.
+	 */
+	public void record(Phase phase, long nanos) {
+		int p = phase.ordinal();
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts[p]++;
+		totalNanos[p] += nanos;
+		if (nanos > maxNanos[p]) {
+			maxNanos[p] = nanos;
+		}
+		histograms[p][getBucket(nanos)]++;
+	}
+
+	/**
+	 * Adds the times recorded by another timer to this one.
+	 *
+	 * @param other
+	 *            the timer whose times should be added.
+	 */
+	public void addAll(PhaseTimer other) {
+		for (int p = 0; p < NUM_PHASES; p++) {
+			counts[p] += other.counts[p];
+			totalNanos[p] += other.totalNanos[p];
+			maxNanos[p] = Math.max(maxNanos[p], other.maxNanos[p]);
+			for (int b = 0; b < NUM_BUCKETS; b++) {
+				histograms[p][b] += other.histograms[p][b];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of timed sections of the given phase.
+	 *
+	 * @param phase
+	 *            the phase.
+	 * @return the number of timed sections of the given phase.
+	 */
+	public long getCount(Phase phase) {
+		return counts[phase.ordinal()];
+	}
+
+	/**
+	 * Returns the total duration of the given phase, in nanoseconds.
+	 *
+	 * @param phase
+	 *            the phase.
+	 * @return the total duration of the given phase, in nanoseconds.
+	 */
+	public long getTotalNanos(Phase phase) {
+		return totalNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Returns the longest timed section of the given phase, in nanoseconds.
+	 *
+	 * @param phase
+	 *            the phase.
+	 * @return the longest timed section of the given phase, in nanoseconds.
+	 */
+	public long getMaxNanos(Phase phase) {
+		return maxNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Returns an upper bound on the given percentile of the durations of the
+	 * given phase, in nanoseconds, accurate to within 25%.
+	 *
+	 * @param phase
+	 *            the phase.
+	 * @param percentile
+	 *            the percentile, from 0 to 100.
+	 * @return the given percentile of the durations, in nanoseconds.
+	 */
+	public long getPercentileNanos(Phase phase, double percentile) {
+		int p = phase.ordinal();
+		if (counts[p] == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(counts[p] * percentile / 100);
+		long seen = 0;
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			seen += histograms[p][b];
+			if (seen >= rank && seen > 0) {
+				return Math.min(getBucketLimit(b), maxNanos[p]);
+			}
+		}
+		return maxNanos[p];
+	}
+
+	/**
+	 * Returns the histogram bucket for the given duration.
+	 *
+	 * @param nanos
+	 *            the duration, in nanoseconds.
+	 * @return the histogram bucket for the given duration.
+	 */
+	private static int getBucket(long nanos) {
+		if (nanos < 4) {
+			return (int) nanos;
+		}
+		int log = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (log - 2)) - 4;
+		return 4 * (log - 1) + sub;
+	}
+
+	/**
+	 * Returns the largest duration in the given histogram bucket.
+	 *
+	 * @param bucket
+	 *            the bucket.
+	 * @return the largest duration in the bucket, in nanoseconds.
+	 */
+	private static long getBucketLimit(int bucket) {
+		if (bucket < 4) {
+			return bucket;
+		}
+		int log = bucket / 4 + 1;
+		int sub = bucket % 4;
+		return ((5L + sub) << (log - 2)) - 1;
+	}
+
+	/**
+	 * Returns a human-readable summary of the recorded times.
+	 *
+	 * @return a summary of the recorded times.
+	 */
+	public String getSummary() {
+		String lineSep = System.getProperty("line.separator");
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-15s %10s %12s %10s %10s %10s %10s",
+				"phase", "count", "total ms", "mean us", "p50 us", "p99 us",
+				"max us"));
+		for (Phase phase : Phase.values()) {
+			long count = getCount(phase);
+			if (count == 0) {
+				continue;
+			}
+			sb.append(lineSep);
+			sb.append(String.format(Locale.ROOT,
+					"%-15s %10d %12.1f %10.2f %10.2f %10.2f %10.2f",
+					phase.getName(), count, getTotalNanos(phase) / 1e6,
+					getTotalNanos(phase) / 1e3 / count,
+					getPercentileNanos(phase, 50) / 1e3,
+					getPercentileNanos(phase, 99) / 1e3,
+					getMaxNanos(phase) / 1e3));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the recorded times as JSON, including the full histograms; each
+	 * histogram entry is the largest duration in a bucket, in nanoseconds,
+	 * followed by the number of sections in that bucket.
+	 *
+	 * @param writer
+	 *            the writer to write to.
+	 * @throws IOException
+	 *             if the times cannot be written.
+	 */
+	public void writeJson(Writer writer) throws IOException {
+		writer.write("{\"phases\": [");
+		boolean firstPhase = true;
+		for (Phase phase : Phase.values()) {
+			int p = phase.ordinal();
+			writer.write(firstPhase ? "\n" : ",\n");
+			firstPhase = false;
+			writer.write(String.format("  {\"name\": \"%s\", \"count\": %d, "
+					+ "\"totalNanos\": %d, \"maxNanos\": %d, "
+					+ "\"p50Nanos\": %d, \"p99Nanos\": %d, \"histogram\": [",
+					phase.getName(), counts[p], totalNanos[p], maxNanos[p],
+					getPercentileNanos(phase, 50),
+					getPercentileNanos(phase, 99)));
+			boolean firstBucket = true;
+			for (int b = 0; b < NUM_BUCKETS; b++) {
+				if (histograms[p][b] == 0) {
+					continue;
+				}
+				writer.write(firstBucket ? "" : ", ");
+				firstBucket = false;
+				writer.write(String.format("[%d, %d]", getBucketLimit(b),
+						histograms[p][b]));
+			}
+			writer.write("]}");
+		}
+		writer.write("\n]}\n");
+	}
+}
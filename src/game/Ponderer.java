@@ -0,0 +1,114 @@
+package game;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs a {@link PonderingAgent}'s pondering on a background thread, and stops
+ * it again when the agent's next turn is due.
+ */
+public class Ponderer {
+	/**
+	 * The stop signal for a single period of pondering.
+	 */
+	private static class Session implements PonderingAgent.StopSignal {
+		/** True iff a stop has been requested. */
+		private volatile boolean stopRequested = false;
+
+		@Override
+		public boolean isStopRequested() {
+			return stopRequested;
+		}
+	}
+
+	/** The thread pondering is run on. */
+	private ExecutorService executor;
+	/** The current period of pondering, or null if not pondering. */
+	private Session session;
+	/** The result of the current period of pondering. */
+	private Future<?> pending;
+
+	/**
+	 * Starts the given agent pondering, after stopping any earlier pondering.
+	 *
+	 * @param agent
+	 *            the agent.
+	 * @param turnNo
+	 *            the number of the turn the agent has just taken.
+	 */
+	public void start(final PonderingAgent agent, final int turnNo) {
+		stop();
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ponderer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		final Session current = new Session();
+		session = current;
+		pending = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				agent.ponder(turnNo, current);
+			}
+		});
+	}
+
+	/**
+	 * Returns true iff an agent is currently pondering.
+	 *
+	 * @return true iff an agent is currently pondering.
+	 */
+	public boolean isPondering() {
+		return session != null;
+	}
+
+	/**
+	 * Requests that the current pondering stop, and waits for it to do so. An
+	 * exception thrown while pondering is rethrown here.
+	 */
+	public void stop() {
+		if (session == null) {
+			return;
+		}
+		session.stopRequested = true;
+		session = null;
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		} finally {
+			pending = null;
+		}
+	}
+
+	/**
+	 * Stops any pondering, and stops the background thread. A ponderer can
+	 * still be used after this, in which case a new thread is started.
+	 */
+	public void shutdown() {
+		try {
+			stop();
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+				executor = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package game;
+
+/**
+ * An agent that can think ahead while the other players are taking their
+ * turns.
+ *
+ * When an agent of this kind has finished its turn, the runner calls
+ * {@link #ponder} on a background thread; before the agent's next call to
+ * getAction, the runner requests that pondering stop, and waits for ponder to
+ * return. Pondering is cooperative - ponder should check the stop signal
+ * regularly and return promptly once a stop is requested, since the game can't
+ * continue until it does.
+ *
+ * The runner never calls getAction while ponder is running, and never starts
+ * ponder while a call to getAction that ran out of its time budget is still
+ * running, so the agent doesn't need to synchronise between the two.
+ */
+public interface PonderingAgent extends Agent {
+	/**
+	 * Signals a pondering agent that it should stop.
+	 */
+	public interface StopSignal {
+		/**
+		 * Returns true iff the agent should stop pondering.
+		 *
+		 * @return true iff the agent should stop pondering.
+		 */
+		public boolean isStopRequested();
+	}
+
+	/**
+	 * Thinks ahead until a stop is requested, or until there is nothing more
+	 * worth thinking about.
+	 *
+	 * @param turnNo
+	 *            the number of the turn the agent has just taken.
+	 * @param signal
+	 *            the signal to check for a stop request.
+	 */
+	public void ponder(int turnNo, StopSignal signal);
+}
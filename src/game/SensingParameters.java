@@ -15,6 +15,8 @@ public class SensingParameters {
 	private double range;
 	/** The field of view, in radians. */
 	private double angle;
+	/** The cosine of half of the field of view. */
+	private double cosHalfAngle;
 	/** The minimum camera arm length, if applicable. */
 	private double minLength;
 	/** The maximum camera arm length, if applicable. */
@@ -30,6 +32,7 @@ public class SensingParameters {
 		this.hasCamera = otherParams.hasCamera;
 		this.range = otherParams.range;
 		this.angle = otherParams.angle;
+		this.cosHalfAngle = otherParams.cosHalfAngle;
 		this.minLength = otherParams.minLength;
 		this.maxLength = otherParams.maxLength;
 	}
@@ -52,6 +55,7 @@ public class SensingParameters {
 		angle = Math.toRadians(s.nextDouble());
 		range = s.nextDouble();
 		s.close();
+		cosHalfAngle = Math.cos(angle / 2);
 	}
 
 	/**
@@ -67,6 +71,7 @@ public class SensingParameters {
 		this.hasCamera = false;
 		this.range = range;
 		this.angle = angle;
+		this.cosHalfAngle = Math.cos(angle / 2);
 	}
 
 	/**
@@ -87,6 +92,7 @@ public class SensingParameters {
 		this.hasCamera = true;
 		this.range = range;
 		this.angle = angle;
+		this.cosHalfAngle = Math.cos(angle / 2);
 		this.minLength = minLength;
 		this.maxLength = maxLength;
 	}
@@ -118,6 +124,15 @@ public class SensingParameters {
 		return angle;
 	}
 
+	/**
+	 * Returns the cosine of half of the FOV of this agent.
+	 * 
+	 * @return the cosine of half of the FOV of this agent.
+	 */
+	public double getCosHalfAngle() {
+		return cosHalfAngle;
+	}
+
 	/**
 	 * Returns the minimum camera arm length for this agent.
 	 * 
@@ -0,0 +1,110 @@
+package game;
+
+import java.util.Random;
+
+/**
+ * A source of randomness using the SplitMix64 generator, as a drop-in
+ * replacement for {@link java.util.Random}.
+ *
+ * Unlike java.util.Random, drawing a value is a plain update of a single long,
+ * with no compare-and-set, so an instance must not be shared between threads;
+ * each thread, game or player should have its own. Independent streams are
+ * obtained from {@link #deriveSeed(long, long)}, which gives the seed of the
+ * stream with a given index from a parent seed, without reference to any
+ * other stream; e.g. the stream of a player in a game is a function of the
+ * global seed, the game index and the player number alone.
+ */
+public class SplitMix64Random extends Random {
+	private static final long serialVersionUID = 1L;
+
+	/** The increment of the generator, 2^64 divided by the golden ratio. */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	/** The scale from 53 random bits to a double in [0, 1). */
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	/** The state of the generator. */
+	private long state;
+
+	/**
+	 * Constructs a generator with an arbitrary seed.
+	 */
+	public SplitMix64Random() {
+		this(new Random().nextLong());
+	}
+
+	/**
+	 * Constructs a generator with the given seed.
+	 *
+	 * @param seed
+	 *            the seed.
+	 */
+	public SplitMix64Random(long seed) {
+		super(seed);
+	}
+
+	/**
+	 * Mixes the bits of the given value; this is the output function of the
+	 * generator, and a bijection.
+	 *
+	 * @param z
+	 *            the value to mix.
+	 * @return the mixed value.
+	 */
+	public static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns the seed of the stream with the given index derived from the
+	 * given parent seed.
+	 *
+	 * @param seed
+	 *            the parent seed.
+	 * @param index
+	 *            the index of the stream.
+	 * @return the seed of the stream.
+	 */
+	public static long deriveSeed(long seed, long index) {
+		return mix(mix(seed) + (index + 1) * GOLDEN_GAMMA);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		// This also clears the cached Gaussian of the superclass.
+		super.setSeed(seed);
+		state = seed;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	@Override
+	public long nextLong() {
+		state += GOLDEN_GAMMA;
+		return mix(state);
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * Returns a new generator whose stream is independent of this one's,
+	 * advancing this generator by one step.
+	 *
+	 * @return the new generator.
+	 */
+	public SplitMix64Random split() {
+		return new SplitMix64Random(deriveSeed(nextLong(), 0));
+	}
+}
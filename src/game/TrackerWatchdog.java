@@ -0,0 +1,358 @@
+package game;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enforces time budgets on the tracker's decisions.
+ *
+ * Each call to the tracker's getAction is run on a separate, managed thread,
+ * and is given the smaller of the per-turn budget and whatever remains of the
+ * per-game budget. If the tracker hasn't decided in time, the call is
+ * interrupted and the fallback action is taken instead. Since a tracker can
+ * ignore the interrupt, a tracker that is still busy with an earlier decision
+ * isn't called again; it takes the fallback action until it has finished.
+ *
+ * The latency of every decision within the current game is recorded; turns on
+ * which the tracker isn't asked at all, because the game budget is used up or
+ * it is still busy, are counted separately as skipped. Note
+ * that the results of games with a watchdog depend on timing, and so aren't
+ * exactly reproducible from their seeds.
+ */
+public class TrackerWatchdog {
+	/**
+	 * Chooses the action to take when the tracker runs out of time.
+	 */
+	public interface Fallback {
+		/**
+		 * Returns the action to take instead of the tracker's own.
+		 *
+		 * @param turnNo
+		 *            the turn number.
+		 * @param trackerState
+		 *            the current state of the tracker.
+		 * @return the action to take.
+		 */
+		public Action getFallbackAction(int turnNo, AgentState trackerState);
+	}
+
+	/** A fallback that keeps the tracker still. */
+	public static final Fallback STAY_STILL = new Fallback() {
+		@Override
+		public Action getFallbackAction(int turnNo, AgentState trackerState) {
+			return new TrackerAction(trackerState, false);
+		}
+	};
+
+	/** The time allowed for each decision, in nanoseconds. */
+	private final long turnBudgetNanos;
+	/** The total time allowed for decisions in each game, in nanoseconds. */
+	private final long gameBudgetNanos;
+	/** The fallback for decisions that run out of time. */
+	private final Fallback fallback;
+
+	/** The thread the tracker is run on. */
+	private ExecutorService executor;
+	/** The last decision, which may still be running. */
+	private Future<Action> pending;
+	/** Whether the last decision is queued, running or finished. */
+	private AtomicInteger pendingState;
+
+	/** The state of a decision that hasn't started yet. */
+	private static final int QUEUED = 0;
+	/** The state of a decision that the tracker is working on. */
+	private static final int RUNNING = 1;
+	/** The state of a decision that has finished or will never start. */
+	private static final int FINISHED = 2;
+
+	/** The total time used by decisions in this game, in nanoseconds. */
+	private long gameNanos;
+	/** The latency of each decision in this game, in nanoseconds. */
+	private long[] latencies = new long[64];
+	/** The number of decisions in this game. */
+	private int numDecisions;
+	/** The number of decisions in this game that ran out of time. */
+	private int numTimeouts;
+	/** The number of turns in this game on which the tracker wasn't asked. */
+	private int numSkipped;
+
+	/**
+	 * Constructs a watchdog with the given budgets, which keeps the tracker
+	 * still when it runs out of time.
+	 *
+	 * @param turnBudgetMillis
+	 *            the time allowed for each decision, in milliseconds, or 0 for
+	 *            no limit.
+	 * @param gameBudgetMillis
+	 *            the total time allowed for decisions in each game, in
+	 *            milliseconds, or 0 for no limit.
+	 */
+	public TrackerWatchdog(long turnBudgetMillis, long gameBudgetMillis) {
+		this(turnBudgetMillis, gameBudgetMillis, STAY_STILL);
+	}
+
+	/**
+	 * Constructs a watchdog with the given budgets and fallback.
+	 *
+	 * @param turnBudgetMillis
+	 *            the time allowed for each decision, in milliseconds, or 0 for
+	 *            no limit.
+	 * @param gameBudgetMillis
+	 *            the total time allowed for decisions in each game, in
+	 *            milliseconds, or 0 for no limit.
+	 * @param fallback
+	 *            the fallback for decisions that run out of time.
+	 */
+	public TrackerWatchdog(long turnBudgetMillis, long gameBudgetMillis,
+			Fallback fallback) {
+		this.turnBudgetNanos = toNanos(turnBudgetMillis);
+		this.gameBudgetNanos = toNanos(gameBudgetMillis);
+		this.fallback = fallback;
+	}
+
+	/**
+	 * Constructs a watchdog with the same budgets and fallback as another,
+	 * but its own thread and statistics.
+	 *
+	 * @param other
+	 *            the watchdog to copy the settings of.
+	 */
+	public TrackerWatchdog(TrackerWatchdog other) {
+		this.turnBudgetNanos = other.turnBudgetNanos;
+		this.gameBudgetNanos = other.gameBudgetNanos;
+		this.fallback = other.fallback;
+	}
+
+	/**
+	 * Converts a budget in milliseconds to nanoseconds; a budget of 0 or less
+	 * means no limit.
+	 */
+	private static long toNanos(long millis) {
+		return (millis > 0) ? TimeUnit.MILLISECONDS.toNanos(millis)
+				: Long.MAX_VALUE;
+	}
+
+	/**
+	 * Resets the budget and statistics for a new game.
+	 */
+	public void startGame() {
+		// A decision from the last game that is still running would hold up
+		// the new tracker, so it is abandoned along with its thread.
+		if (isBusy()) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		pending = null;
+		pendingState = null;
+		gameNanos = 0;
+		numDecisions = 0;
+		numTimeouts = 0;
+		numSkipped = 0;
+	}
+
+	/**
+	 * Returns the tracker's action within the time budget, or the fallback
+	 * action if the tracker runs out of time.
+	 *
+	 * @param tracker
+	 *            the tracker.
+	 * @param turnNo
+	 *            the turn number.
+	 * @param previousResult
+	 *            the result of the tracker's previous action.
+	 * @param scores
+	 *            the current scores.
+	 * @param newPercepts
+	 *            the percepts acquired since the tracker's last turn.
+	 * @return the action to take.
+	 */
+	public Action getAction(final Agent tracker, final int turnNo,
+			final ActionResult previousResult, final double[] scores,
+			final List<Percept> newPercepts) {
+		AgentState trackerState = previousResult.getResultingState();
+		long budget = Math.min(turnBudgetNanos, gameBudgetNanos - gameNanos);
+		if (budget <= 0 || isBusy()) {
+			numSkipped++;
+			return fallback.getFallbackAction(turnNo, trackerState);
+		}
+
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "tracker-watchdog");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		final AtomicInteger state = new AtomicInteger(QUEUED);
+		pendingState = state;
+		long start = System.nanoTime();
+		pending = executor.submit(new Callable<Action>() {
+			@Override
+			public Action call() {
+				if (!state.compareAndSet(QUEUED, RUNNING)) {
+					return null;
+				}
+				try {
+					return tracker.getAction(turnNo, previousResult, scores,
+							newPercepts);
+				} finally {
+					state.set(FINISHED);
+				}
+			}
+		});
+		try {
+			Action action = pending.get(budget, TimeUnit.NANOSECONDS);
+			// The waiting thread may only wake up after a late decision has
+			// finished; such a decision is still over budget.
+			long nanos = System.nanoTime() - start;
+			if (nanos <= budget) {
+				recordDecision(nanos, false);
+				return action;
+			}
+		} catch (TimeoutException e) {
+			abandon(state);
+		} catch (InterruptedException e) {
+			abandon(state);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		recordDecision(System.nanoTime() - start, true);
+		return fallback.getFallbackAction(turnNo, trackerState);
+	}
+
+	/**
+	 * Abandons a decision that has run out of time, by interrupting it if it
+	 * has started, or making sure it never starts if it hasn't.
+	 *
+	 * @param state
+	 *            the state of the decision.
+	 */
+	private void abandon(AtomicInteger state) {
+		state.compareAndSet(QUEUED, FINISHED);
+		pending.cancel(true);
+	}
+
+	/**
+	 * Returns true iff the tracker is still working on an earlier decision
+	 * that ran out of time. A cancelled Future counts as done as soon as it is
+	 * interrupted, so this goes by whether the tracker's getAction has
+	 * actually returned.
+	 *
+	 * @return true iff the tracker is still working on an earlier decision.
+	 */
+	public boolean isBusy() {
+		return pendingState != null && pendingState.get() == RUNNING;
+	}
+
+	/**
+	 * Records the latency of a decision.
+	 *
+	 * @param nanos
+	 *            the latency of the decision, in nanoseconds.
+	 * @param timedOut
+	 *            true iff the decision ran out of time.
+	 */
+	private void recordDecision(long nanos, boolean timedOut) {
+		if (numDecisions == latencies.length) {
+			latencies = Arrays.copyOf(latencies, 2 * numDecisions);
+		}
+		latencies[numDecisions++] = nanos;
+		gameNanos += nanos;
+		if (timedOut) {
+			numTimeouts++;
+		}
+	}
+
+	/**
+	 * Stops the watchdog's thread. A watchdog can still be used after this,
+	 * in which case a new thread is started.
+	 */
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		pending = null;
+		pendingState = null;
+	}
+
+	/**
+	 * Returns the number of decisions made in this game, not counting skipped
+	 * turns.
+	 *
+	 * @return the number of decisions made in this game.
+	 */
+	public int getNumDecisions() {
+		return numDecisions;
+	}
+
+	/**
+	 * Returns the number of decisions in this game that ran out of time.
+	 *
+	 * @return the number of decisions in this game that ran out of time.
+	 */
+	public int getNumTimeouts() {
+		return numTimeouts;
+	}
+
+	/**
+	 * Returns the number of turns in this game on which the tracker wasn't
+	 * asked for a decision, and the fallback action was taken straight away.
+	 *
+	 * @return the number of skipped turns in this game.
+	 */
+	public int getNumSkipped() {
+		return numSkipped;
+	}
+
+	/**
+	 * Returns the given percentile of the latencies of the decisions in this
+	 * game, in nanoseconds.
+	 *
+	 * @param percentile
+	 *            the percentile, from 0 to 100.
+	 * @return the given percentile of the latencies, in nanoseconds.
+	 */
+	public long getLatencyNanos(double percentile) {
+		if (numDecisions == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(latencies, numDecisions);
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(numDecisions * percentile / 100);
+		return sorted[Math.max(0, Math.min(numDecisions, rank) - 1)];
+	}
+
+	/**
+	 * Returns a one-line summary of the latencies of the decisions in this
+	 * game.
+	 *
+	 * @return a summary of the latencies in this game.
+	 */
+	public String getSummary() {
+		return String.format(
+				"tracker latency p50 %.2fms p99 %.2fms max %.2fms, %d of %d over budget, %d skipped",
+				getLatencyNanos(50) / 1e6, getLatencyNanos(99) / 1e6,
+				getLatencyNanos(100) / 1e6, numTimeouts, numDecisions,
+				numSkipped);
+	}
+}
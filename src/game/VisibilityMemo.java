@@ -0,0 +1,144 @@
+package game;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+
+/**
+ * A memo of the results of the tracker's visibility tests of each target, so
+ * that a pair of states that hasn't changed since it was last tested needn't
+ * be tested again.
+ *
+ * Only the last test of each target is kept, together with the exact bits of
+ * the tracker and target states it was made with, in arrays of primitives, so
+ * neither looking up nor storing a result allocates. As every state is
+ * compared exactly, a memo never holds a stale result; it only needs to be
+ * cleared when the tracker's sensing parameters or the obstacles change, as at
+ * the start of a game.
+ */
+public class VisibilityMemo {
+	/** The result of a lookup when there is no memoised result. */
+	public static final int UNKNOWN = -1;
+	/** The result of a lookup when the target is not visible. */
+	public static final int NOT_VISIBLE = 0;
+	/** The result of a lookup when the target is visible. */
+	public static final int VISIBLE = 1;
+
+	/** The number of values stored for each state. */
+	private static final int STATE_SIZE = 5;
+	/** The number of values stored for each test. */
+	private static final int KEY_SIZE = 2 * STATE_SIZE;
+
+	/**
+	 * The bits of the tracker state, then the target state, of the last test
+	 * of each target.
+	 */
+	private long[] keys = new long[0];
+	/** The result of the last test of each target. */
+	private int[] results = new int[0];
+
+	/**
+	 * Returns the memoised result of the tracker's test of the given target.
+	 *
+	 * @param targetNo
+	 *            the number of the target.
+	 * @param trackerState
+	 *            the state of the tracker.
+	 * @param targetState
+	 *            the state of the target.
+	 * @return VISIBLE or NOT_VISIBLE if the result of the test is memoised, and
+	 *         UNKNOWN otherwise.
+	 */
+	public int get(int targetNo, AgentState trackerState,
+			AgentState targetState) {
+		if (targetNo >= results.length || results[targetNo] == UNKNOWN) {
+			return UNKNOWN;
+		}
+		int offset = targetNo * KEY_SIZE;
+		if (matches(offset, trackerState)
+				&& matches(offset + STATE_SIZE, targetState)) {
+			return results[targetNo];
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * Memoises the result of the tracker's test of the given target, replacing
+	 * any earlier result for that target.
+	 *
+	 * @param targetNo
+	 *            the number of the target.
+	 * @param trackerState
+	 *            the state of the tracker.
+	 * @param targetState
+	 *            the state of the target.
+	 * @param canSee
+	 *            true iff the tracker can see the target.
+	 */
+	public void put(int targetNo, AgentState trackerState,
+			AgentState targetState, boolean canSee) {
+		if (targetNo >= results.length) {
+			int oldLength = results.length;
+			results = Arrays.copyOf(results, targetNo + 1);
+			Arrays.fill(results, oldLength, results.length, UNKNOWN);
+			keys = Arrays.copyOf(keys, results.length * KEY_SIZE);
+		}
+		int offset = targetNo * KEY_SIZE;
+		store(offset, trackerState);
+		store(offset + STATE_SIZE, targetState);
+		results[targetNo] = canSee ? VISIBLE : NOT_VISIBLE;
+	}
+
+	/**
+	 * Returns true iff the given state is the one stored at the given offset.
+	 *
+	 * @param offset
+	 *            the offset of the stored state.
+	 * @param state
+	 *            the state to compare.
+	 * @return true iff the state is the stored state.
+	 */
+	private boolean matches(int offset, AgentState state) {
+		Point2D pos = state.getPosition();
+		double heading = state.getHeading();
+		return keys[offset] == Double.doubleToRawLongBits(pos.getX())
+				&& keys[offset + 1] == Double.doubleToRawLongBits(pos.getY())
+				&& keys[offset + 2] == Double.doubleToRawLongBits(heading)
+				&& keys[offset + 3] == getCameraBits(state)
+				&& keys[offset + 4] == getArmBits(state);
+	}
+
+	/**
+	 * Stores the given state at the given offset.
+	 *
+	 * @param offset
+	 *            the offset to store the state at.
+	 * @param state
+	 *            the state to store.
+	 */
+	private void store(int offset, AgentState state) {
+		Point2D pos = state.getPosition();
+		keys[offset] = Double.doubleToRawLongBits(pos.getX());
+		keys[offset + 1] = Double.doubleToRawLongBits(pos.getY());
+		keys[offset + 2] = Double.doubleToRawLongBits(state.getHeading());
+		keys[offset + 3] = getCameraBits(state);
+		keys[offset + 4] = getArmBits(state);
+	}
+
+	/** Returns 1 if the agent has a camera, and 0 otherwise. */
+	private static long getCameraBits(AgentState state) {
+		return state.hasCamera() ? 1 : 0;
+	}
+
+	/** Returns the bits of the arm length, or 0 if there is no camera. */
+	private static long getArmBits(AgentState state) {
+		return state.hasCamera() ? Double.doubleToRawLongBits(state
+				.getCameraArmLength()) : 0;
+	}
+
+	/**
+	 * Removes all of the memoised results.
+	 */
+	public void clear() {
+		Arrays.fill(results, UNKNOWN);
+	}
+}
@@ -0,0 +1,160 @@
+package geom;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the positions of a set of agents within the unit square,
+ * for finding the agents near a point without testing every one of them.
+ *
+ * The agents are bucketed by a counting sort, so the grid can cheaply be
+ * rebuilt whenever they move; its arrays are reused between builds. Positions
+ * outside the unit square are clamped to the edge cells. A grid isn't
+ * thread-safe.
+ */
+public class AgentGrid {
+	/** The maximum number of grid cells along each axis. */
+	private static final int MAX_GRID_SIZE = 256;
+
+	/** The number of grid cells along each axis. */
+	private final int gridSize;
+	/** The width of each grid cell. */
+	private final double cellWidth;
+
+	/** The number of agents. */
+	private int numAgents;
+	/** The x-coordinate of each agent. */
+	private double[] xs = new double[0];
+	/** The y-coordinate of each agent. */
+	private double[] ys = new double[0];
+	/**
+	 * The agents in grid cell c are at indices cellStarts[c] (inclusive) to
+	 * cellStarts[c + 1] (exclusive) of cellAgents.
+	 */
+	private final int[] cellStarts;
+	/** The agent numbers in each cell. */
+	private int[] cellAgents = new int[0];
+	/** The cell of each agent. */
+	private int[] agentCells = new int[0];
+
+	/**
+	 * Constructs an empty grid whose cells are at least the given width; a
+	 * query radius of about this width is the most efficient.
+	 *
+	 * @param minCellWidth
+	 *            the minimum width of a cell.
+	 */
+	public AgentGrid(double minCellWidth) {
+		int size = (minCellWidth > 0) ? (int) Math.min(MAX_GRID_SIZE,
+				Math.floor(1 / minCellWidth)) : MAX_GRID_SIZE;
+		gridSize = Math.max(1, size);
+		cellWidth = 1.0 / gridSize;
+		cellStarts = new int[gridSize * gridSize + 1];
+	}
+
+	/**
+	 * Rebuilds the grid over the given positions; agent i is at
+	 * (xs[i], ys[i]).
+	 *
+	 * @param agentXs
+	 *            the x-coordinates of the agents.
+	 * @param agentYs
+	 *            the y-coordinates of the agents.
+	 * @param n
+	 *            the number of agents.
+	 */
+	public void build(double[] agentXs, double[] agentYs, int n) {
+		if (n > cellAgents.length) {
+			xs = new double[n];
+			ys = new double[n];
+			cellAgents = new int[n];
+			agentCells = new int[n];
+		}
+		numAgents = n;
+		System.arraycopy(agentXs, 0, xs, 0, n);
+		System.arraycopy(agentYs, 0, ys, 0, n);
+		Arrays.fill(cellStarts, 0);
+		for (int i = 0; i < n; i++) {
+			int c = getIndex(xs[i], ys[i]);
+			agentCells[i] = c;
+			cellStarts[c + 1]++;
+		}
+		for (int c = 0; c < gridSize * gridSize; c++) {
+			cellStarts[c + 1] += cellStarts[c];
+		}
+		// Filling each cell from its end keeps the agents of each cell in
+		// ascending order, and leaves the start of cell c in cellStarts[c + 1].
+		for (int i = n - 1; i >= 0; i--) {
+			int c = agentCells[i];
+			cellAgents[--cellStarts[c + 1]] = i;
+		}
+		System.arraycopy(cellStarts, 1, cellStarts, 0, gridSize * gridSize);
+		cellStarts[gridSize * gridSize] = n;
+	}
+
+	/**
+	 * Returns the grid row or column containing the given coordinate,
+	 * clamped to the grid.
+	 */
+	private int getCell(double v) {
+		int cell = (int) Math.floor(v / cellWidth);
+		return Math.max(0, Math.min(gridSize - 1, cell));
+	}
+
+	/**
+	 * Returns the index of the grid cell containing the given point.
+	 */
+	private int getIndex(double x, double y) {
+		return getCell(y) * gridSize + getCell(x);
+	}
+
+	/**
+	 * Stores the numbers of the agents within the given distance of the given
+	 * point in the given array, in ascending order, and returns how many there
+	 * are.
+	 *
+	 * @param x
+	 *            the x-coordinate of the point.
+	 * @param y
+	 *            the y-coordinate of the point.
+	 * @param radius
+	 *            the distance.
+	 * @param agents
+	 *            the array to store the agent numbers in; it must have room
+	 *            for all of the agents.
+	 * @return the number of agents found.
+	 */
+	public int getAgentsNear(double x, double y, double radius, int[] agents) {
+		int col0 = getCell(x - radius);
+		int row0 = getCell(y - radius);
+		int col1 = getCell(x + radius);
+		int row1 = getCell(y + radius);
+		double radiusSq = radius * radius;
+		int numFound = 0;
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				int c = row * gridSize + col;
+				for (int k = cellStarts[c]; k < cellStarts[c + 1]; k++) {
+					int i = cellAgents[k];
+					double dx = xs[i] - x;
+					double dy = ys[i] - y;
+					if (dx * dx + dy * dy <= radiusSq) {
+						agents[numFound++] = i;
+					}
+				}
+			}
+		}
+		if (row1 > row0 || col1 > col0) {
+			Arrays.sort(agents, 0, numFound);
+		}
+		return numFound;
+	}
+
+	/**
+	 * Returns the number of agents in the grid.
+	 *
+	 * @return the number of agents in the grid.
+	 */
+	public int size() {
+		return numAgents;
+	}
+}
@@ -0,0 +1,1084 @@
+package geom;
+
+import game.AgentState;
+import game.RectRegion;
+import game.SensingParameters;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The visibility, movement and turning tests of {@link GeomTools}, carried out
+ * on primitive coordinates without allocating.
+ *
+ * Each kernel keeps the working space that its tests need, and grows it to fit
+ * the most obstacles it has been used with, so once it has warmed up none of
+ * its tests allocate. For the same reason, a kernel must not be shared between
+ * threads. The tests carry out exactly the same arithmetic as those in
+ * {@link GeomTools}, so the two always give the same results.
+ */
+public class GeomKernel {
+	/** The maximum number of vertices of a clipped shadow polygon. */
+	private static final int MAX_SHADOW_POLYGON_SIZE = 8;
+	/**
+	 * The relative margin within which range and field-of-view tests fall back
+	 * to the exact distance and angle.
+	 */
+	private static final double VIEW_TOLERANCE = 1e-9;
+	/** A point seen regardless of obstacles. */
+	private static final int SEEN = 1;
+	/** A point seen unless an obstacle is in the way. */
+	private static final int IN_VIEW = 0;
+	/** A point out of range or outside the field of view. */
+	private static final int OUT_OF_VIEW = -1;
+
+	/** The sector tested for turns. */
+	private final PieSlice arc = new PieSlice(0, 0, 0, 0, 0, false);
+	/** The swept rectangle tested for moves. */
+	private final MoveSweep sweep = new MoveSweep(0, 0, 0, 0, 0);
+
+	/** The part of a segment within range. */
+	private final double[] range = new double[2];
+	/** The part of a segment close enough to always count as seen. */
+	private final double[] near = new double[2];
+	/** The parts of a segment within the field of view. */
+	private final double[] allowed = new double[4];
+	/** The part of a segment within a convex view cone. */
+	private final double[] cone = new double[2];
+	/** The part of a segment hidden by a single obstacle. */
+	private final double[] shadow = new double[2];
+	/** Working space for clipping shadow polygons. */
+	private final double[] polygon = new double[4 * MAX_SHADOW_POLYGON_SIZE];
+	/** The candidate obstacles for hiding a segment. */
+	private int[] candidates = new int[0];
+	/** The starts of the shadows on a segment. */
+	private double[] shadowStarts = new double[0];
+	/** The ends of the shadows on a segment. */
+	private double[] shadowEnds = new double[0];
+	/** The merged shadows on a segment, as (start, end) pairs. */
+	private double[] blocked = new double[0];
+
+	/**
+	 * Grows the working space to fit the given number of obstacles.
+	 *
+	 * @param numObstacles
+	 *            the number of obstacles.
+	 */
+	private void ensureCapacity(int numObstacles) {
+		if (candidates.length < numObstacles) {
+			candidates = new int[numObstacles];
+			shadowStarts = new double[numObstacles];
+			shadowEnds = new double[numObstacles];
+			blocked = new double[2 * numObstacles];
+		}
+	}
+
+	/**
+	 * Returns the x-coordinate of the view position of an agent, as given by
+	 * {@link GeomTools#calculateViewPosition}.
+	 *
+	 * @param x
+	 *            the x-coordinate of the agent.
+	 * @param heading
+	 *            the heading of the agent.
+	 * @param hasCamera
+	 *            whether the agent has a camera.
+	 * @param armLength
+	 *            the camera arm length of the agent.
+	 * @return the x-coordinate of the view position.
+	 */
+	public static double getViewX(double x, double heading,
+			boolean hasCamera, double armLength) {
+		if (!hasCamera) {
+			return x;
+		}
+		return x + armLength * HeadingTable.getArmCos(heading);
+	}
+
+	/**
+	 * Returns the y-coordinate of the view position of an agent, as given by
+	 * {@link GeomTools#calculateViewPosition}.
+	 *
+	 * @param y
+	 *            the y-coordinate of the agent.
+	 * @param heading
+	 *            the heading of the agent.
+	 * @param hasCamera
+	 *            whether the agent has a camera.
+	 * @param armLength
+	 *            the camera arm length of the agent.
+	 * @return the y-coordinate of the view position.
+	 */
+	public static double getViewY(double y, double heading,
+			boolean hasCamera, double armLength) {
+		if (!hasCamera) {
+			return y;
+		}
+		return y + armLength * HeadingTable.getArmSin(heading);
+	}
+
+	/**
+	 * Returns true iff an observer at the given view position and heading can
+	 * see the given point.
+	 *
+	 * Points that are clearly out of range are rejected by their squared
+	 * distance, and the field of view is tested as a cone, by comparing the
+	 * projection of the point onto the heading with the cosine of half of the
+	 * field of view. Only within {@link #VIEW_TOLERANCE} of the edges are the
+	 * distance and angle worked out, so the results are the same as those of
+	 * {@link GeomTools#canSee(AgentState, java.awt.geom.Point2D, SensingParameters, ObstacleIndex, double)}
+	 * .
+	 *
+	 * @param vx
+	 *            the x-coordinate of the view position of the observer.
+	 * @param vy
+	 *            the y-coordinate of the view position of the observer.
+	 * @param heading
+	 *            the heading of the observer.
+	 * @param px
+	 *            the x-coordinate of the point.
+	 * @param py
+	 *            the y-coordinate of the point.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the index of the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the point.
+	 */
+	public static boolean canSeePoint(double vx, double vy, double heading,
+			double px, double py, SensingParameters sp,
+			ObstacleIndex obstacles, double maxDistanceError) {
+		int view = getPointView(vx, vy, heading, px, py, sp, maxDistanceError);
+		if (view != IN_VIEW) {
+			return view == SEEN;
+		}
+		return obstacles.isCollisionFree(vx, vy, px, py);
+	}
+
+	/**
+	 * Returns true iff an observer at the given view position and heading can
+	 * see the given point, as for
+	 * {@link #canSeePoint(double, double, double, double, double, SensingParameters, ObstacleIndex, double)}
+	 * ; this tests each obstacle in turn, for callers that don't have an
+	 * index.
+	 *
+	 * @param vx
+	 *            the x-coordinate of the view position of the observer.
+	 * @param vy
+	 *            the y-coordinate of the view position of the observer.
+	 * @param heading
+	 *            the heading of the observer.
+	 * @param px
+	 *            the x-coordinate of the point.
+	 * @param py
+	 *            the y-coordinate of the point.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the point.
+	 */
+	public static boolean canSeePoint(double vx, double vy, double heading,
+			double px, double py, SensingParameters sp,
+			List<RectRegion> obstacles, double maxDistanceError) {
+		int view = getPointView(vx, vy, heading, px, py, sp, maxDistanceError);
+		if (view != IN_VIEW) {
+			return view == SEEN;
+		}
+		for (RectRegion obs : obstacles) {
+			Rectangle2D rect = obs.getRect();
+			if (LineSegment.intersects(rect.getX(), rect.getY(),
+					rect.getWidth(), rect.getHeight(), vx, vy, px, py)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tests the given point against the range and field of view of an
+	 * observer at the given view position and heading.
+	 *
+	 * @param vx
+	 *            the x-coordinate of the view position of the observer.
+	 * @param vy
+	 *            the y-coordinate of the view position of the observer.
+	 * @param heading
+	 *            the heading of the observer.
+	 * @param px
+	 *            the x-coordinate of the point.
+	 * @param py
+	 *            the y-coordinate of the point.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return {@link #SEEN} if the point is close enough to be seen regardless
+	 *         of obstacles, {@link #OUT_OF_VIEW} if it can't be seen, and
+	 *         {@link #IN_VIEW} if it is seen unless an obstacle is in the way.
+	 */
+	private static int getPointView(double vx, double vy, double heading,
+			double px, double py, SensingParameters sp,
+			double maxDistanceError) {
+		double dx = px - vx;
+		double dy = py - vy;
+		double distanceSq = dx * dx + dy * dy;
+
+		// Verify the viewing range.
+		double maxRange = sp.getRange() + maxDistanceError;
+		if (distanceSq > maxRange * maxRange * (1 + VIEW_TOLERANCE)) {
+			return OUT_OF_VIEW;
+		}
+		double distance = Math.sqrt(distanceSq);
+		if (distance < maxDistanceError) {
+			return SEEN;
+		}
+		if (distance > maxRange) {
+			return OUT_OF_VIEW;
+		}
+
+		// Verify the viewing angle; a field of view of 2 * pi or more sees in
+		// every direction.
+		double halfAngle = sp.getAngle() / 2;
+		if (halfAngle < Math.PI) {
+			double margin = dx * HeadingTable.getCos(heading) + dy
+					* HeadingTable.getSin(heading) - distance
+					* sp.getCosHalfAngle();
+			if (margin < -VIEW_TOLERANCE * distance) {
+				return OUT_OF_VIEW;
+			} else if (margin <= VIEW_TOLERANCE * distance) {
+				double viewAngleDelta = GeomTools.normaliseAngle(Math.atan2(
+						dy, dx) - heading);
+				if (Math.abs(viewAngleDelta) > halfAngle) {
+					return OUT_OF_VIEW;
+				}
+			}
+		}
+		return IN_VIEW;
+	}
+
+	/**
+	 * Returns true iff the observer can see the potential observee, as for
+	 * {@link GeomTools#canSee(AgentState, AgentState, SensingParameters, ObstacleIndex, double)}
+	 * .
+	 *
+	 * @param observerState
+	 *            the state of the observer.
+	 * @param observeeState
+	 *            the state of the potential observee.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the index of the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the potential observee.
+	 */
+	public boolean canSee(AgentState observerState, AgentState observeeState,
+			SensingParameters sp, ObstacleIndex obstacles,
+			double maxDistanceError) {
+		double heading = observerState.getHeading();
+		double vx = getViewX(observerState.getPosition().getX(), heading,
+				observerState.hasCamera(), observerState.getCameraArmLength());
+		double vy = getViewY(observerState.getPosition().getY(), heading,
+				observerState.hasCamera(), observerState.getCameraArmLength());
+		return canSee(vx, vy, heading, observeeState.getPosition().getX(),
+				observeeState.getPosition().getY(), observeeState.getHeading(),
+				observeeState.hasCamera(), observeeState.getCameraArmLength(),
+				sp, obstacles, maxDistanceError);
+	}
+
+	/**
+	 * Returns true iff an observer at the given view position and heading can
+	 * see the potential observee in the given state, as for
+	 * {@link #canSee(AgentState, AgentState, SensingParameters, ObstacleIndex, double)}
+	 * .
+	 *
+	 * @param vx
+	 *            the x-coordinate of the view position of the observer.
+	 * @param vy
+	 *            the y-coordinate of the view position of the observer.
+	 * @param heading
+	 *            the heading of the observer.
+	 * @param x
+	 *            the x-coordinate of the observee.
+	 * @param y
+	 *            the y-coordinate of the observee.
+	 * @param observeeHeading
+	 *            the heading of the observee.
+	 * @param observeeHasCamera
+	 *            whether the observee has a camera.
+	 * @param observeeArmLength
+	 *            the camera arm length of the observee.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the index of the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the potential observee.
+	 */
+	public boolean canSee(double vx, double vy, double heading, double x,
+			double y, double observeeHeading, boolean observeeHasCamera,
+			double observeeArmLength, SensingParameters sp,
+			ObstacleIndex obstacles, double maxDistanceError) {
+		// Check if the observee can be directly seen.
+		if (canSeePoint(vx, vy, heading, x, y, sp, obstacles,
+				maxDistanceError)) {
+			return true;
+		}
+
+		// Check if the observee has a camera arm that can be seen.
+		if (!observeeHasCamera) {
+			return false;
+		}
+		return getLongestVisibleRun(vx, vy, heading, x, y,
+				getViewX(x, observeeHeading, true, observeeArmLength),
+				getViewY(y, observeeHeading, true, observeeArmLength), sp,
+				obstacles, maxDistanceError) * 2 > 1;
+	}
+
+	/**
+	 * Returns true iff the observer can see the potential observee, as for
+	 * {@link GeomTools#canSee(AgentState, AgentState, SensingParameters, List, double)}
+	 * ; this tests each obstacle in turn, for callers that don't have an
+	 * index.
+	 *
+	 * @param observerState
+	 *            the state of the observer.
+	 * @param observeeState
+	 *            the state of the potential observee.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the potential observee.
+	 */
+	public boolean canSee(AgentState observerState, AgentState observeeState,
+			SensingParameters sp, List<RectRegion> obstacles,
+			double maxDistanceError) {
+		double heading = observerState.getHeading();
+		double vx = getViewX(observerState.getPosition().getX(), heading,
+				observerState.hasCamera(), observerState.getCameraArmLength());
+		double vy = getViewY(observerState.getPosition().getY(), heading,
+				observerState.hasCamera(), observerState.getCameraArmLength());
+		double x = observeeState.getPosition().getX();
+		double y = observeeState.getPosition().getY();
+		// Check if the observee can be directly seen.
+		if (canSeePoint(vx, vy, heading, x, y, sp, obstacles, maxDistanceError)) {
+			return true;
+		}
+
+		// Check if the observee has a camera arm that can be seen.
+		if (!observeeState.hasCamera()) {
+			return false;
+		}
+		double observeeHeading = observeeState.getHeading();
+		double armLength = observeeState.getCameraArmLength();
+		return getLongestVisibleRun(vx, vy, heading, x, y,
+				getViewX(x, observeeHeading, true, armLength),
+				getViewY(y, observeeHeading, true, armLength), sp, obstacles,
+				maxDistanceError) * 2 > 1;
+	}
+
+	/**
+	 * Returns true iff the observer can see at least half of the potential
+	 * observee's camera arm, as for
+	 * {@link GeomTools#canSeeCameraArm(AgentState, AgentState, SensingParameters, ObstacleIndex, double)}
+	 * .
+	 *
+	 * @param observerState
+	 *            the state of the observer.
+	 * @param observeeState
+	 *            the state of the potential observee.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the index of the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the observee's camera arm.
+	 */
+	public boolean canSeeCameraArm(AgentState observerState,
+			AgentState observeeState, SensingParameters sp,
+			ObstacleIndex obstacles, double maxDistanceError) {
+		double heading = observerState.getHeading();
+		return canSeeCameraArm(
+				getViewX(observerState.getPosition().getX(), heading,
+						observerState.hasCamera(),
+						observerState.getCameraArmLength()),
+				getViewY(observerState.getPosition().getY(), heading,
+						observerState.hasCamera(),
+						observerState.getCameraArmLength()), heading,
+				observeeState, sp, obstacles, maxDistanceError);
+	}
+
+	/**
+	 * Returns true iff an observer at the given view position and heading can
+	 * see at least half of the potential observee's camera arm; this is false
+	 * if the observee has no camera.
+	 *
+	 * @param vx
+	 *            the x-coordinate of the view position of the observer.
+	 * @param vy
+	 *            the y-coordinate of the view position of the observer.
+	 * @param heading
+	 *            the heading of the observer.
+	 * @param observeeState
+	 *            the state of the potential observee.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the index of the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the observee's camera arm.
+	 */
+	private boolean canSeeCameraArm(double vx, double vy, double heading,
+			AgentState observeeState, SensingParameters sp,
+			ObstacleIndex obstacles, double maxDistanceError) {
+		if (!observeeState.hasCamera()) {
+			return false;
+		}
+		double x = observeeState.getPosition().getX();
+		double y = observeeState.getPosition().getY();
+		double observeeHeading = observeeState.getHeading();
+		double armLength = observeeState.getCameraArmLength();
+		return getLongestVisibleRun(vx, vy, heading, x, y,
+				getViewX(x, observeeHeading, true, armLength),
+				getViewY(y, observeeHeading, true, armLength), sp, obstacles,
+				maxDistanceError) * 2 > 1;
+	}
+
+	/**
+	 * Returns true iff turning from the initial heading to the final heading at
+	 * the given position is valid, as for
+	 * {@link GeomTools#canTurn(double, double, double, double, double, ObstacleIndex)}
+	 * .
+	 *
+	 * @param x
+	 *            the x-coordinate of the centre position.
+	 * @param y
+	 *            the y-coordinate of the centre position.
+	 * @param startHeading
+	 *            the initial heading.
+	 * @param endHeading
+	 *            the final heading.
+	 * @param armLength
+	 *            the length of the camera arm.
+	 * @param obstacles
+	 *            the index of the obstacles to test against.
+	 * @return true iff turning from the initial heading to the final heading at
+	 *         the given position is valid.
+	 */
+	public boolean canTurn(double x, double y, double startHeading,
+			double endHeading, double armLength, ObstacleIndex obstacles) {
+		arc.set(x, y, startHeading, endHeading, armLength, false);
+		if (obstacles.isCollisionFree(arc)) {
+			return true;
+		}
+		arc.set(x, y, startHeading, endHeading, armLength, true);
+		return obstacles.isCollisionFree(arc);
+	}
+
+	/**
+	 * Returns true iff moving from the start to the end with the given arm
+	 * length is valid, as for
+	 * {@link GeomTools#canMove(double, double, double, double, boolean, double, ObstacleIndex)}
+	 * .
+	 *
+	 * @param startX
+	 *            the x-coordinate of the start position.
+	 * @param startY
+	 *            the y-coordinate of the start position.
+	 * @param endX
+	 *            the x-coordinate of the end position.
+	 * @param endY
+	 *            the y-coordinate of the end position.
+	 * @param hasCamera
+	 *            whether a camera arm is present.
+	 * @param armLength
+	 *            the length of the camera arm.
+	 * @param obstacles
+	 *            the index of the obstacles to test against.
+	 * @return true iff moving from the start to the end with the given arm
+	 *         length is valid.
+	 */
+	public boolean canMove(double startX, double startY, double endX,
+			double endY, boolean hasCamera, double armLength,
+			ObstacleIndex obstacles) {
+		if (!obstacles.isCollisionFree(startX, startY, endX, endY)) {
+			return false;
+		}
+		if (!hasCamera) {
+			return true;
+		}
+		sweep.set(startX, startY, endX, endY, armLength);
+		return obstacles.isCollisionFree(sweep);
+	}
+
+	/**
+	 * Returns true iff turning from the initial heading to the final heading at
+	 * the given position is valid, as for
+	 * {@link GeomTools#canTurn(Point2D, double, double, double, List)}; this
+	 * tests each obstacle in turn, for callers that don't have an index.
+	 *
+	 * @param x
+	 *            the x-coordinate of the centre position.
+	 * @param y
+	 *            the y-coordinate of the centre position.
+	 * @param startHeading
+	 *            the initial heading.
+	 * @param endHeading
+	 *            the final heading.
+	 * @param armLength
+	 *            the length of the camera arm.
+	 * @param obstacles
+	 *            the obstacles to test against.
+	 * @return true iff turning from the initial heading to the final heading at
+	 *         the given position is valid.
+	 */
+	public boolean canTurn(double x, double y, double startHeading,
+			double endHeading, double armLength, List<RectRegion> obstacles) {
+		arc.set(x, y, startHeading, endHeading, armLength, false);
+		if (isCollisionFree(arc, obstacles)) {
+			return true;
+		}
+		arc.set(x, y, startHeading, endHeading, armLength, true);
+		return isCollisionFree(arc, obstacles);
+	}
+
+	/**
+	 * Returns true iff moving from the start to the end with the given arm
+	 * length is valid, as for
+	 * {@link GeomTools#canMove(Point2D, Point2D, boolean, double, List)}; this
+	 * tests each obstacle in turn, for callers that don't have an index.
+	 *
+	 * @param startX
+	 *            the x-coordinate of the start position.
+	 * @param startY
+	 *            the y-coordinate of the start position.
+	 * @param endX
+	 *            the x-coordinate of the end position.
+	 * @param endY
+	 *            the y-coordinate of the end position.
+	 * @param hasCamera
+	 *            whether a camera arm is present.
+	 * @param armLength
+	 *            the length of the camera arm.
+	 * @param obstacles
+	 *            the obstacles to test against.
+	 * @return true iff moving from the start to the end with the given arm
+	 *         length is valid.
+	 */
+	public boolean canMove(double startX, double startY, double endX,
+			double endY, boolean hasCamera, double armLength,
+			List<RectRegion> obstacles) {
+		for (RectRegion obs : obstacles) {
+			Rectangle2D rect = obs.getRect();
+			if (LineSegment.intersects(rect.getX(), rect.getY(),
+					rect.getWidth(), rect.getHeight(), startX, startY, endX,
+					endY)) {
+				return false;
+			}
+		}
+		if (!hasCamera) {
+			return true;
+		}
+		sweep.set(startX, startY, endX, endY, armLength);
+		return isCollisionFree(sweep, obstacles);
+	}
+
+	/**
+	 * Returns true iff the given shape doesn't collide with any of the given
+	 * obstacles.
+	 *
+	 * @param s
+	 *            the shape to test.
+	 * @param obstacles
+	 *            the obstacles to test against.
+	 * @return true iff the given shape doesn't collide with any obstacles.
+	 */
+	private static boolean isCollisionFree(PrimitiveShape s,
+			List<RectRegion> obstacles) {
+		for (RectRegion obs : obstacles) {
+			Rectangle2D rect = obs.getRect();
+			if (s.intersects(rect.getX(), rect.getY(), rect.getWidth(),
+					rect.getHeight())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the length of the longest continuous part of the segment from p0
+	 * to p1 that can be seen from the given view position and heading, as a
+	 * fraction of the length of the segment.
+	 *
+	 * @param vx
+	 *            the x-coordinate of the view position of the observer.
+	 * @param vy
+	 *            the y-coordinate of the view position of the observer.
+	 * @param heading
+	 *            the heading of the observer.
+	 * @param x0
+	 *            the x-coordinate of the start of the segment.
+	 * @param y0
+	 *            the y-coordinate of the start of the segment.
+	 * @param x1
+	 *            the x-coordinate of the end of the segment.
+	 * @param y1
+	 *            the y-coordinate of the end of the segment.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the index of the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return the longest visible fraction of the segment.
+	 */
+	public double getLongestVisibleRun(double vx, double vy, double heading,
+			double x0, double y0, double x1, double y1, SensingParameters sp,
+			ObstacleIndex obstacles, double maxDistanceError) {
+		// Points on the segment are p(t) = p0 + t * d for t in [0, 1]; the
+		// vector from the view position to p(t) is w + t * d.
+		double wx = x0 - vx;
+		double wy = y0 - vy;
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		int numAllowed = clipToView(heading, wx, wy, dx, dy, sp,
+				maxDistanceError);
+		if (numAllowed < 0) {
+			return 0;
+		}
+
+		// The parts of the segment hidden behind each obstacle.
+		// Only obstacles meeting the triangle between the view position and
+		// the segment can hide any of it.
+		ensureCapacity(obstacles.size());
+		int numCandidates = obstacles.getCandidates(
+				Math.min(vx, Math.min(x0, x1)), Math.min(vy, Math.min(y0, y1)),
+				Math.max(vx, Math.max(x0, x1)), Math.max(vy, Math.max(y0, y1)),
+				candidates);
+		double[] bounds = obstacles.getBounds();
+		int numShadows = 0;
+		for (int c = 0; c < numCandidates; c++) {
+			int i = 4 * candidates[c];
+			if (getShadow(vx, vy, wx, wy, dx, dy, bounds[i], bounds[i + 1],
+					bounds[i + 2], bounds[i + 3], polygon, shadow)) {
+				shadowStarts[numShadows] = shadow[0];
+				shadowEnds[numShadows] = shadow[1];
+				numShadows++;
+			}
+		}
+		return getLongestRun(numAllowed, numShadows);
+	}
+
+	/**
+	 * Returns the length of the longest continuous part of the segment from p0
+	 * to p1 that can be seen from the given view position and heading, as a
+	 * fraction of the length of the segment; this tests each obstacle in turn,
+	 * for callers that don't have an index.
+	 *
+	 * @param vx
+	 *            the x-coordinate of the view position of the observer.
+	 * @param vy
+	 *            the y-coordinate of the view position of the observer.
+	 * @param heading
+	 *            the heading of the observer.
+	 * @param x0
+	 *            the x-coordinate of the start of the segment.
+	 * @param y0
+	 *            the y-coordinate of the start of the segment.
+	 * @param x1
+	 *            the x-coordinate of the end of the segment.
+	 * @param y1
+	 *            the y-coordinate of the end of the segment.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return the longest visible fraction of the segment.
+	 */
+	public double getLongestVisibleRun(double vx, double vy, double heading,
+			double x0, double y0, double x1, double y1, SensingParameters sp,
+			List<RectRegion> obstacles, double maxDistanceError) {
+		double wx = x0 - vx;
+		double wy = y0 - vy;
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		int numAllowed = clipToView(heading, wx, wy, dx, dy, sp,
+				maxDistanceError);
+		if (numAllowed < 0) {
+			return 0;
+		}
+
+		// The parts of the segment hidden behind each obstacle.
+		ensureCapacity(obstacles.size());
+		double minX = Math.min(vx, Math.min(x0, x1));
+		double maxX = Math.max(vx, Math.max(x0, x1));
+		double minY = Math.min(vy, Math.min(y0, y1));
+		double maxY = Math.max(vy, Math.max(y0, y1));
+		int numShadows = 0;
+		for (RectRegion obs : obstacles) {
+			Rectangle2D rect = obs.getRect();
+			if (rect.getMaxX() < minX || rect.getMinX() > maxX
+					|| rect.getMaxY() < minY || rect.getMinY() > maxY) {
+				continue;
+			}
+			if (getShadow(vx, vy, wx, wy, dx, dy, rect.getMinX(),
+					rect.getMinY(), rect.getMaxX(), rect.getMaxY(), polygon,
+					shadow)) {
+				shadowStarts[numShadows] = shadow[0];
+				shadowEnds[numShadows] = shadow[1];
+				numShadows++;
+			}
+		}
+		return getLongestRun(numAllowed, numShadows);
+	}
+
+	/**
+	 * Clips the segment p(t) = v + w + t * d, t in [0, 1], to the observer's
+	 * range and field of view, leaving the part close enough to always count
+	 * as seen in near, and the parts within the field of view in allowed.
+	 *
+	 * @param heading
+	 *            the heading of the observer.
+	 * @param wx
+	 *            the x-coordinate of w.
+	 * @param wy
+	 *            the y-coordinate of w.
+	 * @param dx
+	 *            the x-coordinate of d.
+	 * @param dy
+	 *            the y-coordinate of d.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return the number of allowed parts, or -1 if no part of the segment is
+	 *         within range.
+	 */
+	private int clipToView(double heading, double wx, double wy, double dx,
+			double dy, SensingParameters sp, double maxDistanceError) {
+		double dd = dx * dx + dy * dy;
+		if (dd == 0) {
+			return -1;
+		}
+
+		// Points within range.
+		if (!clipToDisc(wx, wy, dx, dy, sp.getRange() + maxDistanceError,
+				range)) {
+			return -1;
+		}
+		// Points close enough to always count as seen.
+		if (!clipToDisc(wx, wy, dx, dy, maxDistanceError, near)) {
+			near[0] = 0;
+			near[1] = -1;
+		}
+
+		// Points within the field of view; the view cone is bounded by the
+		// unit vectors (ax, ay) (anticlockwise) and (bx, by) (clockwise).
+		int numAllowed;
+		double halfAngle = sp.getAngle() / 2;
+		if (halfAngle >= Math.PI) {
+			allowed[0] = range[0];
+			allowed[1] = range[1];
+			numAllowed = 1;
+		} else {
+			double ax = Math.cos(heading + halfAngle);
+			double ay = Math.sin(heading + halfAngle);
+			double bx = Math.cos(heading - halfAngle);
+			double by = Math.sin(heading - halfAngle);
+			cone[0] = range[0];
+			cone[1] = range[1];
+			if (halfAngle <= Math.PI / 2) {
+				// A convex cone: anticlockwise of b, and clockwise of a.
+				clipToHalfPlane(bx * wy - by * wx, bx * dy - by * dx, cone);
+				clipToHalfPlane(wx * ay - wy * ax, dx * ay - dy * ax, cone);
+				allowed[0] = cone[0];
+				allowed[1] = cone[1];
+				numAllowed = (cone[0] < cone[1]) ? 1 : 0;
+			} else {
+				// A reflex cone: everything except the convex cone that is
+				// anticlockwise of a and clockwise of b.
+				clipToHalfPlane(ax * wy - ay * wx, ax * dy - ay * dx, cone);
+				clipToHalfPlane(wx * by - wy * bx, dx * by - dy * bx, cone);
+				numAllowed = 0;
+				if (cone[0] >= cone[1]) {
+					allowed[numAllowed++] = range[0];
+					allowed[numAllowed++] = range[1];
+				} else {
+					if (range[0] < cone[0]) {
+						allowed[numAllowed++] = range[0];
+						allowed[numAllowed++] = cone[0];
+					}
+					if (cone[1] < range[1]) {
+						allowed[numAllowed++] = cone[1];
+						allowed[numAllowed++] = range[1];
+					}
+				}
+				numAllowed /= 2;
+			}
+		}
+
+		return numAllowed;
+	}
+
+	/**
+	 * Returns the length of the longest run of the allowed parts of a segment,
+	 * less the shadows on it, joined with the near part if they overlap.
+	 *
+	 * @param numAllowed
+	 *            the number of allowed parts.
+	 * @param numShadows
+	 *            the number of shadows.
+	 * @return the longest visible fraction of the segment.
+	 */
+	private double getLongestRun(int numAllowed, int numShadows) {
+		// Merge the shadows; sorting the starts and ends separately is enough
+		// to find the union of the intervals.
+		Arrays.sort(shadowStarts, 0, numShadows);
+		Arrays.sort(shadowEnds, 0, numShadows);
+		int numBlocked = 0;
+		int depth = 0;
+		for (int i = 0, j = 0; j < numShadows;) {
+			if (i < numShadows && shadowStarts[i] <= shadowEnds[j]) {
+				if (depth++ == 0) {
+					blocked[2 * numBlocked] = shadowStarts[i];
+				}
+				i++;
+			} else {
+				if (--depth == 0) {
+					blocked[2 * numBlocked + 1] = shadowEnds[j];
+					numBlocked++;
+				}
+				j++;
+			}
+		}
+
+		// Subtract the blocked parts from the allowed parts; what remains is
+		// sorted, so the near part can be merged in a single pass.
+		// An empty near part is stored as [0, -1], which overlaps nothing.
+		double longestRun = Math.max(0, near[1] - near[0]);
+		double runStart = near[0];
+		double runEnd = near[1];
+		for (int k = 0; k < numAllowed; k++) {
+			double start = allowed[2 * k];
+			double end = allowed[2 * k + 1];
+			double cursor = start;
+			for (int b = 0; b <= numBlocked; b++) {
+				double pieceEnd = (b < numBlocked) ? Math.min(
+						blocked[2 * b], end) : end;
+				if (pieceEnd > cursor) {
+					// Merge with the near part if they overlap.
+					if (cursor <= runEnd && pieceEnd >= runStart) {
+						runStart = Math.min(runStart, cursor);
+						runEnd = Math.max(runEnd, pieceEnd);
+						longestRun = Math.max(longestRun, runEnd - runStart);
+					} else {
+						longestRun = Math.max(longestRun, pieceEnd - cursor);
+					}
+				}
+				if (b < numBlocked) {
+					cursor = Math.max(cursor, blocked[2 * b + 1]);
+					if (cursor >= end) {
+						break;
+					}
+				}
+			}
+		}
+		return longestRun;
+	}
+
+	/**
+	 * Finds the parameter values t in [0, 1] for which |w + t * d| <= radius.
+	 *
+	 * @param wx
+	 *            the x-coordinate of w.
+	 * @param wy
+	 *            the y-coordinate of w.
+	 * @param dx
+	 *            the x-coordinate of d (which must be nonzero).
+	 * @param dy
+	 *            the y-coordinate of d.
+	 * @param radius
+	 *            the radius of the disc.
+	 * @param interval
+	 *            the array to store the resulting interval in.
+	 * @return true iff the resulting interval is nonempty.
+	 */
+	private static boolean clipToDisc(double wx, double wy, double dx,
+			double dy, double radius, double[] interval) {
+		double a = dx * dx + dy * dy;
+		double b = wx * dx + wy * dy;
+		double c = wx * wx + wy * wy - radius * radius;
+		double discriminant = b * b - a * c;
+		if (discriminant < 0) {
+			return false;
+		}
+		double root = Math.sqrt(discriminant);
+		interval[0] = Math.max(0, (-b - root) / a);
+		interval[1] = Math.min(1, (-b + root) / a);
+		return interval[0] < interval[1];
+	}
+
+	/**
+	 * Restricts the given interval to the parameter values t for which
+	 * f0 + t * f1 >= 0.
+	 *
+	 * @param f0
+	 *            the constant term.
+	 * @param f1
+	 *            the linear term.
+	 * @param interval
+	 *            the interval to restrict.
+	 */
+	private static void clipToHalfPlane(double f0, double f1, double[] interval) {
+		if (f1 > 0) {
+			interval[0] = Math.max(interval[0], -f0 / f1);
+		} else if (f1 < 0) {
+			interval[1] = Math.min(interval[1], -f0 / f1);
+		} else if (f0 < 0) {
+			interval[1] = interval[0];
+		}
+	}
+
+	/**
+	 * Finds the part of the segment p(t) = v + w + t * d, t in [0, 1], that is
+	 * hidden from the view position v by the given rectangle.
+	 *
+	 * The segment from v to p(t) meets the rectangle iff some point
+	 * v + l * (w + t * d) with l in [0, 1] lies within it; substituting
+	 * m = l * t makes these constraints linear in (l, m), over the triangle
+	 * 0 <= m <= l <= 1. The hidden values of t = m / l form an interval, whose
+	 * ends are attained at vertices of the clipped triangle.
+	 *
+	 * @param vx
+	 *            the x-coordinate of the view position.
+	 * @param vy
+	 *            the y-coordinate of the view position.
+	 * @param wx
+	 *            the x-coordinate of w.
+	 * @param wy
+	 *            the y-coordinate of w.
+	 * @param dx
+	 *            the x-coordinate of d.
+	 * @param dy
+	 *            the y-coordinate of d.
+	 * @param minX
+	 *            the minimum x-value of the rectangle.
+	 * @param minY
+	 *            the minimum y-value of the rectangle.
+	 * @param maxX
+	 *            the maximum x-value of the rectangle.
+	 * @param maxY
+	 *            the maximum y-value of the rectangle.
+	 * @param polygon
+	 *            working space for the clipped polygon.
+	 * @param shadow
+	 *            the array to store the hidden interval in.
+	 * @return true iff some part of the segment is hidden.
+	 */
+	private static boolean getShadow(double vx, double vy, double wx,
+			double wy, double dx, double dy, double minX, double minY,
+			double maxX, double maxY, double[] polygon, double[] shadow) {
+		if (vx >= minX && vx <= maxX && vy >= minY && vy <= maxY) {
+			shadow[0] = 0;
+			shadow[1] = 1;
+			return true;
+		}
+		// The polygon is stored as (l, m) pairs; the second half of the array
+		// is used as the output buffer while clipping.
+		int half = 2 * MAX_SHADOW_POLYGON_SIZE;
+		polygon[0] = 0;
+		polygon[1] = 0;
+		polygon[2] = 1;
+		polygon[3] = 0;
+		polygon[4] = 1;
+		polygon[5] = 1;
+		int n = 3;
+		// Each constraint is of the form c + l * a + m * b >= 0.
+		n = clipPolygon(polygon, n, vx - minX, wx, dx, half);
+		n = clipPolygon(polygon, n, maxX - vx, -wx, -dx, half);
+		n = clipPolygon(polygon, n, vy - minY, wy, dy, half);
+		n = clipPolygon(polygon, n, maxY - vy, -wy, -dy, half);
+		if (n == 0) {
+			return false;
+		}
+		double minT = Double.POSITIVE_INFINITY;
+		double maxT = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			double l = polygon[2 * i];
+			if (l <= 0) {
+				continue;
+			}
+			double t = polygon[2 * i + 1] / l;
+			minT = Math.min(minT, t);
+			maxT = Math.max(maxT, t);
+		}
+		if (minT > maxT) {
+			return false;
+		}
+		shadow[0] = Math.max(0, minT);
+		shadow[1] = Math.min(1, maxT);
+		return true;
+	}
+
+	/**
+	 * Clips the polygon stored at the start of the given array to the
+	 * half-plane c + l * a + m * b >= 0 (Sutherland-Hodgman).
+	 *
+	 * @param polygon
+	 *            the polygon, as (l, m) pairs, followed by a buffer of the same
+	 *            size.
+	 * @param n
+	 *            the number of vertices.
+	 * @param c
+	 *            the constant term.
+	 * @param a
+	 *            the coefficient of l.
+	 * @param b
+	 *            the coefficient of m.
+	 * @param half
+	 *            the offset of the buffer.
+	 * @return the number of vertices of the clipped polygon.
+	 */
+	private static int clipPolygon(double[] polygon, int n, double c,
+			double a, double b, int half) {
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			double li = polygon[2 * i];
+			double mi = polygon[2 * i + 1];
+			double lj = polygon[2 * j];
+			double mj = polygon[2 * j + 1];
+			double fi = c + li * a + mi * b;
+			double fj = c + lj * a + mj * b;
+			if (fi >= 0) {
+				polygon[half + 2 * m] = li;
+				polygon[half + 2 * m + 1] = mi;
+				m++;
+			}
+			if ((fi >= 0) != (fj >= 0)) {
+				double s = fi / (fi - fj);
+				polygon[half + 2 * m] = li + s * (lj - li);
+				polygon[half + 2 * m + 1] = mi + s * (mj - mi);
+				m++;
+			}
+		}
+		System.arraycopy(polygon, half, polygon, 0, 2 * m);
+		return m;
+	}
+}
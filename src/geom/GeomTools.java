@@ -7,7 +7,6 @@ import game.SensingParameters;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
-import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.List;
@@ -19,6 +18,14 @@ import java.util.List;
  * 
  */
 public class GeomTools {
+	/** The working space of each thread for the exact visibility tests. */
+	private static final ThreadLocal<GeomKernel> KERNEL = new ThreadLocal<GeomKernel>() {
+		@Override
+		protected GeomKernel initialValue() {
+			return new GeomKernel();
+		}
+	};
+
 	/**
 	 * Normalises an angle to the range (-pi, pi]
 	 * 
@@ -66,10 +73,12 @@ public class GeomTools {
 		if (!state.hasCamera()) {
 			return state.getPosition();
 		}
+		Point2D position = state.getPosition();
 		double heading = state.getHeading();
 		double armLength = state.getCameraArmLength();
-		return new Vector2D(armLength, heading - Math.PI / 2).addedTo(state
-				.getPosition());
+		return new Point2D.Double(GeomKernel.getViewX(position.getX(),
+				heading, true, armLength), GeomKernel.getViewY(
+				position.getY(), heading, true, armLength));
 	}
 
 	/**
@@ -147,17 +156,58 @@ public class GeomTools {
 	 */
 	public static boolean canTurn(Point2D centre, double startHeading,
 			double endHeading, double armLength, List<RectRegion> obstacles) {
-		if (isCollisionFree(
-				getTurningArc(centre, startHeading, endHeading, armLength,
-						false), obstacles)) {
-			return true;
-		}
-		if (isCollisionFree(
-				getTurningArc(centre, startHeading, endHeading, armLength, true),
-				obstacles)) {
-			return true;
-		}
-		return false;
+		return KERNEL.get().canTurn(centre.getX(), centre.getY(),
+				startHeading, endHeading, armLength, obstacles);
+	}
+
+	/**
+	 * Returns true iff turning from the initial heading to the final heading at
+	 * the given position is valid.
+	 * 
+	 * @param centre
+	 *            the centre position.
+	 * @param startHeading
+	 *            the initial heading.
+	 * @param endHeading
+	 *            the final heading.
+	 * @param armLength
+	 *            the length of the camera arm.
+	 * @param obstacles
+	 *            the index of the obstacles to test against.
+	 * @return true iff turning from the initial heading to the final heading at
+	 *         the given position is valid.
+	 */
+	public static boolean canTurn(Point2D centre, double startHeading,
+			double endHeading, double armLength, ObstacleIndex obstacles) {
+		return canTurn(centre.getX(), centre.getY(), startHeading, endHeading,
+				armLength, obstacles);
+	}
+
+	/**
+	 * Returns true iff turning from the initial heading to the final heading at
+	 * the given position is valid; the turning arcs are tested as
+	 * {@link PieSlice}s, which gives the same results as testing the shapes
+	 * from {@link #getTurningArc} without building them.
+	 * 
+	 * @param x
+	 *            the x-coordinate of the centre position.
+	 * @param y
+	 *            the y-coordinate of the centre position.
+	 * @param startHeading
+	 *            the initial heading.
+	 * @param endHeading
+	 *            the final heading.
+	 * @param armLength
+	 *            the length of the camera arm.
+	 * @param obstacles
+	 *            the index of the obstacles to test against.
+	 * @return true iff turning from the initial heading to the final heading at
+	 *         the given position is valid.
+	 */
+	public static boolean canTurn(double x, double y, double startHeading,
+			double endHeading, double armLength, ObstacleIndex obstacles) {
+		return KERNEL.get().canTurn(x, y, startHeading, endHeading, armLength,
+				obstacles);
 	}
 
 	/**
@@ -179,19 +229,66 @@ public class GeomTools {
 	 */
 	public static boolean canMove(Point2D startPos, Point2D endPos,
 			boolean hasCamera, double armLength, List<RectRegion> obstacles) {
-		Line2D line = new Line2D.Double(startPos, endPos);
-		if (!isCollisionFree(line, obstacles)) {
-			return false;
-		}
-		if (!hasCamera) {
-			return true;
-		}
-		return isCollisionFree(getMoveSweep(startPos, endPos, armLength),
-				obstacles);
+		return KERNEL.get().canMove(startPos.getX(), startPos.getY(),
+				endPos.getX(), endPos.getY(), hasCamera, armLength, obstacles);
 	}
 
 	/**
-	 * Returns true iff the observer can see the potential observee.
+	 * Returns true iff moving from the start to the end with the given arm
+	 * length is valid.
+	 * 
+	 * @param startPos
+	 *            the start position.
+	 * @param endPos
+	 *            the end position.
+	 * @param hasCamera
+	 *            whether a camera arm is present.
+	 * @param armLength
+	 *            the length of the camera arm.
+	 * @param obstacles
+	 *            the index of the obstacles to test against.
+	 * @return true iff moving from the start to the end with the given arm
+	 *         length is valid.
+	 */
+	public static boolean canMove(Point2D startPos, Point2D endPos,
+			boolean hasCamera, double armLength, ObstacleIndex obstacles) {
+		return canMove(startPos.getX(), startPos.getY(), endPos.getX(),
+				endPos.getY(), hasCamera, armLength, obstacles);
+	}
+
+	/**
+	 * Returns true iff moving from the start to the end with the given arm
+	 * length is valid; the path and the camera sweep are tested as a
+	 * {@link LineSegment} and a {@link MoveSweep}, which gives the same results
+	 * as testing the equivalent shapes without building them.
+	 * 
+	 * @param startX
+	 *            the x-coordinate of the start position.
+	 * @param startY
+	 *            the y-coordinate of the start position.
+	 * @param endX
+	 *            the x-coordinate of the end position.
+	 * @param endY
+	 *            the y-coordinate of the end position.
+	 * @param hasCamera
+	 *            whether a camera arm is present.
+	 * @param armLength
+	 *            the length of the camera arm.
+	 * @param obstacles
+	 *            the index of the obstacles to test against.
+	 * @return true iff moving from the start to the end with the given arm
+	 *         length is valid.
+	 */
+	public static boolean canMove(double startX, double startY, double endX,
+			double endY, boolean hasCamera, double armLength,
+			ObstacleIndex obstacles) {
+		return KERNEL.get().canMove(startX, startY, endX, endY, hasCamera,
+				armLength, obstacles);
+	}
+
+	/**
+	 * Returns true iff the observer can see the potential observee. The
+	 * observee's camera arm, if any, is tested by sampling points along it.
 	 * 
 	 * @param observerState
 	 *            the state of the observer.
@@ -241,6 +338,91 @@ public class GeomTools {
 		return false;
 	}
 
+	/**
+	 * Returns true iff the observer can see the potential observee.
+	 *
+	 * Unlike the sampled version of this method, the visibility of the
+	 * observee's camera arm is determined exactly: the arm is clipped against
+	 * the observer's range, its field of view and the shadow of each obstacle,
+	 * and the arm is seen iff the longest visible part of it covers more than
+	 * half of its length.
+	 *
+	 * @param observerState
+	 *            the state of the observer.
+	 * @param observeeState
+	 *            the state of the potential observee.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the potential observee.
+	 */
+	public static boolean canSee(AgentState observerState,
+			AgentState observeeState, SensingParameters sp,
+			List<RectRegion> obstacles, double maxDistanceError) {
+		return KERNEL.get().canSee(observerState, observeeState, sp,
+				obstacles, maxDistanceError);
+	}
+
+	/**
+	 * Returns true iff the observer can see the potential observee; the
+	 * observee's camera arm, if any, is tested exactly, as for
+	 * {@link #canSee(AgentState, AgentState, SensingParameters, List, double)}.
+	 *
+	 * @param observerState
+	 *            the state of the observer.
+	 * @param observeeState
+	 *            the state of the potential observee.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the index of the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the potential observee.
+	 */
+	public static boolean canSee(AgentState observerState,
+			AgentState observeeState, SensingParameters sp,
+			ObstacleIndex obstacles, double maxDistanceError) {
+		Point2D observeePos = observeeState.getPosition();
+		// Check if the observee can be directly seen.
+		if (canSee(observerState, observeePos, sp, obstacles, maxDistanceError)) {
+			return true;
+		}
+
+		// Check if the observee has a camera arm that can be seen.
+		return canSeeCameraArm(observerState, observeeState, sp, obstacles,
+				maxDistanceError);
+	}
+
+	/**
+	 * Returns true iff the observer can see at least half of the potential
+	 * observee's camera arm; this is false if the observee has no camera.
+	 *
+	 * @param observerState
+	 *            the state of the observer.
+	 * @param observeeState
+	 *            the state of the potential observee.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the index of the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the observee's camera arm.
+	 */
+	public static boolean canSeeCameraArm(AgentState observerState,
+			AgentState observeeState, SensingParameters sp,
+			ObstacleIndex obstacles, double maxDistanceError) {
+		if (!observeeState.hasCamera()) {
+			return false;
+		}
+		return KERNEL.get().canSeeCameraArm(observerState, observeeState, sp,
+				obstacles, maxDistanceError);
+	}
+
 	/**
 	 * Returns true iff the given observer can see the given point.
 	 * 
@@ -259,26 +441,46 @@ public class GeomTools {
 	public static boolean canSee(AgentState observerState, Point2D point,
 			SensingParameters sp, List<RectRegion> obstacles,
 			double maxDistanceError) {
-		Point2D viewPos = calculateViewPosition(observerState);
-		Vector2D viewVector = new Vector2D(viewPos, point);
-
-		// Verify the viewing range.
-		double distance = viewVector.getMagnitude();
-		if (distance < maxDistanceError) {
-			return true;
-		}
-		if (distance > sp.getRange() + maxDistanceError) {
-			return false;
-		}
-
-		// Verify the viewing angle.
-		double viewAngleDelta = GeomTools.normaliseAngle(viewVector
-				.getDirection() - observerState.getHeading());
-		if (Math.abs(viewAngleDelta) > sp.getAngle() / 2) {
-			return false;
-		}
+		double heading = observerState.getHeading();
+		Point2D pos = observerState.getPosition();
+		return GeomKernel.canSeePoint(
+				GeomKernel.getViewX(pos.getX(), heading,
+						observerState.hasCamera(),
+						observerState.getCameraArmLength()),
+				GeomKernel.getViewY(pos.getY(), heading,
+						observerState.hasCamera(),
+						observerState.getCameraArmLength()), heading,
+				point.getX(), point.getY(), sp, obstacles, maxDistanceError);
+	}
 
-		return isCollisionFree(new Line2D.Double(viewPos, point), obstacles);
+	/**
+	 * Returns true iff the given observer can see the given point.
+	 * 
+	 * @param observerState
+	 *            the state of the observer.
+	 * @param point
+	 *            the point.
+	 * @param sp
+	 *            the sensing parameters of the observer.
+	 * @param obstacles
+	 *            the index of the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 * @return true iff the observer can see the potential observee.
+	 */
+	public static boolean canSee(AgentState observerState, Point2D point,
+			SensingParameters sp, ObstacleIndex obstacles,
+			double maxDistanceError) {
+		double heading = observerState.getHeading();
+		Point2D pos = observerState.getPosition();
+		return GeomKernel.canSeePoint(
+				GeomKernel.getViewX(pos.getX(), heading,
+						observerState.hasCamera(),
+						observerState.getCameraArmLength()),
+				GeomKernel.getViewY(pos.getY(), heading,
+						observerState.hasCamera(),
+						observerState.getCameraArmLength()), heading,
+				point.getX(), point.getY(), sp, obstacles, maxDistanceError);
 	}
 
 	/**
@@ -298,4 +500,18 @@ public class GeomTools {
 		}
 		return true;
 	}
+
+	/**
+	 * Returns true iff the given shape doesn't collide with any of the indexed
+	 * obstacles.
+	 * 
+	 * @param s
+	 *            the shape to test.
+	 * @param obstacles
+	 *            the index of the obstacles to test against.
+	 * @return true iff the given shape doesn't collide with any obstacles.
+	 */
+	public static boolean isCollisionFree(Shape s, ObstacleIndex obstacles) {
+		return obstacles.isCollisionFree(s);
+	}
 }
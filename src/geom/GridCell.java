@@ -8,9 +8,9 @@ package geom;
  */
 public class GridCell {
 	/** The row index of the cell. */
-	private int row;
+	private final int row;
 	/** The column index of the cell. */
-	private int col;
+	private final int col;
 
 	/**
 	 * Constructs a grid cell from its row and column indices.
@@ -0,0 +1,111 @@
+package geom;
+
+/**
+ * The cosines and sines of the eight grid headings, as used by
+ * {@link TargetGrid#getHeading(int)} for the targets' moves and the tracker's
+ * desired moves, and of the directions of camera arms at those headings. The
+ * tracker's diverged moves end at random points within a cell of the
+ * {@link TrackerGrid}, so their headings are arbitrary and go to {@link Math}.
+ *
+ * The values are computed with {@link Math#cos} and {@link Math#sin} once, and
+ * looked up only for headings that are bit-for-bit equal to a grid heading;
+ * any other heading is passed on to {@link Math}, so the results are always
+ * exactly the same as calling it directly.
+ */
+public class HeadingTable {
+	/** The number of grid headings on either side of heading 0. */
+	private static final int NUM_EIGHTHS = 4;
+
+	/** The bits of each grid heading from -pi to pi, for exact comparison. */
+	private static final long[] HEADING_BITS = new long[2 * NUM_EIGHTHS + 1];
+	/** The cosine of each grid heading. */
+	private static final double[] COS = new double[HEADING_BITS.length];
+	/** The sine of each grid heading. */
+	private static final double[] SIN = new double[HEADING_BITS.length];
+	/** The cosine of the camera arm direction for each grid heading. */
+	private static final double[] ARM_COS = new double[HEADING_BITS.length];
+	/** The sine of the camera arm direction for each grid heading. */
+	private static final double[] ARM_SIN = new double[HEADING_BITS.length];
+
+	static {
+		for (int k = -NUM_EIGHTHS; k <= NUM_EIGHTHS; k++) {
+			int i = k + NUM_EIGHTHS;
+			double heading = k * Math.PI / 4;
+			HEADING_BITS[i] = Double.doubleToRawLongBits(heading);
+			COS[i] = Math.cos(heading);
+			SIN[i] = Math.sin(heading);
+			ARM_COS[i] = Math.cos(heading - Math.PI / 2);
+			ARM_SIN[i] = Math.sin(heading - Math.PI / 2);
+		}
+	}
+
+	/**
+	 * Returns the index of the given heading in the table, or -1 if it isn't a
+	 * grid heading.
+	 *
+	 * @param heading
+	 *            the heading.
+	 * @return the index of the heading, or -1 if it isn't in the table.
+	 */
+	private static int getIndex(double heading) {
+		if (!(heading >= -Math.PI && heading <= Math.PI)) {
+			return -1;
+		}
+		int i = (int) Math.round(heading * NUM_EIGHTHS / Math.PI)
+				+ NUM_EIGHTHS;
+		if (HEADING_BITS[i] != Double.doubleToRawLongBits(heading)) {
+			return -1;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the cosine of the given heading.
+	 *
+	 * @param heading
+	 *            the heading.
+	 * @return the cosine of the heading.
+	 */
+	public static double getCos(double heading) {
+		int i = getIndex(heading);
+		return (i >= 0) ? COS[i] : Math.cos(heading);
+	}
+
+	/**
+	 * Returns the sine of the given heading.
+	 *
+	 * @param heading
+	 *            the heading.
+	 * @return the sine of the heading.
+	 */
+	public static double getSin(double heading) {
+		int i = getIndex(heading);
+		return (i >= 0) ? SIN[i] : Math.sin(heading);
+	}
+
+	/**
+	 * Returns the cosine of the direction of a camera arm, which points at
+	 * <code>heading - pi / 2</code>, for an agent with the given heading.
+	 *
+	 * @param heading
+	 *            the heading of the agent.
+	 * @return the cosine of the camera arm direction.
+	 */
+	public static double getArmCos(double heading) {
+		int i = getIndex(heading);
+		return (i >= 0) ? ARM_COS[i] : Math.cos(heading - Math.PI / 2);
+	}
+
+	/**
+	 * Returns the sine of the direction of a camera arm, which points at
+	 * <code>heading - pi / 2</code>, for an agent with the given heading.
+	 *
+	 * @param heading
+	 *            the heading of the agent.
+	 * @return the sine of the camera arm direction.
+	 */
+	public static double getArmSin(double heading) {
+		int i = getIndex(heading);
+		return (i >= 0) ? ARM_SIN[i] : Math.sin(heading - Math.PI / 2);
+	}
+}
@@ -0,0 +1,146 @@
+package geom;
+
+/**
+ * A line segment, with an intersection test against axis-aligned rectangles
+ * that works on primitive values.
+ *
+ * The test clips the segment to the rectangle one side at a time, exactly as
+ * {@link java.awt.geom.Rectangle2D#intersectsLine} does, so the two always
+ * agree.
+ */
+public class LineSegment implements PrimitiveShape {
+	/** The outcode bit for points left of a rectangle. */
+	private static final int OUT_LEFT = 1;
+	/** The outcode bit for points below the minimum y-value of a rectangle. */
+	private static final int OUT_TOP = 2;
+	/** The outcode bit for points right of a rectangle. */
+	private static final int OUT_RIGHT = 4;
+	/** The outcode bit for points above the maximum y-value of a rectangle. */
+	private static final int OUT_BOTTOM = 8;
+
+	/** The x-coordinate of the start point. */
+	private final double x1;
+	/** The y-coordinate of the start point. */
+	private final double y1;
+	/** The x-coordinate of the end point. */
+	private final double x2;
+	/** The y-coordinate of the end point. */
+	private final double y2;
+
+	/**
+	 * Constructs a line segment between the given points.
+	 *
+	 * @param x1
+	 *            the x-coordinate of the start point.
+	 * @param y1
+	 *            the y-coordinate of the start point.
+	 * @param x2
+	 *            the x-coordinate of the end point.
+	 * @param y2
+	 *            the y-coordinate of the end point.
+	 */
+	public LineSegment(double x1, double y1, double x2, double y2) {
+		this.x1 = x1;
+		this.y1 = y1;
+		this.x2 = x2;
+		this.y2 = y2;
+	}
+
+	@Override
+	public double getMinX() {
+		return Math.min(x1, x2);
+	}
+
+	@Override
+	public double getMinY() {
+		return Math.min(y1, y2);
+	}
+
+	@Override
+	public double getMaxX() {
+		return Math.max(x1, x2);
+	}
+
+	@Override
+	public double getMaxY() {
+		return Math.max(y1, y2);
+	}
+
+	@Override
+	public boolean intersects(double x, double y, double w, double h) {
+		return intersects(x, y, w, h, x1, y1, x2, y2);
+	}
+
+	/**
+	 * Returns true iff the given line segment intersects the given rectangle.
+	 *
+	 * @param x
+	 *            the minimum x-value of the rectangle.
+	 * @param y
+	 *            the minimum y-value of the rectangle.
+	 * @param w
+	 *            the width of the rectangle.
+	 * @param h
+	 *            the height of the rectangle.
+	 * @param x1
+	 *            the x-coordinate of the start point.
+	 * @param y1
+	 *            the y-coordinate of the start point.
+	 * @param x2
+	 *            the x-coordinate of the end point.
+	 * @param y2
+	 *            the y-coordinate of the end point.
+	 * @return true iff the segment intersects the rectangle.
+	 */
+	public static boolean intersects(double x, double y, double w, double h,
+			double x1, double y1, double x2, double y2) {
+		int out1, out2;
+		if ((out2 = outcode(x, y, w, h, x2, y2)) == 0) {
+			return true;
+		}
+		while ((out1 = outcode(x, y, w, h, x1, y1)) != 0) {
+			if ((out1 & out2) != 0) {
+				return false;
+			}
+			if ((out1 & (OUT_LEFT | OUT_RIGHT)) != 0) {
+				double edgeX = x;
+				if ((out1 & OUT_RIGHT) != 0) {
+					edgeX += w;
+				}
+				y1 = y1 + (edgeX - x1) * (y2 - y1) / (x2 - x1);
+				x1 = edgeX;
+			} else {
+				double edgeY = y;
+				if ((out1 & OUT_BOTTOM) != 0) {
+					edgeY += h;
+				}
+				x1 = x1 + (edgeY - y1) * (x2 - x1) / (y2 - y1);
+				y1 = edgeY;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the outcode of the given point relative to the given rectangle.
+	 */
+	private static int outcode(double x, double y, double w, double h,
+			double px, double py) {
+		int out = 0;
+		if (w <= 0) {
+			out |= OUT_LEFT | OUT_RIGHT;
+		} else if (px < x) {
+			out |= OUT_LEFT;
+		} else if (px > x + w) {
+			out |= OUT_RIGHT;
+		}
+		if (h <= 0) {
+			out |= OUT_TOP | OUT_BOTTOM;
+		} else if (py < y) {
+			out |= OUT_TOP;
+		} else if (py > y + h) {
+			out |= OUT_BOTTOM;
+		}
+		return out;
+	}
+}
@@ -0,0 +1,172 @@
+package geom;
+
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+
+/**
+ * The rectangle swept by a camera arm as its agent moves in a straight line,
+ * as returned by {@link GeomTools#getMoveSweep}, with an intersection test
+ * against axis-aligned rectangles that works on primitive values.
+ *
+ * The test is a separating-axis test on the two axes of the rectangle and the
+ * two axes of the swept rectangle. Where the two rectangles are clearly apart
+ * or clearly overlapping, it decides without allocating; where they come
+ * within {@link #CONTACT_TOLERANCE} of touching, or the swept rectangle is
+ * degenerate, it defers to the swept shape itself, so the results are always
+ * the same as those of testing that shape.
+ */
+public class MoveSweep implements PrimitiveShape {
+	/** The distance within which rectangles are tested as shapes. */
+	public static final double CONTACT_TOLERANCE = 1e-9;
+
+	/** The x-coordinate of the start position. */
+	private double startX;
+	/** The y-coordinate of the start position. */
+	private double startY;
+	/** The x-coordinate of the end position. */
+	private double endX;
+	/** The y-coordinate of the end position. */
+	private double endY;
+	/** The length of the camera arm. */
+	private double armLength;
+	/** The distance moved. */
+	private double distance;
+	/** The unit vector along the camera arm. */
+	private double armX, armY;
+	/** The unit vector along the direction of movement. */
+	private double moveX, moveY;
+	/** The bounds of the swept rectangle. */
+	private double minX, minY, maxX, maxY;
+	/** True iff the swept rectangle is too thin to be decided by its axes. */
+	private boolean degenerate;
+	/** The swept shape, built when it's first needed. */
+	private Shape shape = null;
+
+	/**
+	 * Constructs the rectangle swept in moving between the given positions.
+	 *
+	 * @param startX
+	 *            the x-coordinate of the start position.
+	 * @param startY
+	 *            the y-coordinate of the start position.
+	 * @param endX
+	 *            the x-coordinate of the end position.
+	 * @param endY
+	 *            the y-coordinate of the end position.
+	 * @param armLength
+	 *            the length of the camera arm.
+	 */
+	public MoveSweep(double startX, double startY, double endX, double endY,
+			double armLength) {
+		set(startX, startY, endX, endY, armLength);
+	}
+
+	/**
+	 * Makes this the rectangle swept in moving between the given positions, so
+	 * that the same object can be reused for many tests.
+	 *
+	 * @param startX
+	 *            the x-coordinate of the start position.
+	 * @param startY
+	 *            the y-coordinate of the start position.
+	 * @param endX
+	 *            the x-coordinate of the end position.
+	 * @param endY
+	 *            the y-coordinate of the end position.
+	 * @param armLength
+	 *            the length of the camera arm.
+	 */
+	public void set(double startX, double startY, double endX, double endY,
+			double armLength) {
+		this.startX = startX;
+		this.startY = startY;
+		this.endX = endX;
+		this.endY = endY;
+		this.armLength = armLength;
+		double dx = endX - startX;
+		double dy = endY - startY;
+		distance = Math.sqrt(dx * dx + dy * dy);
+		degenerate = !(distance > CONTACT_TOLERANCE
+				&& armLength > CONTACT_TOLERANCE);
+		if (distance > 0) {
+			moveX = dx / distance;
+			moveY = dy / distance;
+		} else {
+			moveX = 1;
+			moveY = 0;
+		}
+		// The arm points to the right of the direction of movement.
+		armX = moveY;
+		armY = -moveX;
+
+		double armDX = armLength * armX;
+		double armDY = armLength * armY;
+		double lowX = Math.min(startX, endX);
+		double highX = Math.max(startX, endX);
+		double lowY = Math.min(startY, endY);
+		double highY = Math.max(startY, endY);
+		minX = Math.min(lowX, lowX + armDX);
+		maxX = Math.max(highX, highX + armDX);
+		minY = Math.min(lowY, lowY + armDY);
+		maxY = Math.max(highY, highY + armDY);
+		shape = null;
+	}
+
+	@Override
+	public double getMinX() {
+		return minX;
+	}
+
+	@Override
+	public double getMinY() {
+		return minY;
+	}
+
+	@Override
+	public double getMaxX() {
+		return maxX;
+	}
+
+	@Override
+	public double getMaxY() {
+		return maxY;
+	}
+
+	@Override
+	public boolean intersects(double x, double y, double w, double h) {
+		if (w <= 0 || h <= 0) {
+			return false;
+		}
+		// The gap between the projections onto the rectangle's axes.
+		double gap = Math.max(Math.max(x - maxX, minX - (x + w)),
+				Math.max(y - maxY, minY - (y + h)));
+		if (gap > CONTACT_TOLERANCE) {
+			return false;
+		}
+
+		// The gap between the projections onto the swept rectangle's axes,
+		// which span [0, armLength] and [0, distance] from the start.
+		double halfW = w / 2;
+		double halfH = h / 2;
+		double centreX = x + halfW - startX;
+		double centreY = y + halfH - startY;
+		double armCentre = centreX * armX + centreY * armY;
+		double armRadius = halfW * Math.abs(armX) + halfH * Math.abs(armY);
+		gap = Math.max(gap, Math.max(armCentre - armRadius - armLength,
+				-armCentre - armRadius));
+		double moveCentre = centreX * moveX + centreY * moveY;
+		double moveRadius = halfW * Math.abs(moveX) + halfH * Math.abs(moveY);
+		gap = Math.max(gap, Math.max(moveCentre - moveRadius - distance,
+				-moveCentre - moveRadius));
+		if (gap > CONTACT_TOLERANCE) {
+			return false;
+		} else if (gap < -CONTACT_TOLERANCE && !degenerate) {
+			return true;
+		}
+		if (shape == null) {
+			shape = GeomTools.getMoveSweep(new Point2D.Double(startX, startY),
+					new Point2D.Double(endX, endY), armLength);
+		}
+		return shape.intersects(x, y, w, h);
+	}
+}
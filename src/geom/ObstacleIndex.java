@@ -0,0 +1,459 @@
+package geom;
+
+import game.RectRegion;
+
+import java.awt.Shape;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A static broad-phase index over a set of rectangular obstacles.
+ *
+ * The obstacles are bucketed into a uniform grid over their bounding box, so
+ * that a collision query only tests the obstacles sharing a grid cell with the
+ * bounding box of the query shape. The index is immutable once built, and its
+ * queries don't allocate, so it can be shared between threads.
+ */
+public class ObstacleIndex {
+	/** The maximum number of grid cells along each axis. */
+	private static final int MAX_GRID_SIZE = 64;
+	/** The padding added to the bounds of query shapes, against rounding. */
+	private static final double BOUNDS_PADDING = 1e-9;
+
+	/** The number of obstacles. */
+	private final int numObstacles;
+	/** The obstacles, in their original order. */
+	private final List<RectRegion> obstacles;
+	/** The obstacles as rectangles; these are never modified or exposed. */
+	private final Rectangle2D[] rects;
+	/** The bounds of each obstacle, as (minX, minY, maxX, maxY). */
+	private final double[] bounds;
+
+	/** The minimum x-value of the grid. */
+	private final double originX;
+	/** The minimum y-value of the grid. */
+	private final double originY;
+	/** The maximum x-value of the grid. */
+	private final double limitX;
+	/** The maximum y-value of the grid. */
+	private final double limitY;
+	/** The width of each grid cell. */
+	private final double cellWidth;
+	/** The height of each grid cell. */
+	private final double cellHeight;
+	/** The number of grid cells along each axis. */
+	private final int gridSize;
+	/** The first grid column and row covered by each obstacle. */
+	private final int[] firstCells;
+	/**
+	 * The obstacles in grid cell c are at indices cellStarts[c] (inclusive) to
+	 * cellStarts[c + 1] (exclusive) of cellObstacles.
+	 */
+	private final int[] cellStarts;
+	/** The obstacle numbers in each cell. */
+	private final int[] cellObstacles;
+
+	/**
+	 * Builds an index over the given obstacles.
+	 *
+	 * @param obstacles
+	 *            the obstacles to index.
+	 */
+	public ObstacleIndex(List<RectRegion> obstacles) {
+		this.obstacles = obstacles;
+		numObstacles = obstacles.size();
+		rects = new Rectangle2D[numObstacles];
+		bounds = new double[4 * numObstacles];
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < numObstacles; i++) {
+			Rectangle2D rect = obstacles.get(i).getRect();
+			rects[i] = rect;
+			bounds[4 * i] = rect.getMinX();
+			bounds[4 * i + 1] = rect.getMinY();
+			bounds[4 * i + 2] = rect.getMaxX();
+			bounds[4 * i + 3] = rect.getMaxY();
+			minX = Math.min(minX, rect.getMinX());
+			minY = Math.min(minY, rect.getMinY());
+			maxX = Math.max(maxX, rect.getMaxX());
+			maxY = Math.max(maxY, rect.getMaxY());
+		}
+		if (numObstacles == 0) {
+			minX = minY = 0;
+			maxX = maxY = 1;
+		}
+
+		gridSize = Math.max(1, Math.min(MAX_GRID_SIZE,
+				(int) Math.ceil(2 * Math.sqrt(numObstacles))));
+		originX = minX;
+		originY = minY;
+		limitX = maxX;
+		limitY = maxY;
+		cellWidth = Math.max((maxX - minX) / gridSize, Double.MIN_NORMAL);
+		cellHeight = Math.max((maxY - minY) / gridSize, Double.MIN_NORMAL);
+
+		// Count the obstacles in each cell, then fill the cells.
+		firstCells = new int[2 * numObstacles];
+		cellStarts = new int[gridSize * gridSize + 1];
+		for (int i = 0; i < numObstacles; i++) {
+			int col0 = getCol(bounds[4 * i]);
+			int row0 = getRow(bounds[4 * i + 1]);
+			int col1 = getCol(bounds[4 * i + 2]);
+			int row1 = getRow(bounds[4 * i + 3]);
+			firstCells[2 * i] = col0;
+			firstCells[2 * i + 1] = row0;
+			for (int row = row0; row <= row1; row++) {
+				for (int col = col0; col <= col1; col++) {
+					cellStarts[row * gridSize + col + 1]++;
+				}
+			}
+		}
+		for (int c = 0; c < gridSize * gridSize; c++) {
+			cellStarts[c + 1] += cellStarts[c];
+		}
+		cellObstacles = new int[cellStarts[gridSize * gridSize]];
+		int[] fill = new int[gridSize * gridSize];
+		for (int i = 0; i < numObstacles; i++) {
+			int col1 = getCol(bounds[4 * i + 2]);
+			int row1 = getRow(bounds[4 * i + 3]);
+			for (int row = firstCells[2 * i + 1]; row <= row1; row++) {
+				for (int col = firstCells[2 * i]; col <= col1; col++) {
+					int c = row * gridSize + col;
+					cellObstacles[cellStarts[c] + fill[c]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the grid column containing the given x-value, clamped to the
+	 * grid.
+	 *
+	 * @param x
+	 *            the x-value.
+	 * @return the grid column containing the given x-value.
+	 */
+	private int getCol(double x) {
+		int col = (int) Math.floor((x - originX) / cellWidth);
+		return Math.max(0, Math.min(gridSize - 1, col));
+	}
+
+	/**
+	 * Returns the grid row containing the given y-value, clamped to the grid.
+	 *
+	 * @param y
+	 *            the y-value.
+	 * @return the grid row containing the given y-value.
+	 */
+	private int getRow(double y) {
+		int row = (int) Math.floor((y - originY) / cellHeight);
+		return Math.max(0, Math.min(gridSize - 1, row));
+	}
+
+	/**
+	 * Returns true iff the given obstacle, found in the given cell, should be
+	 * tested against the given query box. An obstacle spanning several cells
+	 * is only tested in the first of them that the query covers, and only if
+	 * its bounds intersect the query box.
+	 *
+	 * @param i
+	 *            the obstacle number.
+	 * @param col
+	 *            the column of the cell it was found in.
+	 * @param row
+	 *            the row of the cell it was found in.
+	 * @param col0
+	 *            the first column covered by the query.
+	 * @param row0
+	 *            the first row covered by the query.
+	 * @param minX
+	 *            the minimum x-value of the query box.
+	 * @param minY
+	 *            the minimum y-value of the query box.
+	 * @param maxX
+	 *            the maximum x-value of the query box.
+	 * @param maxY
+	 *            the maximum y-value of the query box.
+	 * @return true iff the obstacle should be tested.
+	 */
+	private boolean isCandidate(int i, int col, int row, int col0, int row0,
+			double minX, double minY, double maxX, double maxY) {
+		if (col != Math.max(col0, firstCells[2 * i])
+				|| row != Math.max(row0, firstCells[2 * i + 1])) {
+			return false;
+		}
+		return bounds[4 * i + 2] >= minX && bounds[4 * i] <= maxX
+				&& bounds[4 * i + 3] >= minY && bounds[4 * i + 1] <= maxY;
+	}
+
+	/**
+	 * Returns the number of obstacles.
+	 *
+	 * @return the number of obstacles.
+	 */
+	public int size() {
+		return numObstacles;
+	}
+
+	/**
+	 * Returns the indexed obstacles.
+	 *
+	 * @return the indexed obstacles.
+	 */
+	public List<RectRegion> getObstacles() {
+		return obstacles;
+	}
+
+	/**
+	 * Returns true iff the given shape doesn't collide with any obstacles.
+	 *
+	 * @param s
+	 *            the shape to test.
+	 * @return true iff the given shape doesn't collide with any obstacles.
+	 */
+	public boolean isCollisionFree(Shape s) {
+		if (s instanceof Line2D) {
+			Line2D line = (Line2D) s;
+			return isCollisionFree(line.getX1(), line.getY1(), line.getX2(),
+					line.getY2());
+		}
+		Rectangle2D shapeBounds = s.getBounds2D();
+		double minX = shapeBounds.getMinX() - BOUNDS_PADDING;
+		double minY = shapeBounds.getMinY() - BOUNDS_PADDING;
+		double maxX = shapeBounds.getMaxX() + BOUNDS_PADDING;
+		double maxY = shapeBounds.getMaxY() + BOUNDS_PADDING;
+		if (maxX < originX || maxY < originY || minX > limitX
+				|| minY > limitY) {
+			return true;
+		}
+		int col0 = getCol(minX);
+		int row0 = getRow(minY);
+		int col1 = getCol(maxX);
+		int row1 = getRow(maxY);
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				int c = row * gridSize + col;
+				for (int k = cellStarts[c]; k < cellStarts[c + 1]; k++) {
+					int i = cellObstacles[k];
+					if (isCandidate(i, col, row, col0, row0, minX, minY, maxX,
+							maxY) && s.intersects(rects[i])) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true iff the line segment between the given points doesn't
+	 * collide with any obstacles; this gives the same results as testing a
+	 * {@link Line2D} between them, without allocating.
+	 *
+	 * @param x1
+	 *            the x-coordinate of the start point.
+	 * @param y1
+	 *            the y-coordinate of the start point.
+	 * @param x2
+	 *            the x-coordinate of the end point.
+	 * @param y2
+	 *            the y-coordinate of the end point.
+	 * @return true iff the segment doesn't collide with any obstacles.
+	 */
+	public boolean isCollisionFree(double x1, double y1, double x2, double y2) {
+		double minX = Math.min(x1, x2);
+		double maxX = Math.max(x1, x2);
+		double minY = Math.min(y1, y2);
+		double maxY = Math.max(y1, y2);
+		if (maxX < originX || maxY < originY || minX > limitX
+				|| minY > limitY) {
+			return true;
+		}
+		int col0 = getCol(minX);
+		int row0 = getRow(minY);
+		int col1 = getCol(maxX);
+		int row1 = getRow(maxY);
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				int c = row * gridSize + col;
+				for (int k = cellStarts[c]; k < cellStarts[c + 1]; k++) {
+					int i = cellObstacles[k];
+					Rectangle2D rect = rects[i];
+					if (isCandidate(i, col, row, col0, row0, minX, minY, maxX,
+							maxY)
+							&& LineSegment.intersects(rect.getX(),
+									rect.getY(), rect.getWidth(),
+									rect.getHeight(), x1, y1, x2, y2)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true iff the given shape doesn't collide with any obstacles; the
+	 * shape is tested against each candidate obstacle without allocating.
+	 *
+	 * @param s
+	 *            the shape to test.
+	 * @return true iff the given shape doesn't collide with any obstacles.
+	 */
+	public boolean isCollisionFree(PrimitiveShape s) {
+		double minX = s.getMinX() - BOUNDS_PADDING;
+		double minY = s.getMinY() - BOUNDS_PADDING;
+		double maxX = s.getMaxX() + BOUNDS_PADDING;
+		double maxY = s.getMaxY() + BOUNDS_PADDING;
+		if (maxX < originX || maxY < originY || minX > limitX
+				|| minY > limitY) {
+			return true;
+		}
+		int col0 = getCol(minX);
+		int row0 = getRow(minY);
+		int col1 = getCol(maxX);
+		int row1 = getRow(maxY);
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				int c = row * gridSize + col;
+				for (int k = cellStarts[c]; k < cellStarts[c + 1]; k++) {
+					int i = cellObstacles[k];
+					Rectangle2D rect = rects[i];
+					if (isCandidate(i, col, row, col0, row0, minX, minY, maxX,
+							maxY)
+							&& s.intersects(rect.getX(), rect.getY(),
+									rect.getWidth(), rect.getHeight())) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores the numbers of the obstacles whose bounds intersect the given
+	 * box in the given array, and returns how many there are.
+	 *
+	 * @param minX
+	 *            the minimum x-value of the box.
+	 * @param minY
+	 *            the minimum y-value of the box.
+	 * @param maxX
+	 *            the maximum x-value of the box.
+	 * @param maxY
+	 *            the maximum y-value of the box.
+	 * @param candidates
+	 *            the array to store the obstacle numbers in; it must have room
+	 *            for all of the obstacles.
+	 * @return the number of obstacles found.
+	 */
+	int getCandidates(double minX, double minY, double maxX, double maxY,
+			int[] candidates) {
+		if (maxX < originX || maxY < originY || minX > limitX
+				|| minY > limitY) {
+			return 0;
+		}
+		int numCandidates = 0;
+		int col0 = getCol(minX);
+		int row0 = getRow(minY);
+		int col1 = getCol(maxX);
+		int row1 = getRow(maxY);
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				int c = row * gridSize + col;
+				for (int k = cellStarts[c]; k < cellStarts[c + 1]; k++) {
+					int i = cellObstacles[k];
+					if (isCandidate(i, col, row, col0, row0, minX, minY, maxX,
+							maxY)) {
+						candidates[numCandidates++] = i;
+					}
+				}
+			}
+		}
+		return numCandidates;
+	}
+
+	/**
+	 * Returns an index over only those obstacles whose bounds intersect the
+	 * given box. For shapes lying within the box, queries on the subset give
+	 * the same results as on the full index, while testing fewer obstacles.
+	 *
+	 * @param minX
+	 *            the minimum x-value of the box.
+	 * @param minY
+	 *            the minimum y-value of the box.
+	 * @param maxX
+	 *            the maximum x-value of the box.
+	 * @param maxY
+	 *            the maximum y-value of the box.
+	 * @return an index over the obstacles intersecting the box.
+	 */
+	public ObstacleIndex getSubset(double minX, double minY, double maxX,
+			double maxY) {
+		int[] obstacleNos = new int[numObstacles];
+		return getSubset(obstacleNos,
+				getSubsetObstacles(minX, minY, maxX, maxY, obstacleNos));
+	}
+
+	/**
+	 * Finds the obstacles that {@link #getSubset(double, double, double, double)}
+	 * would keep for the given box, in their original order. Callers that
+	 * query similar boxes repeatedly can compare the results, and only build
+	 * a new subset with {@link #getSubset(int[], int)} when they change.
+	 *
+	 * @param minX
+	 *            the minimum x-value of the box.
+	 * @param minY
+	 *            the minimum y-value of the box.
+	 * @param maxX
+	 *            the maximum x-value of the box.
+	 * @param maxY
+	 *            the maximum y-value of the box.
+	 * @param obstacleNos
+	 *            the array to store the obstacle numbers in; this must have
+	 *            room for every obstacle.
+	 * @return the number of obstacles stored.
+	 */
+	public int getSubsetObstacles(double minX, double minY, double maxX,
+			double maxY, int[] obstacleNos) {
+		int numCandidates = getCandidates(minX - BOUNDS_PADDING, minY
+				- BOUNDS_PADDING, maxX + BOUNDS_PADDING, maxY + BOUNDS_PADDING,
+				obstacleNos);
+		// Keep the obstacles in their original order.
+		Arrays.sort(obstacleNos, 0, numCandidates);
+		return numCandidates;
+	}
+
+	/**
+	 * Returns an index over the given obstacles of this index.
+	 *
+	 * @param obstacleNos
+	 *            the numbers of the obstacles to keep.
+	 * @param numKept
+	 *            the number of obstacles to keep.
+	 * @return an index over the given obstacles.
+	 */
+	public ObstacleIndex getSubset(int[] obstacleNos, int numKept) {
+		List<RectRegion> subset = new ArrayList<RectRegion>(numKept);
+		for (int c = 0; c < numKept; c++) {
+			subset.add(obstacles.get(obstacleNos[c]));
+		}
+		return new ObstacleIndex(subset);
+	}
+
+	/**
+	 * Returns the bounds of all of the obstacles, as (minX, minY, maxX, maxY)
+	 * for each obstacle in turn; the array must not be modified.
+	 *
+	 * @return the bounds of all of the obstacles.
+	 */
+	double[] getBounds() {
+		return bounds;
+	}
+}
@@ -0,0 +1,240 @@
+package geom;
+
+/**
+ * The circular sector swept by a camera arm turning about its base, as
+ * returned by {@link GeomTools#getTurningArc}, with an intersection test
+ * against axis-aligned rectangles that works on primitive values.
+ *
+ * The test is the analytic one used by {@link java.awt.geom.Arc2D} for PIE
+ * arcs, carried out on exactly the same values, so the two always agree; the
+ * values that depend only on the sector (its corner points, and which axis
+ * directions it spans) are worked out once, rather than for every rectangle.
+ */
+public class PieSlice implements PrimitiveShape {
+	/** The minimum x-value of the bounding square of the circle. */
+	private double x;
+	/** The minimum y-value of the bounding square of the circle. */
+	private double y;
+	/** The width of the bounding square of the circle. */
+	private double w;
+	/** The maximum x-value of the bounding square of the circle. */
+	private double maxX;
+	/** The maximum y-value of the bounding square of the circle. */
+	private double maxY;
+	/** The start angle of the sector, in degrees. */
+	private double start;
+	/** The angular extent of the sector, in degrees. */
+	private double extent;
+
+	/** The x-coordinate of the centre. */
+	private double centreX;
+	/** The y-coordinate of the centre. */
+	private double centreY;
+	/** The x-coordinate of the start point on the circle. */
+	private double startX;
+	/** The y-coordinate of the start point on the circle. */
+	private double startY;
+	/** The x-coordinate of the end point on the circle. */
+	private double endX;
+	/** The y-coordinate of the end point on the circle. */
+	private double endY;
+	/** Whether the sector spans each of the angles 0, 90, 180 and 270. */
+	private boolean spans0, spans90, spans180, spans270;
+
+	/**
+	 * Constructs the sector swept in turning from one heading to another.
+	 *
+	 * @param centreX
+	 *            the x-coordinate of the agent.
+	 * @param centreY
+	 *            the y-coordinate of the agent.
+	 * @param startHeading
+	 *            the initial heading.
+	 * @param endHeading
+	 *            the final heading.
+	 * @param armLength
+	 *            the camera arm length.
+	 * @param reverse
+	 *            true iff the turn is in the reverse (longer) direction.
+	 */
+	public PieSlice(double centreX, double centreY, double startHeading,
+			double endHeading, double armLength, boolean reverse) {
+		set(centreX, centreY, startHeading, endHeading, armLength, reverse);
+	}
+
+	/**
+	 * Makes this the sector swept in turning from one heading to another, so
+	 * that the same object can be reused for many tests.
+	 *
+	 * @param centreX
+	 *            the x-coordinate of the agent.
+	 * @param centreY
+	 *            the y-coordinate of the agent.
+	 * @param startHeading
+	 *            the initial heading.
+	 * @param endHeading
+	 *            the final heading.
+	 * @param armLength
+	 *            the camera arm length.
+	 * @param reverse
+	 *            true iff the turn is in the reverse (longer) direction.
+	 */
+	public void set(double centreX, double centreY, double startHeading,
+			double endHeading, double armLength, boolean reverse) {
+		double startDeg = -Math.toDegrees(startHeading - Math.PI / 2);
+		double extentDeg = -Math.toDegrees(GeomTools.normaliseAngle(endHeading
+				- startHeading));
+		if (reverse) {
+			if (extentDeg <= 0) {
+				extentDeg += 360;
+			} else {
+				extentDeg -= 360;
+			}
+		}
+		this.x = centreX - armLength;
+		this.y = centreY - armLength;
+		this.w = armLength * 2.0;
+		this.maxX = x + w;
+		this.maxY = y + w;
+		this.start = startDeg;
+		this.extent = extentDeg;
+
+		this.centreX = x + w / 2.0;
+		this.centreY = y + w / 2.0;
+		double angle = Math.toRadians(-start);
+		this.startX = x + (Math.cos(angle) * 0.5 + 0.5) * w;
+		this.startY = y + (Math.sin(angle) * 0.5 + 0.5) * w;
+		angle = Math.toRadians(-start - extent);
+		this.endX = x + (Math.cos(angle) * 0.5 + 0.5) * w;
+		this.endY = y + (Math.sin(angle) * 0.5 + 0.5) * w;
+		this.spans0 = containsAngle(0);
+		this.spans90 = containsAngle(90);
+		this.spans180 = containsAngle(180);
+		this.spans270 = containsAngle(270);
+	}
+
+	@Override
+	public double getMinX() {
+		return x;
+	}
+
+	@Override
+	public double getMinY() {
+		return y;
+	}
+
+	@Override
+	public double getMaxX() {
+		return maxX;
+	}
+
+	@Override
+	public double getMaxY() {
+		return maxY;
+	}
+
+	@Override
+	public boolean intersects(double rx, double ry, double rw, double rh) {
+		if (rw <= 0 || rh <= 0 || w <= 0 || extent == 0) {
+			return false;
+		}
+		double rMaxX = rx + rw;
+		double rMaxY = ry + rh;
+		if (rx >= maxX || ry >= maxY || rMaxX <= x || rMaxY <= y) {
+			return false;
+		}
+
+		// Rectangles crossing the sector beyond its corner points must cross
+		// one of the axes through the centre.
+		if (centreY >= ry && centreY <= rMaxY) {
+			if ((startX < rMaxX && endX < rMaxX && centreX < rMaxX
+					&& maxX > rx && spans0)
+					|| (startX > rx && endX > rx && centreX > rx
+							&& x < rMaxX && spans180)) {
+				return true;
+			}
+		}
+		if (centreX >= rx && centreX <= rMaxX) {
+			if ((startY > ry && endY > ry && centreY > ry && y < rMaxY
+					&& spans90)
+					|| (startY < rMaxY && endY < rMaxY && centreY < rMaxY
+							&& maxY > ry && spans270)) {
+				return true;
+			}
+		}
+
+		// Otherwise, they must cross one of the straight edges, or have a
+		// corner within the sector.
+		if (LineSegment.intersects(rx, ry, rw, rh, centreX, centreY, startX,
+				startY)
+				|| LineSegment.intersects(rx, ry, rw, rh, centreX, centreY,
+						endX, endY)) {
+			return true;
+		}
+		return contains(rx, ry) || contains(rMaxX, ry) || contains(rx, rMaxY)
+				|| contains(rMaxX, rMaxY);
+	}
+
+	/**
+	 * Returns true iff the given point lies within the sector.
+	 */
+	private boolean contains(double px, double py) {
+		double normX = (px - x) / w - 0.5;
+		double normY = (py - y) / w - 0.5;
+		if (normX * normX + normY * normY >= 0.25) {
+			return false;
+		}
+		if (Math.abs(extent) >= 360.0) {
+			return true;
+		}
+		return containsAngle(-Math.toDegrees(Math.atan2(normY, normX)));
+	}
+
+	/**
+	 * Returns true iff the sector spans the given angle, in degrees.
+	 */
+	private boolean containsAngle(double angle) {
+		double angExt = extent;
+		boolean backwards = (angExt < 0.0);
+		if (backwards) {
+			angExt = -angExt;
+		}
+		if (angExt >= 360.0) {
+			return true;
+		}
+		angle = normaliseDegrees(angle) - normaliseDegrees(start);
+		if (backwards) {
+			angle = -angle;
+		}
+		if (angle < 0.0) {
+			angle += 360.0;
+		}
+		return (angle >= 0.0) && (angle < angExt);
+	}
+
+	/**
+	 * Normalises an angle in degrees to the range (-180, 180].
+	 */
+	private static double normaliseDegrees(double angle) {
+		if (angle > 180.0) {
+			if (angle <= (180.0 + 360.0)) {
+				angle = angle - 360.0;
+			} else {
+				angle = Math.IEEEremainder(angle, 360.0);
+				if (angle == -180.0) {
+					angle = 180.0;
+				}
+			}
+		} else if (angle <= -180.0) {
+			if (angle > (-180.0 - 360.0)) {
+				angle = angle + 360.0;
+			} else {
+				angle = Math.IEEEremainder(angle, 360.0);
+				if (angle == -180.0) {
+					angle = 180.0;
+				}
+			}
+		}
+		return angle;
+	}
+}
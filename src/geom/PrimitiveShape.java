@@ -0,0 +1,52 @@
+package geom;
+
+/**
+ * A shape that can be tested against axis-aligned rectangles without
+ * allocating, for use with
+ * {@link ObstacleIndex#isCollisionFree(PrimitiveShape)}.
+ */
+public interface PrimitiveShape {
+	/**
+	 * Returns the minimum x-value of the bounds of the shape.
+	 *
+	 * @return the minimum x-value of the bounds of the shape.
+	 */
+	public double getMinX();
+
+	/**
+	 * Returns the minimum y-value of the bounds of the shape.
+	 *
+	 * @return the minimum y-value of the bounds of the shape.
+	 */
+	public double getMinY();
+
+	/**
+	 * Returns the maximum x-value of the bounds of the shape.
+	 *
+	 * @return the maximum x-value of the bounds of the shape.
+	 */
+	public double getMaxX();
+
+	/**
+	 * Returns the maximum y-value of the bounds of the shape.
+	 *
+	 * @return the maximum y-value of the bounds of the shape.
+	 */
+	public double getMaxY();
+
+	/**
+	 * Returns true iff the shape intersects the given rectangle, in the sense
+	 * of {@link java.awt.Shape#intersects(double, double, double, double)}.
+	 *
+	 * @param x
+	 *            the minimum x-value of the rectangle.
+	 * @param y
+	 *            the minimum y-value of the rectangle.
+	 * @param w
+	 *            the width of the rectangle.
+	 * @param h
+	 *            the height of the rectangle.
+	 * @return true iff the shape intersects the rectangle.
+	 */
+	public boolean intersects(double x, double y, double w, double h);
+}
@@ -0,0 +1,276 @@
+package geom;
+
+import game.AgentState;
+
+import java.awt.geom.Point2D;
+
+/**
+ * Encodes agent states, quantised to a square grid over the workspace, a
+ * lattice of evenly spaced headings and a lattice of camera arm lengths, as
+ * single long values.
+ *
+ * Each code packs, from the lowest bits up, the column and row of the grid cell
+ * containing the position (numbered as by {@link TargetGrid#getCell}), the
+ * index of the nearest heading, whether the agent has a camera, and the index
+ * of the nearest arm length. States in the same cell with the same rounded
+ * heading and arm length share a code, so codes can be used as keys for caches
+ * and visited sets. Decoding gives the centre of the cell, as given by
+ * {@link TargetGrid#getCentre}, and the lattice heading and arm length; for a
+ * target at the centre of a cell of a grid of the same size, with one of the
+ * eight grid headings, this is exactly the state that was encoded.
+ */
+public class StateEncoder {
+	/** The number of bits used for each of the column and the row. */
+	private static final int CELL_BITS = 21;
+	/** The number of bits used for the heading index. */
+	private static final int HEADING_BITS = 12;
+	/** The number of bits used for the arm length index. */
+	private static final int ARM_BITS = 9;
+
+	/** The position of the row bits. */
+	private static final int ROW_SHIFT = CELL_BITS;
+	/** The position of the heading bits. */
+	private static final int HEADING_SHIFT = ROW_SHIFT + CELL_BITS;
+	/** The position of the camera bit. */
+	private static final int CAMERA_SHIFT = HEADING_SHIFT + HEADING_BITS;
+	/** The position of the arm length bits. */
+	private static final int ARM_SHIFT = CAMERA_SHIFT + 1;
+
+	/** The largest grid size that can be encoded. */
+	public static final int MAX_GRID_SIZE = 1 << CELL_BITS;
+	/** The largest number of headings that can be encoded. */
+	public static final int MAX_NUM_HEADINGS = 1 << HEADING_BITS;
+	/** The largest number of arm lengths that can be encoded. */
+	public static final int MAX_NUM_ARM_LENGTHS = 1 << ARM_BITS;
+
+	/** The number of rows and columns in the grid. */
+	private final int gridSize;
+	/** The number of headings in the lattice. */
+	private final int numHeadings;
+	/** The number of arm lengths in the lattice. */
+	private final int numArmLengths;
+	/** The spacing of the arm length lattice. */
+	private final double armStep;
+
+	/**
+	 * Constructs an encoder for states on a grid of the given size with the
+	 * eight grid headings, and no camera arm.
+	 *
+	 * @param gridSize
+	 *            the number of rows and columns in the grid.
+	 */
+	public StateEncoder(int gridSize) {
+		this(gridSize, 8, 1, 0);
+	}
+
+	/**
+	 * Constructs an encoder for states on a grid of the given size, with the
+	 * given numbers of headings and camera arm lengths.
+	 *
+	 * @param gridSize
+	 *            the number of rows and columns in the grid.
+	 * @param numHeadings
+	 *            the number of evenly spaced headings.
+	 * @param numArmLengths
+	 *            the number of evenly spaced arm lengths, from 0 to the
+	 *            maximum arm length inclusive.
+	 * @param maxArmLength
+	 *            the maximum arm length.
+	 */
+	public StateEncoder(int gridSize, int numHeadings, int numArmLengths,
+			double maxArmLength) {
+		if (gridSize < 1 || gridSize > MAX_GRID_SIZE) {
+			throw new IllegalArgumentException("Invalid grid size: "
+					+ gridSize);
+		}
+		if (numHeadings < 1 || numHeadings > MAX_NUM_HEADINGS) {
+			throw new IllegalArgumentException("Invalid number of headings: "
+					+ numHeadings);
+		}
+		if (numArmLengths < 1 || numArmLengths > MAX_NUM_ARM_LENGTHS) {
+			throw new IllegalArgumentException(
+					"Invalid number of arm lengths: " + numArmLengths);
+		}
+		this.gridSize = gridSize;
+		this.numHeadings = numHeadings;
+		this.numArmLengths = numArmLengths;
+		this.armStep = (numArmLengths > 1) ? maxArmLength
+				/ (numArmLengths - 1) : 0;
+	}
+
+	/**
+	 * Returns the code of the given state.
+	 *
+	 * @param state
+	 *            the state to encode.
+	 * @return the code of the state.
+	 */
+	public long encode(AgentState state) {
+		Point2D pos = state.getPosition();
+		return encode(pos.getX(), pos.getY(), state.getHeading(),
+				state.hasCamera(), state.getCameraArmLength());
+	}
+
+	/**
+	 * Returns the code of the given state.
+	 *
+	 * @param x
+	 *            the x-coordinate of the agent.
+	 * @param y
+	 *            the y-coordinate of the agent.
+	 * @param heading
+	 *            the heading of the agent.
+	 * @param hasCamera
+	 *            whether the agent has a camera.
+	 * @param armLength
+	 *            the camera arm length of the agent.
+	 * @return the code of the state.
+	 */
+	public long encode(double x, double y, double heading, boolean hasCamera,
+			double armLength) {
+		long col = clamp((int) (x * gridSize), gridSize - 1);
+		long row = clamp((int) ((1 - y) * gridSize), gridSize - 1);
+		long headingIndex = Math.round(heading * numHeadings / (2 * Math.PI))
+				% numHeadings;
+		if (headingIndex < 0) {
+			headingIndex += numHeadings;
+		}
+		long code = col | (row << ROW_SHIFT) | (headingIndex << HEADING_SHIFT);
+		if (hasCamera) {
+			long armIndex = (armStep > 0) ? clamp(
+					(int) Math.round(armLength / armStep), numArmLengths - 1)
+					: 0;
+			code |= (1L << CAMERA_SHIFT) | (armIndex << ARM_SHIFT);
+		}
+		return code;
+	}
+
+	/**
+	 * Returns the given value, clamped to the range [0, max].
+	 *
+	 * @param value
+	 *            the value.
+	 * @param max
+	 *            the maximum value.
+	 * @return the clamped value.
+	 */
+	private static int clamp(int value, int max) {
+		return Math.max(0, Math.min(max, value));
+	}
+
+	/**
+	 * Returns the grid column of the given code.
+	 *
+	 * @param code
+	 *            the code.
+	 * @return the grid column.
+	 */
+	public static int getCol(long code) {
+		return (int) (code & (MAX_GRID_SIZE - 1));
+	}
+
+	/**
+	 * Returns the grid row of the given code.
+	 *
+	 * @param code
+	 *            the code.
+	 * @return the grid row.
+	 */
+	public static int getRow(long code) {
+		return (int) ((code >>> ROW_SHIFT) & (MAX_GRID_SIZE - 1));
+	}
+
+	/**
+	 * Returns the heading index of the given code, from 0 (heading 0)
+	 * anticlockwise.
+	 *
+	 * @param code
+	 *            the code.
+	 * @return the heading index.
+	 */
+	public static int getHeadingIndex(long code) {
+		return (int) ((code >>> HEADING_SHIFT) & (MAX_NUM_HEADINGS - 1));
+	}
+
+	/**
+	 * Returns whether the given code is of a state with a camera.
+	 *
+	 * @param code
+	 *            the code.
+	 * @return whether the agent has a camera.
+	 */
+	public static boolean hasCamera(long code) {
+		return ((code >>> CAMERA_SHIFT) & 1) != 0;
+	}
+
+	/**
+	 * Returns the arm length index of the given code.
+	 *
+	 * @param code
+	 *            the code.
+	 * @return the arm length index.
+	 */
+	public static int getArmIndex(long code) {
+		return (int) ((code >>> ARM_SHIFT) & (MAX_NUM_ARM_LENGTHS - 1));
+	}
+
+	/**
+	 * Returns the x-coordinate of the centre of the cell of the given code.
+	 *
+	 * @param code
+	 *            the code.
+	 * @return the x-coordinate of the decoded position.
+	 */
+	public double getX(long code) {
+		return 0 + (getCol(code) + 0.5) / gridSize;
+	}
+
+	/**
+	 * Returns the y-coordinate of the centre of the cell of the given code.
+	 *
+	 * @param code
+	 *            the code.
+	 * @return the y-coordinate of the decoded position.
+	 */
+	public double getY(long code) {
+		return 1 - (getRow(code) + 0.5) / gridSize;
+	}
+
+	/**
+	 * Returns the heading of the given code, in the range (-pi, pi].
+	 *
+	 * @param code
+	 *            the code.
+	 * @return the decoded heading.
+	 */
+	public double getHeading(long code) {
+		int index = getHeadingIndex(code);
+		if (2 * index > numHeadings) {
+			index -= numHeadings;
+		}
+		return index * 2 * Math.PI / numHeadings;
+	}
+
+	/**
+	 * Returns the camera arm length of the given code.
+	 *
+	 * @param code
+	 *            the code.
+	 * @return the decoded arm length.
+	 */
+	public double getArmLength(long code) {
+		return getArmIndex(code) * armStep;
+	}
+
+	/**
+	 * Returns the state of the given code.
+	 *
+	 * @param code
+	 *            the code.
+	 * @return the decoded state.
+	 */
+	public AgentState decode(long code) {
+		return new AgentState(new Point2D.Double(getX(code), getY(code)),
+				getHeading(code), hasCamera(code), getArmLength(code));
+	}
+}
@@ -11,8 +11,16 @@ import java.awt.geom.Point2D;
  * 
  */
 public class TargetGrid implements ActionEncoder {
+	/** The largest grid for which cells are interned. */
+	private static final int MAX_INTERNED_GRID_SIZE = 256;
+
 	/** The number of rows and columns. */
 	private int gridSize;
+	/**
+	 * The interned cells, including a ring of cells just outside the grid, by
+	 * (row + 1) * (gridSize + 2) + (col + 1); null if the grid is too large.
+	 */
+	private GridCell[] cells = null;
 
 	/**
 	 * Constructs a square grid with the given number of rows and columns.
@@ -22,6 +30,15 @@ public class TargetGrid implements ActionEncoder {
 	 */
 	public TargetGrid(int gridSize) {
 		this.gridSize = gridSize;
+		if (gridSize <= MAX_INTERNED_GRID_SIZE) {
+			int width = gridSize + 2;
+			cells = new GridCell[width * width];
+			for (int row = -1; row <= gridSize; row++) {
+				for (int col = -1; col <= gridSize; col++) {
+					cells[(row + 1) * width + col + 1] = new GridCell(row, col);
+				}
+			}
+		}
 	}
 
 	/**
@@ -33,6 +50,24 @@ public class TargetGrid implements ActionEncoder {
 		return gridSize;
 	}
 
+	/**
+	 * Returns the cell with the given row and column indices. Cells within the
+	 * grid, or just outside it, are shared rather than allocated.
+	 * 
+	 * @param row
+	 *            the row index of the cell.
+	 * @param col
+	 *            the column index of the cell.
+	 * @return the cell.
+	 */
+	public GridCell getCell(int row, int col) {
+		if (cells == null || row < -1 || row > gridSize || col < -1
+				|| col > gridSize) {
+			return new GridCell(row, col);
+		}
+		return cells[(row + 1) * (gridSize + 2) + col + 1];
+	}
+
 	/**
 	 * Returns the action code corresponding to a movement between the given
 	 * cells.
@@ -45,8 +80,29 @@ public class TargetGrid implements ActionEncoder {
 	 *         cell.
 	 */
 	public int encodeFromIndices(GridCell start, GridCell end) {
-		int rowDelta = end.getRow() - start.getRow();
-		int colDelta = end.getCol() - start.getCol();
+		return encodeFromIndices(start.getRow(), start.getCol(), end.getRow(),
+				end.getCol());
+	}
+
+	/**
+	 * Returns the action code corresponding to a movement between the cells
+	 * with the given indices.
+	 * 
+	 * @param startRow
+	 *            the row index of the start cell.
+	 * @param startCol
+	 *            the column index of the start cell.
+	 * @param endRow
+	 *            the row index of the end cell.
+	 * @param endCol
+	 *            the column index of the end cell.
+	 * @return the action code for a movement from the start cell to the end
+	 *         cell.
+	 */
+	public int encodeFromIndices(int startRow, int startCol, int endRow,
+			int endCol) {
+		int rowDelta = endRow - startRow;
+		int colDelta = endCol - startCol;
 		return rowDelta * 3 + colDelta + 4;
 	}
 
@@ -61,8 +117,36 @@ public class TargetGrid implements ActionEncoder {
 	 * @return the end cell after taking the given action from the start cell.
 	 */
 	public GridCell decodeFromIndices(GridCell start, int actionCode) {
-		return new GridCell(start.getRow() + actionCode / 3 - 1, start.getCol()
-				+ actionCode % 3 - 1);
+		return getCell(decodeRow(start.getRow(), actionCode),
+				decodeCol(start.getCol(), actionCode));
+	}
+
+	/**
+	 * Returns the row index of the end cell resulting from taking the action
+	 * with the given action code from a cell in the given row.
+	 * 
+	 * @param startRow
+	 *            the row index of the start cell.
+	 * @param actionCode
+	 *            the action to take.
+	 * @return the row index of the end cell.
+	 */
+	public int decodeRow(int startRow, int actionCode) {
+		return startRow + actionCode / 3 - 1;
+	}
+
+	/**
+	 * Returns the column index of the end cell resulting from taking the
+	 * action with the given action code from a cell in the given column.
+	 * 
+	 * @param startCol
+	 *            the column index of the start cell.
+	 * @param actionCode
+	 *            the action to take.
+	 * @return the column index of the end cell.
+	 */
+	public int decodeCol(int startCol, int actionCode) {
+		return startCol + actionCode % 3 - 1;
 	}
 
 	/**
@@ -141,9 +225,55 @@ public class TargetGrid implements ActionEncoder {
 	 * @return the grid cell containing the given point.
 	 */
 	public GridCell getCell(Point2D pos) {
-		int row = (int) ((1 - pos.getY()) * gridSize);
-		int col = (int) (pos.getX() * gridSize);
-		return new GridCell(row, col);
+		return getCell(getRow(pos.getY()), getCol(pos.getX()));
+	}
+
+	/**
+	 * Returns the row index of the cells containing the given y-value.
+	 * 
+	 * @param y
+	 *            the y-value.
+	 * @return the row index of the cells containing the y-value.
+	 */
+	public int getRow(double y) {
+		return (int) ((1 - y) * gridSize);
+	}
+
+	/**
+	 * Returns the column index of the cells containing the given x-value.
+	 * 
+	 * @param x
+	 *            the x-value.
+	 * @return the column index of the cells containing the x-value.
+	 */
+	public int getCol(double x) {
+		return (int) (x * gridSize);
+	}
+
+	/**
+	 * Returns the row index of the cells containing the given y-value; unlike
+	 * {@link #getRow(double)}, a y-value above the top of the grid gives a
+	 * negative row rather than being truncated into row 0.
+	 * 
+	 * @param y
+	 *            the y-value.
+	 * @return the row index of the cells containing the y-value.
+	 */
+	public int getExactRow(double y) {
+		return (int) Math.floor((1 - y) * gridSize);
+	}
+
+	/**
+	 * Returns the column index of the cells containing the given x-value;
+	 * unlike {@link #getCol(double)}, an x-value left of the grid gives a
+	 * negative column rather than being truncated into column 0.
+	 * 
+	 * @param x
+	 *            the x-value.
+	 * @return the column index of the cells containing the x-value.
+	 */
+	public int getExactCol(double x) {
+		return (int) Math.floor(x * gridSize);
 	}
 
 	/**
@@ -154,8 +284,31 @@ public class TargetGrid implements ActionEncoder {
 	 * @return the centre point of the given cell.
 	 */
 	public Point2D getCentre(GridCell cell) {
-		return new Point2D.Double(0 + (cell.getCol() + 0.5) / gridSize, 1
-				- (cell.getRow() + 0.5) / gridSize);
+		return new Point2D.Double(getCentreX(cell.getCol()),
+				getCentreY(cell.getRow()));
+	}
+
+	/**
+	 * Returns the x-coordinate of the centres of the cells in the given
+	 * column.
+	 * 
+	 * @param col
+	 *            the column index.
+	 * @return the x-coordinate of the centres of the cells in the column.
+	 */
+	public double getCentreX(int col) {
+		return 0 + (col + 0.5) / gridSize;
+	}
+
+	/**
+	 * Returns the y-coordinate of the centres of the cells in the given row.
+	 * 
+	 * @param row
+	 *            the row index.
+	 * @return the y-coordinate of the centres of the cells in the row.
+	 */
+	public double getCentreY(int row) {
+		return 1 - (row + 0.5) / gridSize;
 	}
 
 	/**
@@ -166,8 +319,28 @@ public class TargetGrid implements ActionEncoder {
 	 * @return the action code corresponding to the given action.
 	 */
 	public int encodeAction(Action a) {
-		GridCell startCell = getCell(a.getStartState().getPosition());
-		GridCell endCell = getCell(a.getResultingState().getPosition());
-		return encodeFromIndices(startCell, endCell);
+		Point2D startPos = a.getStartState().getPosition();
+		Point2D endPos = a.getResultingState().getPosition();
+		return encodeFromIndices(getRow(startPos.getY()),
+				getCol(startPos.getX()), getRow(endPos.getY()),
+				getCol(endPos.getX()));
+	}
+
+	/**
+	 * Returns the action code corresponding to the given action, as for
+	 * {@link #encodeAction(Action)}, except that an end position beyond the
+	 * top or left edge of the grid keeps its own cell rather than being
+	 * rounded into the grid.
+	 * 
+	 * @param a
+	 *            the action to encode.
+	 * @return the exact action code corresponding to the given action.
+	 */
+	public int encodeMove(Action a) {
+		Point2D startPos = a.getStartState().getPosition();
+		Point2D endPos = a.getResultingState().getPosition();
+		return encodeFromIndices(getRow(startPos.getY()),
+				getCol(startPos.getX()), getExactRow(endPos.getY()),
+				getExactCol(endPos.getX()));
 	}
 }
\ No newline at end of file
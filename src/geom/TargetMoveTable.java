@@ -0,0 +1,144 @@
+package geom;
+
+import game.AgentState;
+
+import java.awt.geom.Point2D;
+
+/**
+ * A precomputed table of which moves a target can make from each cell of its
+ * grid.
+ *
+ * A target without a camera moves in a straight line from the centre of one
+ * cell of a TargetGrid to the centre of one of its neighbours, so whether a
+ * move is blocked depends only on the start cell and the action code. The
+ * table records this for every cell and each of the nine action codes, using
+ * {@link GeomTools#canMove(Point2D, Point2D, boolean, double, ObstacleIndex)}
+ * with the exact cell centres, so a lookup always agrees with that test. Moves
+ * that don't start and end exactly on cell centres aren't in the table.
+ */
+public class TargetMoveTable {
+	/** The result of a query when the move isn't in the table. */
+	public static final int UNKNOWN = -1;
+	/** The result of a query when the move is blocked. */
+	public static final int INVALID = 0;
+	/** The result of a query when the move is possible. */
+	public static final int VALID = 1;
+
+	/** The number of action codes. */
+	private static final int NUM_ACTIONS = 9;
+	/** The action code for standing still. */
+	private static final int STAY_CODE = 4;
+
+	/** The grid the targets move on. */
+	private final TargetGrid grid;
+	/** The number of rows and columns of the target grid. */
+	private final int gridSize;
+	/** The valid moves from each cell, as bits indexed by action code. */
+	private final short[] validMoves;
+
+	/**
+	 * Builds the table for the given grid and obstacles.
+	 *
+	 * @param grid
+	 *            the grid the targets move on.
+	 * @param obstacles
+	 *            the obstacles, including the workspace boundaries.
+	 */
+	public TargetMoveTable(TargetGrid grid, ObstacleIndex obstacles) {
+		this.grid = grid;
+		gridSize = grid.getGridSize();
+		validMoves = new short[gridSize * gridSize];
+		for (int row = 0; row < gridSize; row++) {
+			for (int col = 0; col < gridSize; col++) {
+				GridCell start = grid.getCell(row, col);
+				Point2D startPos = grid.getCentre(start);
+				int moves = 1 << STAY_CODE;
+				for (int code = 0; code < NUM_ACTIONS; code++) {
+					if (code == STAY_CODE) {
+						continue;
+					}
+					Point2D endPos = grid.getCentre(grid.decodeFromIndices(
+							start, code));
+					if (GeomTools.canMove(startPos, endPos, false, 0,
+							obstacles)) {
+						moves |= 1 << code;
+					}
+				}
+				validMoves[row * gridSize + col] = (short) moves;
+			}
+		}
+	}
+
+	/**
+	 * Returns true iff a target can take the given action from the centre of
+	 * the given cell.
+	 *
+	 * @param row
+	 *            the row of the cell.
+	 * @param col
+	 *            the column of the cell.
+	 * @param actionCode
+	 *            the action code, from 0 to 8.
+	 * @return true iff the move is possible.
+	 */
+	public boolean canMove(int row, int col, int actionCode) {
+		return (validMoves[row * gridSize + col] & (1 << actionCode)) != 0;
+	}
+
+	/**
+	 * Returns whether a target without a camera can move in a straight line
+	 * between the given points: {@link #VALID}, {@link #INVALID} or
+	 * {@link #UNKNOWN} if they aren't the exact centres of the same or
+	 * neighbouring cells.
+	 *
+	 * @param x
+	 *            the x-coordinate of the start position.
+	 * @param y
+	 *            the y-coordinate of the start position.
+	 * @param endX
+	 *            the x-coordinate of the end position.
+	 * @param endY
+	 *            the y-coordinate of the end position.
+	 * @return whether the move is possible, or UNKNOWN if the table can't
+	 *         decide.
+	 */
+	public int canMove(double x, double y, double endX, double endY) {
+		int row = grid.getExactRow(y);
+		int col = grid.getExactCol(x);
+		if (row < 0 || row >= gridSize || col < 0 || col >= gridSize
+				|| x != grid.getCentreX(col) || y != grid.getCentreY(row)) {
+			return UNKNOWN;
+		}
+		int endRow = grid.getExactRow(endY);
+		int endCol = grid.getExactCol(endX);
+		if (Math.abs(endRow - row) > 1 || Math.abs(endCol - col) > 1
+				|| endX != grid.getCentreX(endCol)
+				|| endY != grid.getCentreY(endRow)) {
+			return UNKNOWN;
+		}
+		int actionCode = grid.encodeFromIndices(row, col, endRow, endCol);
+		return canMove(row, col, actionCode) ? VALID : INVALID;
+	}
+
+	/**
+	 * Returns whether a target in the given state can move in a straight line
+	 * to the given position: {@link #VALID}, {@link #INVALID} or
+	 * {@link #UNKNOWN} if the target has a camera or the move isn't between
+	 * the exact centres of the same or neighbouring cells.
+	 *
+	 * @param startState
+	 *            the state of the target.
+	 * @param endPos
+	 *            the end position.
+	 * @return whether the move is possible, or UNKNOWN if the table can't
+	 *         decide.
+	 */
+	public int canMove(AgentState startState, Point2D endPos) {
+		if (startState.hasCamera()) {
+			return UNKNOWN;
+		}
+		Point2D startPos = startState.getPosition();
+		return canMove(startPos.getX(), startPos.getY(), endPos.getX(),
+				endPos.getY());
+	}
+}
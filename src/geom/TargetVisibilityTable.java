@@ -0,0 +1,424 @@
+package geom;
+
+import game.AgentState;
+import game.RectRegion;
+import game.SensingParameters;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A precomputed table of what a target can see from each cell of its grid.
+ *
+ * Targets without a camera sit on the centres of the cells of a TargetGrid,
+ * facing one of eight headings, and all share the same sensing parameters. For
+ * each cell and heading, the table divides the square around the cell centre
+ * that is within sensing range into small blocks, and records for each block
+ * whether every point in it is visible, no point in it is visible, or neither.
+ * The first two cases are decided with a safety margin, so that they agree
+ * exactly with
+ * {@link GeomTools#canSee(AgentState, Point2D, SensingParameters, ObstacleIndex, double)}
+ * ; in the last case, and for states that aren't on the grid, the table
+ * answers {@link #UNKNOWN} and the exact test must be used instead.
+ */
+public class TargetVisibilityTable {
+	/** The result of a query when the table can't decide. */
+	public static final int UNKNOWN = -1;
+	/** The result of a query when the point is not visible. */
+	public static final int NOT_VISIBLE = 0;
+	/** The result of a query when the point is visible. */
+	public static final int VISIBLE = 1;
+
+	/** The number of blocks along the sensing range. */
+	private static final int BLOCKS_PER_RANGE = 16;
+	/** The number of target headings. */
+	private static final int NUM_HEADINGS = 8;
+	/** The margin by which the table's decisions must hold. */
+	private static final double MARGIN = 1e-7;
+	/** The tolerance for matching a state to a cell centre and heading. */
+	private static final double STATE_TOLERANCE = 1e-9;
+	/** The default limit on the size of a table, in bytes. */
+	public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+	/** The grid the targets move on. */
+	private final TargetGrid grid;
+	/** The number of rows and columns of the target grid. */
+	private final int gridSize;
+	/** The maximum sight distance, including the allowed error. */
+	private final double maxRange;
+	/** The width of each block. */
+	private final double blockWidth;
+	/** The number of blocks on each side of the cell centre. */
+	private final int halfWidth;
+	/** The number of blocks along each side of the table for one cell. */
+	private final int windowSize;
+	/** The number of 64-bit words used by each cell. */
+	private final int wordsPerCell;
+	/** The blocks for which the table has an answer. */
+	private final long[] decided;
+	/** The blocks that are entirely visible. */
+	private final long[] visible;
+
+	/**
+	 * Returns the size of the table for a grid of the given size, in bytes.
+	 *
+	 * @param gridSize
+	 *            the number of rows and columns of the target grid.
+	 * @return the size of the table, in bytes.
+	 */
+	public static long estimateBytes(int gridSize) {
+		long windowSize = 2 * (BLOCKS_PER_RANGE + 2);
+		long wordsPerCell = (NUM_HEADINGS * windowSize * windowSize + 63) / 64;
+		return 2 * 8 * wordsPerCell * gridSize * gridSize;
+	}
+
+	/**
+	 * Builds the table for the given grid, sensing parameters and obstacles,
+	 * using all available processors.
+	 *
+	 * @param grid
+	 *            the grid the targets move on.
+	 * @param sp
+	 *            the sensing parameters of the targets, which mustn't have a
+	 *            camera.
+	 * @param obstacles
+	 *            the view-obstructing obstacles.
+	 * @param maxDistanceError
+	 *            the maximum allowed error in distance.
+	 */
+	public TargetVisibilityTable(TargetGrid grid, SensingParameters sp,
+			List<RectRegion> obstacles, double maxDistanceError) {
+		this.grid = grid;
+		gridSize = grid.getGridSize();
+		maxRange = sp.getRange() + maxDistanceError;
+		blockWidth = maxRange / BLOCKS_PER_RANGE;
+		halfWidth = BLOCKS_PER_RANGE + 2;
+		windowSize = 2 * halfWidth;
+		wordsPerCell = (NUM_HEADINGS * windowSize * windowSize + 63) / 64;
+		decided = new long[wordsPerCell * gridSize * gridSize];
+		visible = new long[wordsPerCell * gridSize * gridSize];
+
+		// Visibility is only decided for blocks that keep clear of the
+		// obstacles by the margin.
+		List<RectRegion> grownObstacles = new ArrayList<RectRegion>();
+		for (RectRegion obs : obstacles) {
+			Rectangle2D rect = obs.getRect();
+			grownObstacles.add(new RectRegion(rect.getX() - MARGIN, rect
+					.getY() - MARGIN, rect.getWidth() + 2 * MARGIN, rect
+					.getHeight() + 2 * MARGIN));
+		}
+		ObstacleIndex grownIndex = new ObstacleIndex(grownObstacles);
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			pool.invoke(new BuildTask(grownIndex, sp, maxDistanceError, 0,
+					gridSize * gridSize));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Returns whether a target in the given state can see the given point:
+	 * {@link #VISIBLE}, {@link #NOT_VISIBLE} or {@link #UNKNOWN}.
+	 *
+	 * @param targetState
+	 *            the state of the target.
+	 * @param point
+	 *            the point.
+	 * @return whether the target can see the given point, or UNKNOWN if the
+	 *         table can't decide.
+	 */
+	public int canSee(AgentState targetState, Point2D point) {
+		if (targetState.hasCamera()) {
+			return UNKNOWN;
+		}
+		Point2D pos = targetState.getPosition();
+		int row = grid.getRow(pos.getY());
+		int col = grid.getCol(pos.getX());
+		if (row < 0 || row >= gridSize || col < 0 || col >= gridSize) {
+			return UNKNOWN;
+		}
+		double cx = grid.getCentreX(col);
+		double cy = grid.getCentreY(row);
+		if (Math.abs(pos.getX() - cx) > STATE_TOLERANCE
+				|| Math.abs(pos.getY() - cy) > STATE_TOLERANCE) {
+			return UNKNOWN;
+		}
+		double eighths = targetState.getHeading() * 4 / Math.PI;
+		long nearest = Math.round(eighths);
+		if (Math.abs(eighths - nearest) > STATE_TOLERANCE) {
+			return UNKNOWN;
+		}
+		int headingNo = (int) (((nearest % NUM_HEADINGS) + NUM_HEADINGS) % NUM_HEADINGS);
+
+		double dx = point.getX() - cx;
+		double dy = point.getY() - cy;
+		if (dx * dx + dy * dy > (maxRange + MARGIN) * (maxRange + MARGIN)) {
+			return NOT_VISIBLE;
+		}
+		int i = (int) Math.floor(dx / blockWidth) + halfWidth;
+		int j = (int) Math.floor(dy / blockWidth) + halfWidth;
+		if (i < 0 || i >= windowSize || j < 0 || j >= windowSize) {
+			return UNKNOWN;
+		}
+		long bit = (long) wordsPerCell * 64 * (row * gridSize + col)
+				+ (headingNo * windowSize + j) * windowSize + i;
+		int word = (int) (bit >>> 6);
+		long mask = 1L << bit;
+		if ((decided[word] & mask) == 0) {
+			return UNKNOWN;
+		}
+		return (visible[word] & mask) != 0 ? VISIBLE : NOT_VISIBLE;
+	}
+
+	/**
+	 * Fills in the table for a range of cells, splitting the range between
+	 * threads. Each cell occupies whole words of the table, so tasks never
+	 * write to the same word.
+	 */
+	private class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/** The number of cells below which a task isn't split. */
+		private static final int MIN_CELLS_PER_TASK = 16;
+
+		/** The obstacles, grown by the margin. */
+		private ObstacleIndex grownIndex;
+		/** The sensing parameters of the targets. */
+		private SensingParameters sp;
+		/** The maximum allowed error in distance. */
+		private double maxDistanceError;
+		/** The first cell to fill in. */
+		private int start;
+		/** The cell after the last cell to fill in. */
+		private int end;
+
+		public BuildTask(ObstacleIndex grownIndex, SensingParameters sp,
+				double maxDistanceError, int start, int end) {
+			this.grownIndex = grownIndex;
+			this.sp = sp;
+			this.maxDistanceError = maxDistanceError;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > MIN_CELLS_PER_TASK) {
+				int mid = (start + end) >>> 1;
+				invokeAll(new BuildTask(grownIndex, sp, maxDistanceError,
+						start, mid), new BuildTask(grownIndex, sp,
+						maxDistanceError, mid, end));
+				return;
+			}
+			for (int cell = start; cell < end; cell++) {
+				fillCell(cell);
+			}
+		}
+
+		/**
+		 * Fills in the table for a single cell.
+		 *
+		 * @param cell
+		 *            the cell number, row * gridSize + col.
+		 */
+		private void fillCell(int cell) {
+			int row = cell / gridSize;
+			int col = cell % gridSize;
+			double vx = grid.getCentreX(col);
+			double vy = grid.getCentreY(row);
+			double halfAngle = sp.getAngle() / 2;
+			double[] cornersX = new double[4];
+			double[] cornersY = new double[4];
+			Path2D.Double hull = new Path2D.Double();
+			for (int j = 0; j < windowSize; j++) {
+				for (int i = 0; i < windowSize; i++) {
+					double x0 = vx + (i - halfWidth) * blockWidth;
+					double y0 = vy + (j - halfWidth) * blockWidth;
+					double x1 = x0 + blockWidth;
+					double y1 = y0 + blockWidth;
+					cornersX[0] = cornersX[3] = x0 - vx;
+					cornersX[1] = cornersX[2] = x1 - vx;
+					cornersY[0] = cornersY[1] = y0 - vy;
+					cornersY[2] = cornersY[3] = y1 - vy;
+
+					double nearX = Math.max(x0, Math.min(vx, x1)) - vx;
+					double nearY = Math.max(y0, Math.min(vy, y1)) - vy;
+					double minDist = Math.sqrt(nearX * nearX + nearY * nearY);
+					double maxDist = 0;
+					for (int k = 0; k < 4; k++) {
+						maxDist = Math.max(maxDist, Math.sqrt(cornersX[k]
+								* cornersX[k] + cornersY[k] * cornersY[k]));
+					}
+					boolean outOfRange = minDist > maxRange + MARGIN;
+					boolean inRange = maxDist < maxRange - MARGIN;
+					boolean nearViewer = minDist < maxDistanceError + MARGIN;
+					if (outOfRange) {
+						setBlock(cell, i, j, true, false);
+						continue;
+					}
+					if (!inRange && nearViewer) {
+						continue;
+					}
+
+					// Every segment from the viewer to the block lies within
+					// their convex hull.
+					boolean clear = false;
+					if (inRange) {
+						buildHull(vx, vy, x0, y0, x1, y1, hull);
+						clear = grownIndex.isCollisionFree(hull);
+					}
+					for (int h = 0; h < NUM_HEADINGS; h++) {
+						double heading = h * Math.PI / 4;
+						int inCone = classifyCone(heading, halfAngle,
+								cornersX, cornersY);
+						if (inCone < 0 && !nearViewer) {
+							setBlock(cell, i, j, h, true, false);
+						} else if (inCone > 0 && inRange && clear) {
+							setBlock(cell, i, j, h, true, true);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Records the same answer for a block under every heading.
+		 */
+		private void setBlock(int cell, int i, int j, boolean isDecided,
+				boolean isVisible) {
+			for (int h = 0; h < NUM_HEADINGS; h++) {
+				setBlock(cell, i, j, h, isDecided, isVisible);
+			}
+		}
+
+		/**
+		 * Records the answer for a block under a single heading.
+		 */
+		private void setBlock(int cell, int i, int j, int headingNo,
+				boolean isDecided, boolean isVisible) {
+			long bit = (long) wordsPerCell * 64 * cell
+					+ (headingNo * windowSize + j) * windowSize + i;
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			if (isDecided) {
+				decided[word] |= mask;
+			}
+			if (isVisible) {
+				visible[word] |= mask;
+			}
+		}
+	}
+
+	/**
+	 * Sets the given path to the convex hull of a point and a box.
+	 *
+	 * @param vx
+	 *            the x-coordinate of the point.
+	 * @param vy
+	 *            the y-coordinate of the point.
+	 * @param x0
+	 *            the minimum x-value of the box.
+	 * @param y0
+	 *            the minimum y-value of the box.
+	 * @param x1
+	 *            the maximum x-value of the box.
+	 * @param y1
+	 *            the maximum y-value of the box.
+	 * @param hull
+	 *            the path to store the hull in.
+	 */
+	private static void buildHull(double vx, double vy, double x0, double y0,
+			double x1, double y1, Path2D.Double hull) {
+		// Walk the box anticlockwise, replacing the corners hidden behind the
+		// box (as seen from the point) with the point itself.
+		double[] xs = { x0, x1, x1, x0 };
+		double[] ys = { y0, y0, y1, y1 };
+		hull.reset();
+		boolean started = false;
+		for (int k = 0; k < 4; k++) {
+			int prev = (k + 3) % 4;
+			int next = (k + 1) % 4;
+			// A corner is on the hull unless both of its edges face the point.
+			boolean prevFaces = cross(xs[prev], ys[prev], xs[k], ys[k], vx, vy) < 0;
+			boolean nextFaces = cross(xs[k], ys[k], xs[next], ys[next], vx, vy) < 0;
+			if (prevFaces && nextFaces) {
+				continue;
+			}
+			if (!started) {
+				hull.moveTo(xs[k], ys[k]);
+				started = true;
+			} else {
+				hull.lineTo(xs[k], ys[k]);
+			}
+			if (!prevFaces && nextFaces) {
+				hull.lineTo(vx, vy);
+			}
+		}
+		hull.closePath();
+	}
+
+	/**
+	 * Returns the cross product of (b - a) and (c - a).
+	 */
+	private static double cross(double ax, double ay, double bx, double by,
+			double cx, double cy) {
+		return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+	}
+
+	/**
+	 * Classifies a box, given by the displacements of its corners from the
+	 * viewer, against a field of view.
+	 *
+	 * @param heading
+	 *            the heading of the viewer.
+	 * @param halfAngle
+	 *            half of the field of view.
+	 * @param cornersX
+	 *            the x-displacements of the corners.
+	 * @param cornersY
+	 *            the y-displacements of the corners.
+	 * @return 1 if the box is entirely within the field of view, -1 if it is
+	 *         entirely outside it, and 0 otherwise.
+	 */
+	private static int classifyCone(double heading, double halfAngle,
+			double[] cornersX, double[] cornersY) {
+		if (halfAngle >= Math.PI) {
+			return 1;
+		}
+		double ax = Math.cos(heading + halfAngle);
+		double ay = Math.sin(heading + halfAngle);
+		double bx = Math.cos(heading - halfAngle);
+		double by = Math.sin(heading - halfAngle);
+		// The field of view is the set of points anticlockwise of b and
+		// clockwise of a; for a field of view wider than a half-plane it is
+		// the set of points satisfying either condition. Both half-planes,
+		// their intersection, and the excluded cone are convex, so a box lies
+		// within any of them iff all of its corners do.
+		boolean allA = true, allB = true, noneA = true, noneB = true;
+		for (int k = 0; k < 4; k++) {
+			double wx = cornersX[k];
+			double wy = cornersY[k];
+			double fromA = wx * ay - wy * ax;
+			double fromB = bx * wy - by * wx;
+			allA &= fromA > MARGIN;
+			allB &= fromB > MARGIN;
+			noneA &= fromA < -MARGIN;
+			noneB &= fromB < -MARGIN;
+		}
+		if (halfAngle <= Math.PI / 2) {
+			if (allA && allB) {
+				return 1;
+			}
+			return (noneA || noneB) ? -1 : 0;
+		}
+		if (allA || allB) {
+			return 1;
+		}
+		return (noneA && noneB) ? -1 : 0;
+	}
+}
@@ -11,6 +11,20 @@ import game.Action;
  * 
  */
 public class TrackerGrid implements ActionEncoder {
+	/** The largest row or column offset that an action code can reach. */
+	private static final int MAX_OFFSET = 2;
+	/** The number of rows and columns reachable by action codes. */
+	private static final int WIDTH = 2 * MAX_OFFSET + 1;
+	/** The cells reachable by action codes, by action code. */
+	private static final GridCell[] CELLS = new GridCell[WIDTH * WIDTH];
+
+	static {
+		for (int code = 0; code < CELLS.length; code++) {
+			CELLS[code] = new GridCell(code / WIDTH - MAX_OFFSET, code % WIDTH
+					- MAX_OFFSET);
+		}
+	}
+
 	/** The width of each cell. */
 	private double cellWidth;
 
@@ -43,7 +57,7 @@ public class TrackerGrid implements ActionEncoder {
 	 *         cell.
 	 */
 	public int encodeFromCell(GridCell end) {
-		return end.getRow() * 5 + end.getCol() + 12;
+		return encodeFromIndices(end.getRow(), end.getCol());
 	}
 
 	/**
@@ -55,7 +69,67 @@ public class TrackerGrid implements ActionEncoder {
 	 * @return the end cell after taking the given action from the centre cell.
 	 */
 	public GridCell decodeToCell(int actionCode) {
-		return new GridCell(actionCode / 5 - 2, actionCode % 5 - 2);
+		if (actionCode < 0 || actionCode >= CELLS.length) {
+			return new GridCell(decodeRow(actionCode), decodeCol(actionCode));
+		}
+		return CELLS[actionCode];
+	}
+
+	/**
+	 * Returns the row offset of the end cell resulting from taking the action
+	 * with the given action code from the centre cell.
+	 * 
+	 * @param actionCode
+	 *            the action to take.
+	 * @return the row offset of the end cell.
+	 */
+	public int decodeRow(int actionCode) {
+		return actionCode / WIDTH - MAX_OFFSET;
+	}
+
+	/**
+	 * Returns the column offset of the end cell resulting from taking the
+	 * action with the given action code from the centre cell.
+	 * 
+	 * @param actionCode
+	 *            the action to take.
+	 * @return the column offset of the end cell.
+	 */
+	public int decodeCol(int actionCode) {
+		return actionCode % WIDTH - MAX_OFFSET;
+	}
+
+	/**
+	 * Returns the cell with the given row and column offsets from the centre
+	 * cell. Cells reachable by action codes are shared rather than allocated.
+	 * 
+	 * @param row
+	 *            the row offset of the cell.
+	 * @param col
+	 *            the column offset of the cell.
+	 * @return the cell.
+	 */
+	public GridCell getCell(int row, int col) {
+		if (row < -MAX_OFFSET || row > MAX_OFFSET || col < -MAX_OFFSET
+				|| col > MAX_OFFSET) {
+			return new GridCell(row, col);
+		}
+		return CELLS[encodeFromIndices(row, col)];
+	}
+
+	/**
+	 * Returns the action code corresponding to a movement from the centre to
+	 * the cell with the given row and column offsets.
+	 * 
+	 * @param row
+	 *            the row offset of the end cell.
+	 * @param col
+	 *            the column offset of the end cell.
+	 * @return the action code for a movement from the centre cell to the end
+	 *         cell.
+	 */
+	public int encodeFromIndices(int row, int col) {
+		return (row + MAX_OFFSET) * WIDTH + col + MAX_OFFSET;
 	}
 
 	/**
@@ -66,9 +140,31 @@ public class TrackerGrid implements ActionEncoder {
 	 * @return the grid cell containing the given point.
 	 */
 	public GridCell getCell(Vector2D position) {
-		int col = (int) Math.floor(+position.getX() / cellWidth + 0.5);
-		int row = (int) Math.floor(-position.getY() / cellWidth + 0.5);
-		return new GridCell(row, col);
+		return getCell(getRow(position.getY()), getCol(position.getX()));
+	}
+
+	/**
+	 * Returns the row offset of the cells containing the given y-value of a
+	 * displacement.
+	 * 
+	 * @param y
+	 *            the y-value of the displacement.
+	 * @return the row offset of the cells containing the y-value.
+	 */
+	public int getRow(double y) {
+		return (int) Math.floor(-y / cellWidth + 0.5);
+	}
+
+	/**
+	 * Returns the column offset of the cells containing the given x-value of a
+	 * displacement.
+	 * 
+	 * @param x
+	 *            the x-value of the displacement.
+	 * @return the column offset of the cells containing the x-value.
+	 */
+	public int getCol(double x) {
+		return (int) Math.floor(+x / cellWidth + 0.5);
 	}
 
 	/**
@@ -79,10 +175,62 @@ public class TrackerGrid implements ActionEncoder {
 	 * @return the centre point of the given cell.
 	 */
 	public Vector2D getCentre(GridCell cell) {
-		return new Vector2D(new double[] { +cell.getCol() * cellWidth,
-				-cell.getRow() * cellWidth
+		return new Vector2D(new double[] { getCentreX(cell.getCol()),
+				getCentreY(cell.getRow()) });
+	}
 
-		});
+	/**
+	 * Returns the x-value of the displacement to the centres of the cells in
+	 * the given column.
+	 * 
+	 * @param col
+	 *            the column offset.
+	 * @return the x-value of the centres of the cells in the column.
+	 */
+	public double getCentreX(int col) {
+		return getPointX(col, 0);
+	}
+
+	/**
+	 * Returns the y-value of the displacement to the centres of the cells in
+	 * the given row.
+	 * 
+	 * @param row
+	 *            the row offset.
+	 * @return the y-value of the centres of the cells in the row.
+	 */
+	public double getCentreY(int row) {
+		return getPointY(row, 0);
+	}
+
+	/**
+	 * Returns the x-value of the displacement to a point in the given column,
+	 * offset from the centres of its cells by the given fraction of the cell
+	 * width.
+	 * 
+	 * @param col
+	 *            the column offset.
+	 * @param offset
+	 *            the offset from the centre, from -0.5 to 0.5.
+	 * @return the x-value of the point.
+	 */
+	public double getPointX(int col, double offset) {
+		return +(col + offset) * cellWidth;
+	}
+
+	/**
+	 * Returns the y-value of the displacement to a point in the given row,
+	 * offset from the centres of its cells by the given fraction of the cell
+	 * width; positive offsets are downwards, as for rows.
+	 * 
+	 * @param row
+	 *            the row offset.
+	 * @param offset
+	 *            the offset from the centre, from -0.5 to 0.5.
+	 * @return the y-value of the point.
+	 */
+	public double getPointY(int row, double offset) {
+		return -(row + offset) * cellWidth;
 	}
 
 	/**
@@ -97,14 +245,15 @@ public class TrackerGrid implements ActionEncoder {
 	public Vector2D getRandomPoint(GridCell cell, Random random) {
 		double randX = random.nextDouble() - 0.5;
 		double randY = random.nextDouble() - 0.5;
-		return new Vector2D(new double[] {
-				+(cell.getCol() + randX) * cellWidth,
-				-(cell.getRow() + randY) * cellWidth });
+		return new Vector2D(new double[] { getPointX(cell.getCol(), randX),
+				getPointY(cell.getRow(), randY) });
 	}
 
 	@Override
 	public int encodeAction(Action a) {
-		Vector2D displacement = a.getDisplacement();
-		return encodeFromCell(getCell(displacement));
+		double distance = a.getDistance();
+		double heading = a.getHeading();
+		return encodeFromIndices(getRow(distance * Math.sin(heading)),
+				getCol(distance * Math.cos(heading)));
 	}
 }
\ No newline at end of file
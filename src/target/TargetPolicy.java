@@ -5,26 +5,31 @@ import game.AgentState;
 import geom.TargetGrid;
 import geom.GridCell;
 
+import java.awt.geom.Point2D;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.InputMismatchException;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 /**
  * Represents the policy of a target.
  * 
+ * The policy is stored as a flat array holding the action code for each cell,
+ * indexed by row * gridSize + col, so that lookups don't allocate. Policies
+ * are immutable, so duplicates share the same array.
+ * 
  * @author lackofcheese
  * 
  */
 public class TargetPolicy {
 	/** The grid over which the policy is defined. */
-	private TargetGrid grid;
-	/** The policy itself, as a mapping of grid cells. */
-	private Map<GridCell, GridCell> policyMap;
+	private final TargetGrid grid;
+	/** The number of rows and columns of the grid. */
+	private final int gridSize;
+	/** The action code for each cell, indexed by row * gridSize + col. */
+	private final byte[] actionCodes;
 
 	/**
 	 * Constructs a duplicate policy.
@@ -33,8 +38,9 @@ public class TargetPolicy {
 	 *            the policy to duplicate.
 	 */
 	public TargetPolicy(TargetPolicy policy) {
-		this.grid = new TargetGrid(policy.grid.getGridSize());
-		this.policyMap = new HashMap<GridCell, GridCell>(policy.policyMap);
+		this.grid = policy.grid;
+		this.gridSize = policy.gridSize;
+		this.actionCodes = policy.actionCodes;
 	}
 
 	/**
@@ -46,8 +52,6 @@ public class TargetPolicy {
 	 *             if the file is invalid.
 	 */
 	public TargetPolicy(String path) throws IOException {
-		policyMap = new HashMap<GridCell, GridCell>();
-
 		BufferedReader input = new BufferedReader(new FileReader(path));
 		int lineNo = 0;
 		String line;
@@ -63,21 +67,40 @@ public class TargetPolicy {
 				throw new IOException(
 						"Number of rows must equal number of columns.");
 			}
-			int gridSize = numRows;
+			gridSize = numRows;
 			grid = new TargetGrid(gridSize);
+			actionCodes = new byte[gridSize * gridSize];
 
+			// Large policies have millions of entries, so each row is parsed
+			// directly rather than with a Scanner.
 			for (int i = 0; i < gridSize; i++) {
 				line = input.readLine();
 				lineNo++;
-				s = new Scanner(line);
+				int pos = 0;
 				for (int j = 0; j < gridSize; j++) {
-					GridCell current = new GridCell(i, j);
-					int actionCode = s.nextInt();
-					GridCell target = grid.decodeFromIndices(current,
-							actionCode);
-					policyMap.put(current, target);
+					while (pos < line.length()
+							&& Character.isWhitespace(line.charAt(pos))) {
+						pos++;
+					}
+					int start = pos;
+					while (pos < line.length()
+							&& !Character.isWhitespace(line.charAt(pos))) {
+						pos++;
+					}
+					if (start == pos) {
+						throw new IOException(String.format(
+								"Not enough tokens on line %d of %s", lineNo,
+								path));
+					}
+					String token = line.substring(start, pos);
+					int actionCode = parseActionCode(token);
+					if (actionCode < 0) {
+						throw new IOException(String.format(
+								"Invalid action code on line %d of %s: %s",
+								lineNo, path, token));
+					}
+					actionCodes[i * gridSize + j] = (byte) actionCode;
 				}
-				s.close();
 			}
 		} catch (InputMismatchException e) {
 			throw new IOException(String.format(
@@ -94,6 +117,25 @@ public class TargetPolicy {
 		}
 	}
 
+	/**
+	 * Returns the action code given by the token, or -1 if it isn't a valid
+	 * action code.
+	 * 
+	 * @param token
+	 *            the token to parse.
+	 * @return the action code given by the token, or -1 if it isn't valid.
+	 */
+	private static int parseActionCode(String token) {
+		if (token.length() != 1) {
+			return -1;
+		}
+		int actionCode = token.charAt(0) - '0';
+		if (actionCode < 0 || actionCode > 8) {
+			return -1;
+		}
+		return actionCode;
+	}
+
 	/**
 	 * Returns the grid used by this policy.
 	 * 
@@ -109,18 +151,41 @@ public class TargetPolicy {
 	 * @return the size of the grid for this policy.
 	 */
 	public int getGridSize() {
-		return grid.getGridSize();
+		return gridSize;
 	}
 
 	/**
-	 * Returns the proper next cell for the given cell.
+	 * Returns the action code of the policy for the given cell, or -1 if the
+	 * cell is outside the grid.
+	 * 
+	 * @param row
+	 *            the row index of the cell.
+	 * @param col
+	 *            the column index of the cell.
+	 * @return the action code for the given cell, or -1 if it is outside the
+	 *         grid.
+	 */
+	public int getActionCode(int row, int col) {
+		if (row < 0 || row >= gridSize || col < 0 || col >= gridSize) {
+			return -1;
+		}
+		return actionCodes[row * gridSize + col];
+	}
+
+	/**
+	 * Returns the proper next cell for the given cell, or null if the cell is
+	 * outside the grid.
 	 * 
 	 * @param index
 	 *            the current cell.
 	 * @return the proper next cell for the given cell.
 	 */
 	public GridCell getNextIndex(GridCell index) {
-		return policyMap.get(index);
+		int actionCode = getActionCode(index.getRow(), index.getCol());
+		if (actionCode < 0) {
+			return null;
+		}
+		return grid.decodeFromIndices(index, actionCode);
 	}
 
 	/**
@@ -131,11 +196,19 @@ public class TargetPolicy {
 	 * @return the proper action for the given state.
 	 */
 	public Action getAction(AgentState currentState) {
-		GridCell startIndex = grid.getCell(currentState.getPosition());
-		GridCell endIndex = policyMap.get(startIndex);
-		if (endIndex.equals(startIndex)) {
+		Point2D pos = currentState.getPosition();
+		int row = grid.getRow(pos.getY());
+		int col = grid.getCol(pos.getX());
+		int actionCode = getActionCode(row, col);
+		if (actionCode < 0) {
+			throw new IllegalArgumentException("No policy for position "
+					+ pos);
+		}
+		if (actionCode == 4) {
 			return new Action(currentState);
 		}
-		return new Action(currentState, grid.getCentre(endIndex));
+		return new Action(currentState, new Point2D.Double(
+				grid.getCentreX(grid.decodeCol(col, actionCode)),
+				grid.getCentreY(grid.decodeRow(row, actionCode))));
 	}
 }
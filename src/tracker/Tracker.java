@@ -7,9 +7,9 @@ import game.Percept;
 import game.RectRegion;
 import game.SensingParameters;
 import game.TrackerAction;
-import geom.GridCell;
 import geom.TargetGrid;
 
+import java.awt.geom.Point2D;
 import java.util.List;
 
 import divergence.MotionHistory;
@@ -157,9 +157,14 @@ public class Tracker implements Agent {
 
 		// System.out.println(newPercepts);
 		TargetGrid grid = targetPolicy.getGrid();
-		GridCell current = grid.getCell(myState.getPosition());
-		GridCell next = targetPolicy.getNextIndex(current);
-		double heading = grid.getHeading(grid.encodeFromIndices(current, next));
+		Point2D pos = myState.getPosition();
+		int actionCode = targetPolicy.getActionCode(grid.getRow(pos.getY()),
+				grid.getCol(pos.getX()));
+		if (actionCode < 0) {
+			// Off the grid, there's no policy to follow; stay put.
+			return new TrackerAction(myState, false);
+		}
+		double heading = grid.getHeading(actionCode);
 		return new TrackerAction(myState, heading, 1.0 / grid.getGridSize());
 	}
 }